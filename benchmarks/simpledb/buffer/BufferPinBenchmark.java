@@ -0,0 +1,149 @@
+package simpledb.buffer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpledb.file.Block;
+import simpledb.file.Page;
+import simpledb.server.ScratchDatabase;
+import simpledb.server.SimpleDB;
+
+/**
+ * Measures a pin and unpin of a block through the {@link BufferMgr}, for each
+ * replacement policy, on the hit path and on the miss path.
+ *
+ * On the hit path every pin finds its block in memory, among a hot set a
+ * quarter of the size of the pool, so the benchmark measures the lookup, the
+ * policy's bookkeeping and the contention on the manager's lock. On the miss
+ * path the blocks are taken from a file eight times the size of the pool, so
+ * almost every pin replaces a block and reads one from the file system cache.
+ *
+ * The number of threads is set with the -t option of JMH; bench.sh runs this
+ * benchmark at 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferPinBenchmark {
+
+	// The number of buffers of the pool
+	public static final int POOL_SIZE = 1024;
+
+	// The number of blocks pinned on the hit path, and in the file
+	public static final int HOT_BLOCKS = POOL_SIZE / 4;
+	public static final int FILE_BLOCKS = 8 * POOL_SIZE;
+
+	public static final String FILE_NAME = "bench.tbl";
+
+	@Param({ "basic", "clock", "lru", "lru2", "arc" })
+	public String policy;
+
+	@Param({ "hit", "miss" })
+	public String path;
+
+	private String dbname;
+	private BufferMgr bufferMgr;
+	private Block[] blocks;
+
+	/**
+	 * Creates a database with a file of {@link #FILE_BLOCKS} blocks and a
+	 * buffer pool of {@link #POOL_SIZE} buffers, without the page cleaner or
+	 * the read-ahead, and reads the hot set into the pool.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		SimpleDB.BUFFER_SIZE = POOL_SIZE;
+		SimpleDB.CLEAN_TARGET = 0;
+		SimpleDB.READ_AHEAD = 0;
+		dbname = ScratchDatabase.newName();
+		SimpleDB.initFileLogAndBufferMgr(dbname, policyNumber(policy));
+		bufferMgr = SimpleDB.bufferMgr();
+
+		PageFormatter empty = new PageFormatter() {
+			public void format(Page p) {
+			}
+		};
+		for (int i = 0; i < FILE_BLOCKS; i++)
+			bufferMgr.unpin(bufferMgr.pinNew(FILE_NAME, empty));
+
+		blocks = new Block[path.equals("hit") ? HOT_BLOCKS : FILE_BLOCKS];
+		for (int i = 0; i < blocks.length; i++)
+			blocks[i] = new Block(FILE_NAME, i);
+		for (int i = 0; i < HOT_BLOCKS; i++)
+			bufferMgr.unpin(bufferMgr.pin(blocks[i]));
+	}
+
+	/**
+	 * Removes the database.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ScratchDatabase.delete(dbname);
+	}
+
+	/**
+	 * Returns the number that selects the specified policy, as used by
+	 * {@link SimpleDB#init(String, int)}.
+	 */
+	private static int policyNumber(String policy) {
+		if (policy.equals("clock"))
+			return 1;
+		else if (policy.equals("lru"))
+			return 2;
+		else if (policy.equals("lru2"))
+			return 3;
+		else if (policy.equals("arc"))
+			return 4;
+		else
+			return 0;
+	}
+
+	/**
+	 * The random sequence of blocks pinned by one thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int seed = System.identityHashCode(this) | 1;
+
+		/**
+		 * Returns a random index below the specified bound, using a xorshift
+		 * generator, which is cheap next to a pin.
+		 */
+		int next(int bound) {
+			seed ^= seed << 13;
+			seed ^= seed >>> 17;
+			seed ^= seed << 5;
+			return (seed & Integer.MAX_VALUE) % bound;
+		}
+	}
+
+	/**
+	 * Pins a random block and unpins it again.
+	 *
+	 * @param cursor
+	 *            the blocks of the calling thread
+	 * @return the pinned buffer
+	 */
+	@Benchmark
+	public Buffer pinUnpin(Cursor cursor) {
+		Buffer buff = bufferMgr.pin(blocks[cursor.next(blocks.length)]);
+		bufferMgr.unpin(buff);
+		return buff;
+	}
+}
@@ -0,0 +1,106 @@
+package simpledb.file;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpledb.server.ScratchDatabase;
+import simpledb.server.SimpleDB;
+
+/**
+ * Measures reading and writing a random block of a file
+ * through the file manager.
+ * The file is small enough to stay in the file system cache,
+ * so a read measures the file manager and the system call
+ * rather than the disk; a write is synchronous, since
+ * the files are opened in "rws" mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileMgrBenchmark {
+   public static final int FILE_BLOCKS = 4096;
+   public static final String FILE_NAME = "bench.tbl";
+
+   private String dbname;
+   private FileMgr fileMgr;
+   private Block[] blocks;
+
+   /**
+    * Creates a database with a file of {@link #FILE_BLOCKS} blocks.
+    */
+   @Setup(Level.Trial)
+   public void setUp() {
+      dbname = ScratchDatabase.newName();
+      SimpleDB.initFileMgr(dbname);
+      fileMgr = SimpleDB.fileMgr();
+      ByteBuffer bb = ByteBuffer.allocateDirect(fileMgr.blockSize());
+      blocks = new Block[FILE_BLOCKS];
+      for (int i = 0; i < FILE_BLOCKS; i++)
+         blocks[i] = fileMgr.append(FILE_NAME, bb);
+   }
+
+   /**
+    * Removes the database.
+    */
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      ScratchDatabase.delete(dbname);
+   }
+
+   /**
+    * The page memory and random sequence of blocks of one thread.
+    */
+   @State(Scope.Thread)
+   public static class Cursor {
+      private ByteBuffer bb;
+      private int seed = System.identityHashCode(this) | 1;
+
+      /**
+       * Allocates the page memory, once the database
+       * and its block size are known.
+       */
+      @Setup(Level.Trial)
+      public void setUp(FileMgrBenchmark bench) {
+         bb = ByteBuffer.allocateDirect(bench.fileMgr.blockSize());
+      }
+
+      /**
+       * Returns a random index below the specified bound,
+       * using a xorshift generator.
+       */
+      int next(int bound) {
+         seed ^= seed << 13;
+         seed ^= seed >>> 17;
+         seed ^= seed << 5;
+         return (seed & Integer.MAX_VALUE) % bound;
+      }
+   }
+
+   @Benchmark
+   public ByteBuffer read(Cursor cursor) {
+      fileMgr.read(blocks[cursor.next(FILE_BLOCKS)], cursor.bb);
+      return cursor.bb;
+   }
+
+   @Benchmark
+   public ByteBuffer write(Cursor cursor) {
+      fileMgr.write(blocks[cursor.next(FILE_BLOCKS)], cursor.bb);
+      return cursor.bb;
+   }
+}
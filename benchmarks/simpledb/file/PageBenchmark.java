@@ -0,0 +1,63 @@
+package simpledb.file;
+
+import static simpledb.file.Page.INT_SIZE;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading and writing values in a page,
+ * which every record and index scan does for each field.
+ * Each thread has its own page, so the page's lock is
+ * never contended.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageBenchmark {
+   public static final String VALUE = "a string of 20 chars";
+   public static final int INT_OFFSET = 0;
+   public static final int STRING_OFFSET = INT_SIZE;
+
+   private Page page;
+
+   /**
+    * Creates a page of the default block size, without a database,
+    * and writes an integer and a string in it.
+    */
+   @Setup
+   public void setUp() {
+      page = new Page(ByteBuffer.allocateDirect(FileMgr.DEFAULT_BLOCK_SIZE));
+      page.setInt(INT_OFFSET, 4432);
+      page.setString(STRING_OFFSET, VALUE);
+   }
+
+   @Benchmark
+   public int getInt() {
+      return page.getInt(INT_OFFSET);
+   }
+
+   @Benchmark
+   public String getString() {
+      return page.getString(STRING_OFFSET);
+   }
+
+   @Benchmark
+   public void setString() {
+      page.setString(STRING_OFFSET, VALUE);
+   }
+}
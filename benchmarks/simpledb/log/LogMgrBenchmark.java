@@ -0,0 +1,63 @@
+package simpledb.log;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simpledb.server.ScratchDatabase;
+import simpledb.server.SimpleDB;
+
+/**
+ * Measures appending a record to the log,
+ * shaped like the update record of a setString:
+ * a transaction, a block and an old value.
+ * A full log page is written to disk by the append
+ * that does not fit, so the average includes those writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogMgrBenchmark {
+   private static final Object[] RECORD = { 3, 17, "student.tbl", 42, 8, "a string of 20 chars" };
+
+   private String dbname;
+   private LogMgr logMgr;
+
+   /**
+    * Creates a database with an empty log.
+    */
+   @Setup(Level.Trial)
+   public void setUp() {
+      dbname = ScratchDatabase.newName();
+      SimpleDB.initFileMgr(dbname);
+      SimpleDB.initPageArena(1);
+      logMgr = new LogMgr(SimpleDB.LOG_FILE);
+   }
+
+   /**
+    * Removes the database.
+    */
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      ScratchDatabase.delete(dbname);
+   }
+
+   @Benchmark
+   public int append() {
+      return logMgr.append(RECORD);
+   }
+}
@@ -0,0 +1,40 @@
+package simpledb.server;
+
+import java.io.File;
+
+/**
+ * Creates and removes the throwaway database directories
+ * that the benchmarks run in.
+ * Each directory is created in the home directory,
+ * where the file manager looks for databases.
+ */
+public class ScratchDatabase {
+   /**
+    * Returns the name of a database directory that does
+    * not exist yet, so that the file manager creates
+    * a new, empty database.
+    * @return the name of the directory
+    */
+   public static String newName() {
+      return "simpledb-bench-" + System.nanoTime();
+   }
+
+   /**
+    * Stops the background threads of the buffer manager,
+    * if there is one, so that they stop writing to the
+    * database, and then deletes the specified database
+    * directory and its files.
+    * @param dbname the name of the directory
+    */
+   public static void delete(String dbname) {
+      if (SimpleDB.bufferMgr() != null)
+         SimpleDB.bufferMgr().shutdown();
+      File dir = new File(System.getProperty("user.home"), dbname);
+      File[] files = dir.listFiles();
+      if (files == null)
+         return;
+      for (File f : files)
+         f.delete();
+      dir.delete();
+   }
+}
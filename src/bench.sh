@@ -0,0 +1,23 @@
+# Compiles SimpleDB and the JMH benchmarks in ../benchmarks and runs them.
+# JMH_LIB must name a directory holding jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3 jars (default ../lib/jmh).
+# With no arguments, the buffer benchmark is run at 1 to 64 threads and the
+# page, file and log benchmarks once; any arguments are passed to JMH instead,
+# e.g. ./bench.sh BufferPinBenchmark -p policy=lru -t 8
+
+JMH_LIB=${JMH_LIB:-../lib/jmh}
+CP="$JMH_LIB/*"
+OUT=$(mktemp -d)
+
+javac -nowarn -cp "$CP" -d $OUT $(find simpledb ../benchmarks -name '*.java') || exit 1
+
+if [ $# -gt 0 ]; then
+	java -cp "$OUT:$CP" org.openjdk.jmh.Main "$@"
+else
+	for t in 1 2 4 8 16 32 64; do
+		java -cp "$OUT:$CP" org.openjdk.jmh.Main BufferPinBenchmark -t $t
+	done
+	java -cp "$OUT:$CP" org.openjdk.jmh.Main "PageBenchmark|FileMgrBenchmark|LogMgrBenchmark"
+fi
+
+rm -rf $OUT
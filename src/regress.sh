@@ -0,0 +1,29 @@
+# Compiles SimpleDB and the regression tests in ../tests and runs them.
+# Each test class (a class named *Test with a main method) runs in its own
+# JVM, with a scratch home directory for its databases. With arguments, only
+# the named test classes are run, e.g. ./regress.sh simpledb.tx.recovery.BaselineDatabaseTest
+
+OUT=$(mktemp -d)
+HOMEDIR=$(mktemp -d)
+
+javac -nowarn -d $OUT $(find simpledb ../tests -name '*.java') || exit 1
+
+if [ $# -gt 0 ]; then
+	TESTS="$@"
+else
+	TESTS=$(cd ../tests && find . -name '*Test.java' | sed -e 's|^\./||' -e 's|\.java$||' -e 's|/|.|g' | sort)
+fi
+
+FAILED=0
+for t in $TESTS; do
+	if java -Duser.home=$HOMEDIR -Dsimpledb.fixtures=../tests/fixtures -cp $OUT $t > $HOMEDIR/$t.out 2>&1; then
+		echo "PASS $t"
+	else
+		echo "FAIL $t"
+		grep -v "transaction" $HOMEDIR/$t.out | tail -20
+		FAILED=1
+	fi
+done
+
+rm -rf $OUT $HOMEDIR
+exit $FAILED
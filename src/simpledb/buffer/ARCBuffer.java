@@ -0,0 +1,65 @@
+package simpledb.buffer;
+
+/**
+ * This class represents an individual buffer used in the adaptive replacement
+ * cache (ARC) policy. It records which of the two ARC lists its block is on,
+ * and links the buffer into that list.
+ */
+public class ARCBuffer extends Buffer {
+
+	/**
+	 * The lists a buffer can be on: none (the buffer is empty), T1 (blocks
+	 * referenced once recently) or T2 (blocks referenced at least twice).
+	 */
+	public static final int NONE = 0, T1 = 1, T2 = 2;
+
+	// The list the buffer is on
+	protected int list = NONE;
+
+	// The neighbours of this buffer in its list
+	protected ARCBuffer prev = null;
+	protected ARCBuffer next = null;
+
+	// The position of this buffer in the manager's buffer pool
+	protected int index;
+
+	/**
+	 * Creates an ARCBuffer instance at the specified position of the buffer
+	 * pool.
+	 *
+	 * @param index
+	 *            The position of the buffer in the buffer pool.
+	 */
+	public ARCBuffer(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns the position of this buffer in the buffer pool.
+	 *
+	 * @return an integer
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the list the buffer is on: {@link #NONE}, {@link #T1} or
+	 * {@link #T2}.
+	 *
+	 * @return an integer
+	 */
+	public int getList() {
+		return list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.Buffer#toString()
+	 */
+	@Override
+	public String toString() {
+		return super.toString() + ", ARC list: " + (list == T1 ? "T1" : list == T2 ? "T2" : "none");
+	}
+}
@@ -0,0 +1,470 @@
+package simpledb.buffer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import simpledb.file.Block;
+import simpledb.file.PageTable;
+
+/**
+ * This class handles pinning and unpinning buffers in memory using the
+ * adaptive replacement cache (ARC) policy for buffer replacement.
+ *
+ * The blocks in memory are split between two lists: T1 holds blocks referenced
+ * once recently, and T2 holds blocks referenced at least twice. The ghost lists
+ * B1 and B2 remember the blocks recently replaced from T1 and T2. A miss on a
+ * block in B1 means T1 was too small, so the target size p of T1 grows; a miss
+ * on a block in B2 means T2 was too small, so p shrinks. Victims come from T1
+ * when it is larger than p, and from T2 otherwise, so the policy tunes itself
+ * between recency and frequency as the workload changes.
+ *
+ * Pinned buffers cannot be replaced, so the victim is the least recently used
+ * unpinned buffer of the chosen list, or of the other list if every buffer of
+ * the chosen one is pinned. Pins of a buffer that is already pinned are
+ * correlated references, and do not move the block to T2.
+ *
+ * Pins with the {@link AccessHint#SEQUENTIAL} or {@link AccessHint#ONE_SHOT}
+ * hint do not move a block to T2 either, and do not adapt the target size of
+ * T1 when the block is a ghost. A one-shot block goes to the least recently
+ * used end of T1 when it is unpinned, and buffers of kept blocks are passed
+ * over unless every unpinned buffer is kept. Among the first few candidates
+ * of a list, a clean buffer is replaced in preference to a dirty one.
+ */
+public class ARCBufferMgr extends AbstractBufferMgr {
+
+	/**
+	 * A doubly-linked list of buffers, from least to most recently used.
+	 */
+	protected static class ARCList {
+		ARCBuffer head = null;
+		ARCBuffer tail = null;
+		int size = 0;
+		final int id;
+
+		ARCList(int id) {
+			this.id = id;
+		}
+
+		void addMostRecent(ARCBuffer buff) {
+			buff.prev = tail;
+			buff.next = null;
+			if (tail == null)
+				head = buff;
+			else
+				tail.next = buff;
+			tail = buff;
+			buff.list = id;
+			size++;
+		}
+
+		void addLeastRecent(ARCBuffer buff) {
+			buff.prev = null;
+			buff.next = head;
+			if (head == null)
+				tail = buff;
+			else
+				head.prev = buff;
+			head = buff;
+			buff.list = id;
+			size++;
+		}
+
+		void remove(ARCBuffer buff) {
+			if (buff.prev == null)
+				head = buff.next;
+			else
+				buff.prev.next = buff.next;
+			if (buff.next == null)
+				tail = buff.prev;
+			else
+				buff.next.prev = buff.prev;
+			buff.prev = null;
+			buff.next = null;
+			buff.list = ARCBuffer.NONE;
+			size--;
+		}
+
+		ARCBuffer leastRecentUnpinned(boolean passKept) {
+			ARCBuffer victim = null;
+			int examined = 0;
+			for (ARCBuffer buff = head; buff != null && examined < CLEAN_VICTIM_SEARCH; buff = buff.next) {
+				if (buff.isPinned() || (passKept && buff.hint() == AccessHint.KEEP))
+					continue;
+				if (victim == null)
+					victim = buff;
+				examined++;
+				if (!buff.isModified())
+					return buff;
+			}
+			return victim;
+		}
+	}
+
+	// The memory buffers, all created when the manager is created
+	protected ARCBuffer[] bufferpool;
+
+	// The buffers in use that do not hold a block
+	protected ArrayDeque<ARCBuffer> unused = new ArrayDeque<ARCBuffer>();
+
+	// The map of each block in memory to the index of its buffer
+	protected PageTable buffer;
+
+	// The lists of blocks in memory
+	protected ARCList t1 = new ARCList(ARCBuffer.T1);
+	protected ARCList t2 = new ARCList(ARCBuffer.T2);
+
+	// The ghost lists of recently replaced blocks, from least to most recent
+	protected LinkedHashSet<Long> b1 = new LinkedHashSet<Long>();
+	protected LinkedHashSet<Long> b2 = new LinkedHashSet<Long>();
+
+	// The target size of T1
+	protected int p = 0;
+
+	/**
+	 * Creates an ARCBufferMgr instance with the specified maximum number of
+	 * buffers.
+	 *
+	 * @param numbuffs
+	 *            The maximum number of buffers for memory.
+	 */
+	public ARCBufferMgr(int numbuffs) {
+		this(numbuffs, numbuffs);
+	}
+
+	/**
+	 * Creates an ARCBufferMgr instance that can grow to the specified
+	 * capacity, with the specified number of buffers in use. The lists are
+	 * sized to the number of buffers in use, so they follow the pool when it
+	 * is resized.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 */
+	public ARCBufferMgr(int capacity, int numbuffs) {
+		super(capacity);
+		buffer = new PageTable(capacity);
+		bufferpool = new ARCBuffer[capacity];
+		for (int i = 0; i < capacity; i++)
+			bufferpool[i] = new ARCBuffer(i);
+		resize(numbuffs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#available()
+	 */
+	@Override
+	public int available() {
+		return numAvailable;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
+	 */
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
+	/**
+	 * Adds the counters of this manager to the specified statistics, with the
+	 * adaptation parameter and list sizes of the policy, read under the lock
+	 * of the manager so that they are consistent.
+	 *
+	 * @param total
+	 *            The statistics to add to.
+	 */
+	@Override
+	protected synchronized void collectStats(BufferStats total) {
+		super.collectStats(total);
+		total.addARC(p, t1.size, t2.size, b1.size() + b2.size());
+	}
+
+	/**
+	 * Returns the adaptation parameter of the policy, which is the target
+	 * number of buffers for blocks referenced only once (T1).
+	 *
+	 * @return an integer
+	 */
+	public synchronized int getTargetT1Size() {
+		return p;
+	}
+
+	/**
+	 * Returns the number of blocks in memory that were referenced once
+	 * recently (T1).
+	 *
+	 * @return an integer
+	 */
+	public synchronized int getT1Size() {
+		return t1.size;
+	}
+
+	/**
+	 * Returns the number of blocks in memory that were referenced at least
+	 * twice recently (T2).
+	 *
+	 * @return an integer
+	 */
+	public synchronized int getT2Size() {
+		return t2.size;
+	}
+
+	/**
+	 * Returns the number of recently replaced blocks remembered in the ghost
+	 * lists B1 and B2.
+	 *
+	 * @return an integer
+	 */
+	public synchronized int getGhostSize() {
+		return b1.size() + b2.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+		unused.addLast((ARCBuffer) buff);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 */
+	@Override
+	protected Buffer chooseUnpinnedBuffer() {
+		return chooseUnpinnedBuffer(p, false);
+	}
+
+	/**
+	 * Chooses a buffer for a block that is not in memory. A reusable buffer of
+	 * the pin's ring is used first, and then a buffer that has never held a
+	 * block. Otherwise the block of the victim is removed from memory and
+	 * added to the ghost list matching its list.
+	 *
+	 * @param target
+	 *            The target size of T1 to use.
+	 * @param inB2
+	 *            Whether the requested block is in the ghost list B2.
+	 * @return an empty buffer, or null if every buffer is pinned
+	 */
+	protected ARCBuffer chooseUnpinnedBuffer(int target, boolean inB2) {
+		ARCBuffer victim = (ARCBuffer) ringCandidate();
+		if (victim == null) {
+			if (!unused.isEmpty())
+				return unused.pollFirst();
+
+			boolean fromT1 = t1.size > 0 && (t1.size > target || (inB2 && t1.size == target));
+			victim = chooseVictim(fromT1, true);
+			if (victim == null)
+				victim = chooseVictim(fromT1, false);
+			if (victim == null)
+				return null;
+		}
+
+		long key = victim.block().key();
+		if (victim.list == ARCBuffer.T1) {
+			t1.remove(victim);
+			b1.add(key);
+		} else {
+			t2.remove(victim);
+			b2.add(key);
+		}
+		buffer.remove(key);
+		return victim;
+	}
+
+	/**
+	 * Returns the least recently used unpinned buffer of the preferred list,
+	 * or of the other list if every buffer of the preferred list is pinned.
+	 *
+	 * @param fromT1
+	 *            Whether T1 is the preferred list.
+	 * @param passKept
+	 *            Whether to pass over the buffers of kept blocks.
+	 * @return an ARCBuffer, or null if no buffer can be replaced
+	 */
+	private ARCBuffer chooseVictim(boolean fromT1, boolean passKept) {
+		ARCList first = fromT1 ? t1 : t2;
+		ARCList second = fromT1 ? t2 : t1;
+		ARCBuffer victim = first.leastRecentUnpinned(passKept);
+		return (victim != null) ? victim : second.leastRecentUnpinned(passKept);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#findExistingBuffer(simpledb.file.Block)
+	 */
+	@Override
+	protected Buffer findExistingBuffer(Block blk) {
+		int index = buffer.get(blk.key());
+		return (index == PageTable.NONE) ? null : bufferpool[index];
+	}
+
+	/**
+	 * A block in T2, referenced at least twice, is hotter than a block in T1.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#heat(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected long heat(Buffer buff) {
+		return ((ARCBuffer) buff).list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#flushAll(int)
+	 */
+	@Override
+	protected synchronized void flushAll(int txnum) {
+		for (ARCBuffer buff : bufferpool)
+			if (buff.isModifiedBy(txnum))
+				buff.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected synchronized Buffer pin(Block blk, AccessHint hint) {
+		ARCBuffer buff = (ARCBuffer) findExistingBuffer(blk);
+		if (buff != null) {
+			stats.recordHit();
+			if (!buff.isPinned()) {
+				// a hit moves the block to the most recent end of T2, unless
+				// the pin is not a sign of reuse
+				boolean inT1 = buff.list == ARCBuffer.T1;
+				if (inT1)
+					t1.remove(buff);
+				else
+					t2.remove(buff);
+				if (inT1 && !hint.countsAsReuse())
+					t1.addMostRecent(buff);
+				else
+					t2.addMostRecent(buff);
+				numAvailable--;
+			}
+			buff.setHint(hint);
+			buff.pin();
+			return buff;
+		}
+
+		// a miss adapts the target size of T1 if the block is a ghost
+		long key = blk.key();
+		if (!hint.countsAsReuse()) {
+			b1.remove(key);
+			b2.remove(key);
+		}
+		boolean inB1 = b1.contains(key);
+		boolean inB2 = !inB1 && b2.contains(key);
+		int target = p;
+		if (inB1)
+			target = Math.min(bufferCount, p + Math.max(b2.size() / b1.size(), 1));
+		else if (inB2)
+			target = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+
+		buff = chooseUnpinnedBuffer(target, inB2);
+		if (buff == null)
+			return null;
+		p = target;
+
+		assignToBlock(buff, blk);
+		buffer.put(key, buff.getIndex());
+		if (inB1) {
+			b1.remove(key);
+			t2.addMostRecent(buff);
+		} else if (inB2) {
+			b2.remove(key);
+			t2.addMostRecent(buff);
+		} else
+			t1.addMostRecent(buff);
+		trimGhostLists();
+
+		numAvailable--;
+		buff.setHint(hint);
+		buff.pin();
+		return buff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter)
+	 */
+	@Override
+	protected synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
+		ARCBuffer buff = chooseUnpinnedBuffer(p, false);
+		if (buff == null)
+			return null;
+		assignToNew(buff, filename, fmtr);
+		buffer.put(buff.block().key(), buff.getIndex());
+		t1.addMostRecent(buff);
+		trimGhostLists();
+
+		numAvailable--;
+		buff.pin();
+		return buff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected synchronized void unpin(Buffer buff) {
+		buff.unpin();
+		if (!buff.isPinned()) {
+			ARCBuffer arcBuff = (ARCBuffer) buff;
+			if (arcBuff.hint() == AccessHint.ONE_SHOT) {
+				if (arcBuff.list == ARCBuffer.T1)
+					t1.remove(arcBuff);
+				else
+					t2.remove(arcBuff);
+				t1.addLeastRecent(arcBuff);
+			}
+			numAvailable++;
+		}
+	}
+
+	/**
+	 * Drops the least recent ghosts so that T1 and B1 together hold at most as
+	 * many blocks as there are buffers, and all four lists together hold at
+	 * most twice that many.
+	 */
+	protected void trimGhostLists() {
+		while (t1.size + b1.size() > bufferCount && !b1.isEmpty())
+			removeLeastRecent(b1);
+		while (t1.size + t2.size + b1.size() + b2.size() > 2 * bufferCount) {
+			if (!b2.isEmpty())
+				removeLeastRecent(b2);
+			else
+				removeLeastRecent(b1);
+		}
+	}
+
+	private void removeLeastRecent(LinkedHashSet<Long> ghosts) {
+		Iterator<Long> iter = ghosts.iterator();
+		iter.next();
+		iter.remove();
+	}
+}
@@ -1,5 +1,11 @@
 package simpledb.buffer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
 import simpledb.file.Block;
 
 /**
@@ -12,22 +18,51 @@ import simpledb.file.Block;
  */
 public abstract class AbstractBufferMgr {
 
+	// The number of replacement candidates examined for a clean one before a
+	// dirty victim is accepted
+	protected static final int CLEAN_VICTIM_SEARCH = 8;
+
 	// The total number of buffers that can fit in memory
 	protected int maxBufferCount;
 
+	// The number of buffers currently in use
+	protected int bufferCount = 0;
+
 	// The current number of free buffers
 	protected int numAvailable = 0;
 
+	// The number of pinned buffers still to be taken out of use, as they are
+	// unpinned, after the pool was shrunk
+	private int pendingOffline = 0;
+
+	// The threads waiting for a buffer, in arrival order
+	private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+
+	// The number of waiters given a turn that have not yet retried
+	private int grantedTurns = 0;
+
+	// The counters of this manager
+	protected final BufferStats stats = new BufferStats();
+
+	// The replay that drives this manager when the PolicySimulator simulates
+	// a pool with it, in which case buffers are assigned to the blocks of a
+	// trace without disk I/O; null for a real pool
+	PolicySimulator.Replay replay = null;
+
+	// The ring of the pin in progress, if it has one; only set while the
+	// manager is locked
+	private BufferRing currentRing = null;
+
 	/**
 	 * Creates a AbstractBufferMgr instance with the specified maximum number of
-	 * buffers.
+	 * buffers. No buffer is in use until the subclass has created its buffers
+	 * and calls {@link #resize(int)}.
 	 *
 	 * @param numbuffs
 	 *            The maximum number of buffers for memory.
 	 */
 	public AbstractBufferMgr(int numbuffs) {
 		maxBufferCount = numbuffs;
-		numAvailable = numbuffs;
 	}
 
 	/**
@@ -37,6 +72,124 @@ public abstract class AbstractBufferMgr {
 	 */
 	public abstract int available();
 
+	/**
+	 * Returns every buffer of this manager, including the buffers out of use.
+	 * All the buffers are created when the manager is created, and are reused
+	 * in place when their blocks are replaced, so the returned array never
+	 * changes.
+	 *
+	 * @return an array of Buffers
+	 */
+	protected abstract Buffer[] buffers();
+
+	/**
+	 * Makes the specified buffer, which has just been brought into use and is
+	 * empty and unpinned, a candidate for replacement. Empty buffers are
+	 * replaced before any buffer that holds a block.
+	 *
+	 * @param buff
+	 *            The buffer brought into use.
+	 */
+	protected abstract void addEmptyBuffer(Buffer buff);
+
+	/**
+	 * Returns the number of buffers currently in use.
+	 *
+	 * @return an integer
+	 */
+	public synchronized int size() {
+		return bufferCount;
+	}
+
+	/**
+	 * Returns the number of buffers currently in use in the pool that holds
+	 * the specified file. Without pools, that is the whole manager.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return an integer
+	 */
+	public int poolSize(String filename) {
+		return size();
+	}
+
+	/**
+	 * Returns the largest number of buffers the manager can use.
+	 *
+	 * @return an integer
+	 */
+	public int capacity() {
+		return maxBufferCount;
+	}
+
+	/**
+	 * Changes the number of buffers in use, within the capacity of the
+	 * manager. Growing brings offline buffers back into use, preferring those
+	 * that already have a page, and wakes a waiting thread. Shrinking takes
+	 * unpinned buffers out of use at once, choosing them as the policy would
+	 * choose victims and writing them first if they are dirty; the rest are
+	 * taken out of use as they are unpinned.
+	 *
+	 * @param numbuffs
+	 *            The new number of buffers, at least 1.
+	 */
+	protected synchronized void resize(int numbuffs) {
+		numbuffs = Math.max(1, Math.min(numbuffs, maxBufferCount));
+		pendingOffline = 0;
+		if (numbuffs > bufferCount) {
+			Buffer[] buffs = buffers();
+			for (int pass = 0; pass < 2 && bufferCount < numbuffs; pass++) {
+				for (int i = 0; i < buffs.length && bufferCount < numbuffs; i++) {
+					Buffer buff = buffs[i];
+					if (buff.isOffline() && (pass == 1 || buff.hasPage())) {
+						buff.bringOnline();
+						addEmptyBuffer(buff);
+						bufferCount++;
+						numAvailable++;
+					}
+				}
+			}
+			signalNext();
+		}
+		pendingOffline = bufferCount - numbuffs;
+		while (pendingOffline > 0 && takeOffline())
+			;
+	}
+
+	/**
+	 * Returns the number of buffers without a page that resizing to the
+	 * specified number of buffers would bring into use, and so the number of
+	 * pages it would take from the arena.
+	 *
+	 * @param numbuffs
+	 *            The new number of buffers.
+	 * @return an integer
+	 */
+	protected synchronized int pagesNeeded(int numbuffs) {
+		int growth = Math.min(numbuffs, maxBufferCount) - bufferCount;
+		for (Buffer buff : buffers())
+			if (growth > 0 && buff.isOffline() && buff.hasPage())
+				growth--;
+		return Math.max(0, growth);
+	}
+
+	/**
+	 * Takes one unpinned buffer out of use, if there is one. The caller must
+	 * hold the lock of this manager.
+	 *
+	 * @return true if a buffer was taken out of use
+	 */
+	private boolean takeOffline() {
+		Buffer buff = chooseUnpinnedBuffer();
+		if (buff == null)
+			return false;
+		buff.takeOffline();
+		bufferCount--;
+		numAvailable--;
+		pendingOffline--;
+		return true;
+	}
+
 	/**
 	 * Chooses an unpinned buffer in memory.
 	 *
@@ -53,6 +206,134 @@ public abstract class AbstractBufferMgr {
 	 */
 	protected abstract Buffer findExistingBuffer(Block blk);
 
+	/**
+	 * Returns true if the specified block is currently in memory. Unlike
+	 * {@link #findExistingBuffer(Block)}, this locks the manager, so it can be
+	 * called from any thread.
+	 *
+	 * @param blk
+	 *            The block to find in memory.
+	 * @return a boolean
+	 */
+	protected synchronized boolean isResident(Block blk) {
+		return findExistingBuffer(blk) != null;
+	}
+
+	/**
+	 * Returns how hot the block of the specified buffer is: the higher the
+	 * heat, the sooner the policy expects the block to be used again. By
+	 * default every block is equally hot. The caller must hold the lock of
+	 * this manager.
+	 *
+	 * @param buff
+	 *            A buffer in use that holds a block.
+	 * @return a long
+	 */
+	protected long heat(Buffer buff) {
+		return 0;
+	}
+
+	/**
+	 * Returns the blocks currently in memory, hottest first. Pinned blocks
+	 * come before unpinned ones, and blocks of equal standing are ordered by
+	 * their {@link #heat(Buffer) heat}.
+	 *
+	 * @return a list of Blocks
+	 */
+	protected synchronized List<Block> residentBlocks() {
+		List<Buffer> resident = new ArrayList<Buffer>();
+		for (Buffer buff : buffers())
+			if (!buff.isOffline() && buff.block() != null)
+				resident.add(buff);
+		Collections.sort(resident, new Comparator<Buffer>() {
+			public int compare(Buffer a, Buffer b) {
+				if (a.isPinned() != b.isPinned())
+					return a.isPinned() ? -1 : 1;
+				long ha = heat(a);
+				long hb = heat(b);
+				return (ha == hb) ? 0 : (ha > hb) ? -1 : 1;
+			}
+		});
+		List<Block> blocks = new ArrayList<Block>(resident.size());
+		for (Buffer buff : resident)
+			blocks.add(buff.block());
+		return blocks;
+	}
+
+	/**
+	 * Assigns the specified buffer, chosen as the victim of a pin, to the
+	 * specified block, and counts the miss and the replaced block.
+	 *
+	 * @param buff
+	 *            The unpinned buffer to assign.
+	 * @param blk
+	 *            The block to read into the buffer.
+	 */
+	protected void assignToBlock(Buffer buff, Block blk) {
+		stats.recordMiss(buff);
+		if (replay != null)
+			buff.assignToTraced(blk, replay.priority(blk));
+		else
+			buff.assignToBlock(blk);
+	}
+
+	/**
+	 * Assigns the specified buffer, chosen as the victim of a pin, to a new
+	 * block appended to the specified file, and counts the new block and the
+	 * replaced block.
+	 *
+	 * @param buff
+	 *            The unpinned buffer to assign.
+	 * @param filename
+	 *            The name of the file to append to.
+	 * @param fmtr
+	 *            The formatter to use for the new page.
+	 */
+	protected void assignToNew(Buffer buff, String filename, PageFormatter fmtr) {
+		stats.recordNew(buff);
+		if (replay != null) {
+			Block blk = replay.newBlock();
+			buff.assignToTraced(blk, replay.priority(blk));
+		} else
+			buff.assignToNew(filename, fmtr);
+	}
+
+	/**
+	 * Adds the counters of this manager to the specified statistics. A
+	 * manager made of other managers adds theirs.
+	 *
+	 * @param total
+	 *            The statistics to add to.
+	 */
+	protected void collectStats(BufferStats total) {
+		total.add(stats);
+	}
+
+	/**
+	 * Returns the blocks in memory in the specified managers, taking the
+	 * hottest blocks of the managers in turn, so that each manager is equally
+	 * represented at the head of the list.
+	 *
+	 * @param mgrs
+	 *            The managers whose blocks are listed.
+	 * @return a list of Blocks
+	 */
+	protected static List<Block> interleave(AbstractBufferMgr[] mgrs) {
+		List<List<Block>> lists = new ArrayList<List<Block>>();
+		int longest = 0;
+		for (AbstractBufferMgr mgr : mgrs) {
+			List<Block> blocks = mgr.residentBlocks();
+			lists.add(blocks);
+			longest = Math.max(longest, blocks.size());
+		}
+		List<Block> result = new ArrayList<Block>();
+		for (int i = 0; i < longest; i++)
+			for (List<Block> blocks : lists)
+				if (i < blocks.size())
+					result.add(blocks.get(i));
+		return result;
+	}
+
 	/**
 	 * Flushes all buffers modified within the specified transaction.
 	 *
@@ -68,9 +349,11 @@ public abstract class AbstractBufferMgr {
 	 *
 	 * @param blk
 	 *            The block to pin in memory.
+	 * @param hint
+	 *            The intent of the pin.
 	 * @return a Buffer
 	 */
-	protected abstract Buffer pin(Block blk);
+	protected abstract Buffer pin(Block blk, AccessHint hint);
 
 	/**
 	 * Pins a new buffer in memory with the file name and the page format
@@ -84,6 +367,88 @@ public abstract class AbstractBufferMgr {
 	 */
 	protected abstract Buffer pinNew(String filename, PageFormatter fmtr);
 
+	/**
+	 * Pins the specified block in memory through the specified ring. If the
+	 * block is not in memory, the policy replaces the block of a reusable
+	 * buffer of the ring, if there is one, and the buffer the block is read
+	 * into is added to the ring.
+	 *
+	 * @param blk
+	 *            The block to pin in memory.
+	 * @param hint
+	 *            The intent of the pin.
+	 * @param ring
+	 *            The ring of the pinning scan, or null.
+	 * @return a Buffer
+	 */
+	protected synchronized Buffer pin(Block blk, AccessHint hint, BufferRing ring) {
+		if (ring == null)
+			return pin(blk, hint);
+		boolean resident = findExistingBuffer(blk) != null;
+		currentRing = ring;
+		try {
+			Buffer buff = pin(blk, hint);
+			if (buff != null && !resident)
+				ring.add(this, buff);
+			return buff;
+		} finally {
+			currentRing = null;
+		}
+	}
+
+	/**
+	 * Pins a new buffer in memory through the specified ring. The policy
+	 * replaces the block of a reusable buffer of the ring, if there is one,
+	 * and the new buffer is added to the ring.
+	 *
+	 * @param filename
+	 *            The name of the file to pin in memory.
+	 * @param fmtr
+	 *            The formatter to use for this page.
+	 * @param ring
+	 *            The ring of the writing scan, or null.
+	 * @return a Buffer
+	 */
+	protected synchronized Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+		if (ring == null)
+			return pinNew(filename, fmtr);
+		currentRing = ring;
+		try {
+			Buffer buff = pinNew(filename, fmtr);
+			if (buff != null)
+				ring.add(this, buff);
+			return buff;
+		} finally {
+			currentRing = null;
+		}
+	}
+
+	/**
+	 * Returns the buffer of the current pin's ring that the policy should
+	 * replace, or null if the pin has no ring or the ring has no reusable
+	 * buffer. The buffer is unpinned and still in the policy's structures, so
+	 * the policy must remove its block from memory as it would for a victim
+	 * of its own.
+	 *
+	 * @return a Buffer, or null
+	 */
+	protected Buffer ringCandidate() {
+		return (currentRing == null) ? null : currentRing.reusable(this);
+	}
+
+	/**
+	 * Returns true if the specified buffer belongs to the ring of the current
+	 * pin. A policy that would otherwise choose the buffer a ring scan has
+	 * just unpinned can pass over such buffers while the ring is filling.
+	 *
+	 * @param buff
+	 *            The buffer to check.
+	 * @return true if the buffer is in the current pin's ring
+	 */
+	protected boolean inRing(Buffer buff) {
+		return currentRing != null && currentRing.contains(buff);
+	}
+
 	/**
 	 * Unpin the specified buffer from memory.
 	 *
@@ -91,4 +456,275 @@ public abstract class AbstractBufferMgr {
 	 *            The buffer to unpin in memory.
 	 */
 	protected abstract void unpin(Buffer buff);
+
+	/**
+	 * Pins the specified block in memory, waiting in this manager's queue of
+	 * waiters until a buffer becomes available. A thread that is not already
+	 * waiting only takes a free buffer if no other thread is waiting, but it
+	 * can always pin a block that is already in memory. Returns null if no
+	 * buffer became available within the specified time.
+	 *
+	 * @param blk
+	 *            The block to pin in memory.
+	 * @param hint
+	 *            The intent of the pin.
+	 * @param ring
+	 *            The ring of the pinning scan, or null.
+	 * @param maxTime
+	 *            The maximum time to wait, in milliseconds.
+	 * @return a Buffer
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	protected Buffer pinOrWait(Block blk, AccessHint hint, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxTime;
+		Waiter w = null;
+		while (true) {
+			synchronized (this) {
+				takeTurn(w);
+				if (w != null || !hasWaiters() || findExistingBuffer(blk) != null) {
+					Buffer buff = pin(blk, hint, ring);
+					if (buff != null) {
+						admitted(w);
+						return buff;
+					}
+				}
+				w = enqueue(w);
+			}
+			if (!awaitTurn(w, deadline))
+				return null;
+		}
+	}
+
+	/**
+	 * Pins the specified block in memory without waiting and without taking
+	 * a buffer from a waiting thread. If another thread is waiting for a
+	 * buffer, only a block that is already in memory is pinned. Returns null
+	 * if the block was not pinned.
+	 *
+	 * @param blk
+	 *            The block to pin in memory.
+	 * @param hint
+	 *            The intent of the pin.
+	 * @return a Buffer, or null
+	 */
+	protected synchronized Buffer pinIfNoWaiters(Block blk, AccessHint hint) {
+		if (hasWaiters() && findExistingBuffer(blk) == null)
+			return null;
+		return pin(blk, hint);
+	}
+
+	/**
+	 * Pins a new buffer in memory, waiting in this manager's queue of waiters
+	 * until a buffer becomes available. A thread that is not already waiting
+	 * only takes a free buffer if no other thread is waiting. Returns null if
+	 * no buffer became available within the specified time.
+	 *
+	 * @param filename
+	 *            The name of the file to pin in memory.
+	 * @param fmtr
+	 *            The formatter to use for this page.
+	 * @param ring
+	 *            The ring of the writing scan, or null.
+	 * @param maxTime
+	 *            The maximum time to wait, in milliseconds.
+	 * @return a Buffer
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	protected Buffer pinNewOrWait(String filename, PageFormatter fmtr, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxTime;
+		Waiter w = null;
+		while (true) {
+			synchronized (this) {
+				takeTurn(w);
+				if (w != null || !hasWaiters()) {
+					Buffer buff = pinNew(filename, fmtr, ring);
+					if (buff != null) {
+						admitted(w);
+						return buff;
+					}
+				}
+				w = enqueue(w);
+			}
+			if (!awaitTurn(w, deadline))
+				return null;
+		}
+	}
+
+	/**
+	 * Unpins the specified buffer. If the buffer's pin count becomes 0, then
+	 * the first thread waiting for a buffer is woken up, unless the pool is
+	 * still shrinking, in which case a buffer is taken out of use instead.
+	 *
+	 * @param buff
+	 *            The buffer to unpin in memory.
+	 */
+	protected synchronized void unpinAndNotify(Buffer buff) {
+		unpin(buff);
+		if (!buff.isPinned()) {
+			if (pendingOffline > 0)
+				takeOffline();
+			else
+				signalNext();
+		}
+	}
+
+	/**
+	 * A thread waiting for a buffer. The waiters of a manager are queued in
+	 * arrival order, and each buffer that becomes unpinned is given to the
+	 * first of them only.
+	 */
+	protected static class Waiter {
+		private boolean granted = false;
+
+		// The time the waiter was created, in nanoseconds
+		private final long since = System.nanoTime();
+
+		/**
+		 * Waits until the waiter is given a turn, or until the deadline.
+		 *
+		 * @param deadline
+		 *            The time to stop waiting, in milliseconds.
+		 * @return true if the waiter was given a turn
+		 * @throws InterruptedException
+		 *             if the waiting thread is interrupted
+		 */
+		synchronized boolean await(long deadline) throws InterruptedException {
+			while (!granted) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return false;
+				wait(remaining);
+			}
+			granted = false;
+			return true;
+		}
+
+		/**
+		 * Gives the waiter a turn, waking up its thread.
+		 */
+		synchronized void grant() {
+			granted = true;
+			notify();
+		}
+	}
+
+	/**
+	 * Returns true if some thread is waiting for a buffer, including a thread
+	 * that was given a turn and has not yet retried, so that another thread
+	 * cannot take the buffer meant for it. The caller must hold the lock of
+	 * this manager.
+	 *
+	 * @return a boolean
+	 */
+	protected boolean hasWaiters() {
+		return !waiters.isEmpty() || grantedTurns > 0;
+	}
+
+	/**
+	 * Records that the specified waiter, which was given a turn, is retrying
+	 * its pin, so that the turn no longer holds back other threads. Does
+	 * nothing if the waiter is null, that is, on a thread's first try. The
+	 * caller must hold the lock of this manager.
+	 *
+	 * @param w
+	 *            The waiter retrying, or null.
+	 */
+	protected void takeTurn(Waiter w) {
+		if (w != null)
+			grantedTurns--;
+	}
+
+	/**
+	 * Queues the specified waiter, or a new one if it is null, and returns it.
+	 * A new waiter goes to the end of the queue, and a waiter whose turn did
+	 * not get it a buffer goes back to the front. The caller must hold the
+	 * lock of this manager.
+	 *
+	 * @param w
+	 *            The waiter returning to the queue, or null.
+	 * @return the queued Waiter
+	 */
+	protected Waiter enqueue(Waiter w) {
+		if (w == null) {
+			w = new Waiter();
+			waiters.addLast(w);
+		} else
+			waiters.addFirst(w);
+		return w;
+	}
+
+	/**
+	 * Records that the specified waiter got a buffer on its turn, and how long
+	 * it waited. If buffers are still available, the next waiter gets a turn
+	 * too. The caller must hold the lock of this manager.
+	 *
+	 * @param w
+	 *            The waiter that got a buffer, or null if the thread did not
+	 *            wait.
+	 */
+	protected void admitted(Waiter w) {
+		if (w == null)
+			return;
+		stats.recordWait(System.nanoTime() - w.since, false);
+		if (available() > 0)
+			signalNext();
+	}
+
+	/**
+	 * Gives the first waiter a turn, if there is one. The waiter counts as
+	 * waiting until it retries. The caller must hold the lock of this manager.
+	 */
+	protected void signalNext() {
+		Waiter w = waiters.poll();
+		if (w != null) {
+			grantedTurns++;
+			w.grant();
+		}
+	}
+
+	/**
+	 * Waits until the specified waiter is given a turn, or until the
+	 * deadline. A waiter that gives up leaves the queue, passing on a turn it
+	 * was given in the meantime. Must be called without holding the lock of
+	 * this manager.
+	 *
+	 * @param w
+	 *            The queued waiter.
+	 * @param deadline
+	 *            The time to stop waiting, in milliseconds.
+	 * @return true if the waiter was given a turn
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	protected boolean awaitTurn(Waiter w, long deadline) throws InterruptedException {
+		boolean granted = false;
+		try {
+			granted = w.await(deadline);
+		} finally {
+			if (!granted) {
+				cancel(w);
+				stats.recordWait(System.nanoTime() - w.since, true);
+			}
+		}
+		return granted;
+	}
+
+	/**
+	 * Removes the specified waiter from the queue. A waiter that is no longer
+	 * queued was given a turn it will not use, so the turn is passed on to
+	 * the next waiter.
+	 *
+	 * @param w
+	 *            The waiter giving up.
+	 */
+	protected synchronized void cancel(Waiter w) {
+		if (!waiters.remove(w)) {
+			grantedTurns--;
+			signalNext();
+		}
+	}
 }
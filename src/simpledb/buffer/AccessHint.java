@@ -0,0 +1,49 @@
+package simpledb.buffer;
+
+/**
+ * The intent of a pin, as known by the scan that pins the block. The buffer
+ * managers use the hint to decide where a block goes once it is unpinned, and
+ * whether the pin counts as a sign that the block is reused.
+ *
+ * A buffer keeps the hint of its most recent pin, except that a block pinned
+ * with {@link #KEEP} stays kept until its buffer is assigned to another block.
+ * The basic buffer manager ignores the hints.
+ */
+public enum AccessHint {
+	/**
+	 * A block read in no particular order. This is the hint of pins that do
+	 * not give one, and the policies treat the block as they always have.
+	 */
+	RANDOM,
+
+	/**
+	 * A block read as part of a sequential pass over its file. The pass does
+	 * not come back to it, so the pin is not taken as a sign of reuse: Clock
+	 * does not set its reference bit, and LRU-2 and ARC do not count it as a
+	 * repeated reference.
+	 */
+	SEQUENTIAL,
+
+	/**
+	 * A block that will not be used again once it is unpinned. In addition to
+	 * the treatment of {@link #SEQUENTIAL} blocks, the block is put where it
+	 * will be replaced first.
+	 */
+	ONE_SHOT,
+
+	/**
+	 * A block used on almost every access to its file, such as the root of a
+	 * B-tree directory. The policies replace unpinned kept blocks only when
+	 * every other unpinned block is kept too.
+	 */
+	KEEP;
+
+	/**
+	 * Returns true if a pin with this hint is a sign that the block is reused.
+	 *
+	 * @return a boolean
+	 */
+	public boolean countsAsReuse() {
+		return this == RANDOM || this == KEEP;
+	}
+}
@@ -0,0 +1,183 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Admits operators that reserve working space in the buffer pool. Only a
+ * budget of the pool's buffers can be reserved at once, so that concurrent
+ * operators, such as two large joins, cannot each size themselves to nearly
+ * the whole pool and leave the other transactions without buffers.
+ *
+ * A request names the least number of buffers the operator can work with and
+ * the number it would like. It is admitted with the buffers it would like, up
+ * to a fair share of what is left of the budget: what is left divided among
+ * the request and the requests queued behind it, but never less than the
+ * least number. If not even the least number is left, or earlier requests are
+ * still queued, the request waits its turn in arrival order.
+ *
+ * While the request at the head of the queue does not fit, the admitted
+ * reservations are asked to shrink to a fair share of the whole budget. An
+ * operator gives the buffers back when it can, such as a multibuffer product
+ * between two chunks, so that a second large join is downsized rather than
+ * starved by the first.
+ *
+ * A transaction that already holds a reservation, such as a multibuffer
+ * product whose left side is another one, is admitted at once with its fair
+ * share of what is left, or with its least number if nothing is left. Its
+ * request would otherwise queue behind buffers that only the transaction
+ * itself can give back, and the transaction would wait on itself.
+ */
+class AdmissionController {
+
+	// The number of buffers that can be reserved at once
+	private int budget;
+
+	// The number of buffers currently reserved
+	private int reserved = 0;
+
+	// The requests waiting to be admitted, in arrival order
+	private LinkedList<Object> queue = new LinkedList<Object>();
+
+	// The reservations admitted and not yet released
+	private List<BufferReservation> active = new ArrayList<BufferReservation>();
+
+	/**
+	 * Creates an AdmissionController with the specified budget.
+	 *
+	 * @param budget
+	 *            The number of buffers that can be reserved at once.
+	 */
+	AdmissionController(int budget) {
+		this.budget = Math.max(1, budget);
+	}
+
+	/**
+	 * Sets the number of buffers that can be reserved at once. Lowering the
+	 * budget does not take back buffers already reserved.
+	 *
+	 * @param budget
+	 *            The new budget.
+	 */
+	synchronized void setBudget(int budget) {
+		this.budget = Math.max(1, budget);
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of buffers that can be reserved at once.
+	 *
+	 * @return an integer
+	 */
+	synchronized int budget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the number of buffers currently reserved.
+	 *
+	 * @return an integer
+	 */
+	synchronized int reserved() {
+		return reserved;
+	}
+
+	/**
+	 * Reserves between min and desired buffers, waiting in turn until at least
+	 * min buffers of the budget are left. The request is downsized to its fair
+	 * share of what is left, which is never less than min unless min is more
+	 * than the whole budget. A nested request, made by a transaction that
+	 * already holds a reservation, is admitted without waiting, even if that
+	 * takes the reserved buffers over the budget.
+	 *
+	 * @param min
+	 *            The least number of buffers the operator can work with.
+	 * @param desired
+	 *            The number of buffers the operator would like.
+	 * @param nested
+	 *            True if the transaction already holds a reservation.
+	 * @param maxTime
+	 *            The longest time to wait, in milliseconds.
+	 * @return a BufferReservation, or null if the request was not admitted in
+	 *         time
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	synchronized BufferReservation reserve(int min, int desired, boolean nested, long maxTime)
+			throws InterruptedException {
+		min = Math.max(1, min);
+		desired = Math.max(min, desired);
+		if (nested) {
+			int left = Math.max(0, budget - reserved);
+			return admit(Math.max(Math.min(min, budget), Math.min(desired, left / (queue.size() + 1))));
+		}
+		long deadline = System.currentTimeMillis() + maxTime;
+		Object turn = new Object();
+		queue.addLast(turn);
+		try {
+			while (queue.getFirst() != turn || budget - reserved < Math.min(min, budget)) {
+				if (queue.getFirst() == turn)
+					askToShrink();
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return null;
+				wait(remaining);
+			}
+			int left = budget - reserved;
+			int share = Math.max(Math.min(min, budget), left / queue.size());
+			return admit(Math.min(desired, Math.min(left, share)));
+		} finally {
+			queue.remove(turn);
+			if (queue.isEmpty())
+				for (BufferReservation res : active)
+					res.askToShrink(0);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Reserves the specified number of buffers for an admitted request. The
+	 * caller must hold the lock of the controller.
+	 *
+	 * @param size
+	 *            The number of buffers granted.
+	 * @return a BufferReservation
+	 */
+	private BufferReservation admit(int size) {
+		reserved += size;
+		BufferReservation res = new BufferReservation(this, size);
+		active.add(res);
+		return res;
+	}
+
+	/**
+	 * Asks every admitted reservation to shrink to a fair share of the budget,
+	 * divided among the admitted and the queued requests. The caller must hold
+	 * the lock of the controller.
+	 */
+	private void askToShrink() {
+		int share = Math.max(1, budget / (active.size() + queue.size()));
+		for (BufferReservation res : active)
+			res.askToShrink(share);
+	}
+
+	/**
+	 * Gives back the specified number of buffers of a reservation, and lets
+	 * the waiting requests check whether they now fit. A reservation that is
+	 * released is forgotten.
+	 *
+	 * @param res
+	 *            The reservation the buffers belong to.
+	 * @param count
+	 *            The number of buffers given back.
+	 * @param released
+	 *            True if the reservation is released.
+	 */
+	synchronized void giveBack(BufferReservation res, int count, boolean released) {
+		reserved -= count;
+		if (released)
+			active.remove(res);
+		notifyAll();
+	}
+}
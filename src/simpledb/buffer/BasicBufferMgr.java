@@ -16,7 +16,6 @@ import simpledb.file.FileMgr;
  */
 class BasicBufferMgr extends AbstractBufferMgr {
 	private Buffer[] bufferpool;
-	private int numAvailable;
 
 	/**
 	 * Creates a buffer manager having the specified number of buffer slots.
@@ -31,10 +30,24 @@ class BasicBufferMgr extends AbstractBufferMgr {
 	 *            the number of buffer slots to allocate
 	 */
 	BasicBufferMgr(int numbuffs) {
-		super(numbuffs);
-		bufferpool = new Buffer[numbuffs];
-		for (int i = 0; i < numbuffs; i++)
+		this(numbuffs, numbuffs);
+	}
+
+	/**
+	 * Creates a buffer manager that can grow to the specified capacity, with
+	 * the specified number of buffer slots in use.
+	 *
+	 * @param capacity
+	 *            the largest number of buffer slots
+	 * @param numbuffs
+	 *            the number of buffer slots in use
+	 */
+	BasicBufferMgr(int capacity, int numbuffs) {
+		super(capacity);
+		bufferpool = new Buffer[capacity];
+		for (int i = 0; i < capacity; i++)
 			bufferpool[i] = new Buffer();
+		resize(numbuffs);
 	}
 
 	/**
@@ -47,12 +60,36 @@ class BasicBufferMgr extends AbstractBufferMgr {
 		return numAvailable;
 	}
 
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+		// every unpinned buffer is a candidate
+	}
+
 	@Override
 	protected Buffer chooseUnpinnedBuffer() {
-		for (Buffer buff : bufferpool)
-			if (!buff.isPinned())
-				return buff;
-		return null;
+		Buffer ringBuff = ringCandidate();
+		if (ringBuff != null)
+			return ringBuff;
+		// a buffer of the ring is only chosen if no other is unpinned, so that
+		// a ring that is not yet full grows rather than reusing its newest buffer
+		Buffer dirty = null, ringed = null;
+		for (Buffer buff : bufferpool) {
+			if (!buff.isPinned()) {
+				if (inRing(buff)) {
+					if (ringed == null)
+						ringed = buff;
+				} else if (!buff.isModified())
+					return buff;
+				else if (dirty == null)
+					dirty = buff;
+			}
+		}
+		return (dirty != null) ? dirty : ringed;
 	}
 
 	@Override
@@ -86,19 +123,24 @@ class BasicBufferMgr extends AbstractBufferMgr {
 	 *
 	 * @param blk
 	 *            a reference to a disk block
+	 * @param hint
+	 *            the intent of the pin, which this policy ignores
 	 * @return the pinned buffer
 	 */
 	@Override
-	protected synchronized Buffer pin(Block blk) {
+	protected synchronized Buffer pin(Block blk, AccessHint hint) {
 		Buffer buff = findExistingBuffer(blk);
+		if (buff != null)
+			stats.recordHit();
 		if (buff == null) {
 			buff = chooseUnpinnedBuffer();
 			if (buff == null)
 				return null;
-			buff.assignToBlock(blk);
+			assignToBlock(buff, blk);
 		}
 		if (!buff.isPinned())
 			numAvailable--;
+		buff.setHint(hint);
 		buff.pin();
 		return buff;
 	}
@@ -119,7 +161,7 @@ class BasicBufferMgr extends AbstractBufferMgr {
 		Buffer buff = chooseUnpinnedBuffer();
 		if (buff == null)
 			return null;
-		buff.assignToNew(filename, fmtr);
+		assignToNew(buff, filename, fmtr);
 		numAvailable--;
 		buff.pin();
 		return buff;
@@ -0,0 +1,366 @@
+package simpledb.buffer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * A binary trace of the pins, new blocks and unpins of the transactions, to
+ * be replayed offline by the {@link PolicySimulator}.
+ *
+ * The trace starts with a magic number and a version. Each event then takes
+ * 21 bytes: a byte holding the event type and the access hint of the pin, the
+ * file id and number of the block, the id of the transaction, and the time
+ * since the trace started, in nanoseconds. The first time a file appears, its
+ * name and the priority class of its pages are written before the event, so
+ * the trace can be read without the database and its catalog.
+ *
+ * Events are written into one of a few in-memory buffers, and full buffers
+ * are written to the file by a background thread, so recording an event costs
+ * a short critical section and no I/O. A transaction only waits if the disk
+ * falls behind all of the buffers. Pins by the read-ahead, by the warm
+ * restart and of sticky roots are not transactions' pins, and are not traced.
+ */
+public class BlockTrace extends Thread {
+
+	// The first int of every trace file
+	public static final int MAGIC = 0x53445452;
+	public static final int VERSION = 1;
+
+	// The types of the records, in the low bits of the first byte
+	public static final int FILE = 0;
+	public static final int PIN = 1;
+	public static final int PIN_NEW = 2;
+	public static final int UNPIN = 3;
+
+	// The size of a pin, new block or unpin record, in bytes
+	private static final int EVENT_SIZE = 21;
+
+	// The size and number of the in-memory buffers
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final int CHUNKS = 4;
+
+	private final File file;
+	private final FileChannel channel;
+	private final long start = System.nanoTime();
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(CHUNKS + 1);
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(CHUNKS);
+
+	// The buffer events are written into, and the files already named
+	private ByteBuffer current;
+	private final BitSet named = new BitSet();
+	private boolean closed = false;
+	private long events = 0;
+
+	/**
+	 * Creates the specified trace file. The events are written to it once the
+	 * thread is started. The thread is a daemon, so it does not keep the
+	 * server running.
+	 *
+	 * @param file
+	 *            The file the trace is written to.
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public BlockTrace(File file) throws IOException {
+		super("simpledb-block-trace");
+		this.file = file;
+		channel = new FileOutputStream(file).getChannel();
+		for (int i = 0; i < CHUNKS; i++)
+			free.add(ByteBuffer.allocate(CHUNK_SIZE));
+		current = free.remove();
+		current.putInt(MAGIC).putInt(VERSION);
+		setDaemon(true);
+	}
+
+	/**
+	 * Records a pin of the specified block by the specified transaction.
+	 *
+	 * @param blk
+	 *            The pinned block.
+	 * @param hint
+	 *            The intent of the pin.
+	 * @param txnum
+	 *            The id of the transaction.
+	 */
+	public void pin(Block blk, AccessHint hint, int txnum) {
+		record(PIN, hint, blk, txnum);
+	}
+
+	/**
+	 * Records the new block appended and pinned by the specified transaction.
+	 *
+	 * @param blk
+	 *            The new block.
+	 * @param txnum
+	 *            The id of the transaction.
+	 */
+	public void pinNew(Block blk, int txnum) {
+		record(PIN_NEW, AccessHint.RANDOM, blk, txnum);
+	}
+
+	/**
+	 * Records an unpin of the specified block by the specified transaction.
+	 *
+	 * @param blk
+	 *            The unpinned block.
+	 * @param txnum
+	 *            The id of the transaction.
+	 */
+	public void unpin(Block blk, int txnum) {
+		record(UNPIN, AccessHint.RANDOM, blk, txnum);
+	}
+
+	/**
+	 * Writes an event into the current buffer, preceded by the name of its
+	 * file if the file has not appeared yet.
+	 */
+	private synchronized void record(int type, AccessHint hint, Block blk, int txnum) {
+		if (closed)
+			return;
+		int fileid = blk.fileId();
+		if (!named.get(fileid)) {
+			String filename = SimpleDB.fileMgr().fileName(fileid);
+			byte[] name = filename.getBytes();
+			reserve(7 + name.length);
+			current.put((byte) (FILE | PagePriority.of(filename).ordinal() << 4)).putInt(fileid).putShort((short) name.length).put(name);
+			named.set(fileid);
+		}
+		reserve(EVENT_SIZE);
+		current.put((byte) (type | hint.ordinal() << 4));
+		current.putInt(fileid).putInt(blk.number()).putInt(txnum);
+		current.putLong(System.nanoTime() - start);
+		events++;
+	}
+
+	/**
+	 * Hands the current buffer to the writing thread if it has less than the
+	 * specified room left, and takes an empty one.
+	 */
+	private void reserve(int bytes) {
+		if (current.remaining() >= bytes)
+			return;
+		full.add(current);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				current = free.take();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stops recording, writes the events still in memory and closes the file.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			full.add(current);
+			full.add(ByteBuffer.allocate(0));
+		}
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		SimpleDB.getLogger().log(Level.INFO, "Wrote " + events + " events to " + file.getName());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		boolean failed = false;
+		try {
+			while (true) {
+				ByteBuffer chunk = full.take();
+				if (chunk.capacity() == 0)
+					break;
+				chunk.flip();
+				try {
+					while (!failed && chunk.hasRemaining())
+						channel.write(chunk);
+				} catch (IOException e) {
+					failed = true;
+					SimpleDB.getLogger().log(Level.WARNING, "Writing the block trace failed", e);
+				}
+				chunk.clear();
+				free.add(chunk);
+			}
+		} catch (InterruptedException e) {
+			return;
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				SimpleDB.getLogger().log(Level.WARNING, "Closing the block trace failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the events of a trace file in order.
+	 */
+	public static class Reader {
+		private final DataInputStream in;
+		private final Map<Integer, String> fileNames = new HashMap<Integer, String>();
+		private final Map<Integer, PagePriority> priorities = new HashMap<Integer, PagePriority>();
+		private int type, fileid, number, txnum;
+		private AccessHint hint;
+		private long nanos;
+
+		/**
+		 * Opens the specified trace file.
+		 *
+		 * @param file
+		 *            The trace file.
+		 * @throws IOException
+		 *             if the file cannot be read or is not a trace
+		 */
+		public Reader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				in.close();
+				throw new IOException(file.getName() + " is not a block trace");
+			}
+		}
+
+		/**
+		 * Moves to the next event, reading the names of the files along the
+		 * way. A trace cut short, by a crash for instance, ends at its last
+		 * whole event.
+		 *
+		 * @return false if there are no more events
+		 * @throws IOException
+		 *             if the file cannot be read
+		 */
+		public boolean next() throws IOException {
+			try {
+				int b;
+				while (true) {
+					b = in.readByte();
+					type = b & 0xf;
+					fileid = in.readInt();
+					if (type != FILE)
+						break;
+					byte[] name = new byte[in.readShort()];
+					in.readFully(name);
+					fileNames.put(fileid, new String(name));
+					priorities.put(fileid, PagePriority.values()[(b >> 4) & 0xf]);
+				}
+				hint = AccessHint.values()[(b >> 4) & 0xf];
+				number = in.readInt();
+				txnum = in.readInt();
+				nanos = in.readLong();
+				return true;
+			} catch (EOFException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Returns the type of the current event: {@link BlockTrace#PIN},
+		 * {@link BlockTrace#PIN_NEW} or {@link BlockTrace#UNPIN}.
+		 *
+		 * @return the type of the event
+		 */
+		public int type() {
+			return type;
+		}
+
+		/**
+		 * Returns the block of the current event.
+		 *
+		 * @return the block
+		 */
+		public Block block() {
+			return new Block(fileid, number);
+		}
+
+		/**
+		 * Returns the access hint of the current pin.
+		 *
+		 * @return the hint
+		 */
+		public AccessHint hint() {
+			return hint;
+		}
+
+		/**
+		 * Returns the transaction of the current event.
+		 *
+		 * @return the id of the transaction
+		 */
+		public int txnum() {
+			return txnum;
+		}
+
+		/**
+		 * Returns the time of the current event since the trace started.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long nanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the name of the file with the specified id, as recorded in
+		 * the trace.
+		 *
+		 * @param fileid
+		 *            The id of a file that has appeared in the trace.
+		 * @return the name of the file
+		 */
+		public String fileName(int fileid) {
+			return fileNames.get(fileid);
+		}
+
+		/**
+		 * Returns the priority class of the pages of the file with the
+		 * specified id, as recorded in the trace.
+		 *
+		 * @param fileid
+		 *            The id of a file that has appeared in the trace.
+		 * @return the priority class of its pages
+		 */
+		public PagePriority priority(int fileid) {
+			return priorities.get(fileid);
+		}
+
+		/**
+		 * Closes the trace file.
+		 *
+		 * @throws IOException
+		 *             if the file cannot be closed
+		 */
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
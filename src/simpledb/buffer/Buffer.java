@@ -11,29 +11,91 @@ import simpledb.server.SimpleDB;
  * modified, and if so, the id of the modifying transaction and the LSN of the
  * corresponding log record.
  *
+ * The methods that read or change the modification status of the buffer are
+ * synchronized, so a {@link PageCleaner} can flush the buffer while other
+ * threads pin it and modify its page.
+ *
+ * A buffer is offline, and has no page, until its buffer manager brings it
+ * into use. An offline buffer counts as pinned, so no replacement policy
+ * ever chooses it, and a buffer manager that shrinks takes buffers offline
+ * again.
+ *
  * @author Edward Sciore
  */
 public class Buffer {
-	private Page contents = new Page();
+	private Page contents = null;
 	private Block blk = null;
+	private boolean offline = true;
 	private int pins = 0;
 	private int modifiedBy = -1; // negative means not modified
 	private int logSequenceNumber = -1; // negative means no corresponding log
 										// record
+	private AccessHint hint = AccessHint.RANDOM;
+	private PagePriority priority = PagePriority.NORMAL;
+	private int chances = 0; // extra passes left before the block is replaced
 
 	/**
-	 * Creates a new buffer, wrapping a new {@link simpledb.file.Page page}.
-	 * This constructor is called exclusively by the class
-	 * {@link BasicBufferMgr}. It depends on the {@link simpledb.log.LogMgr
-	 * LogMgr} object that it gets from the class
-	 * {@link simpledb.server.SimpleDB}. That object is created during system
-	 * initialization. Thus this constructor cannot be called until
+	 * Creates a new, offline buffer. This constructor is called only by the
+	 * buffer managers, which create all of their buffers up front and reuse
+	 * them in place. The buffer wraps a {@link simpledb.file.Page page} once
+	 * it is brought into use, so the page memory is never allocated while
+	 * pinning. The page is a slice of the
+	 * {@link simpledb.file.PageArena PageArena}, and the buffer depends on the
+	 * {@link simpledb.log.LogMgr LogMgr} object that it gets from the class
+	 * {@link simpledb.server.SimpleDB}. Those objects are created during system
+	 * initialization. Thus no buffer can be brought into use until
 	 * {@link simpledb.server.SimpleDB#initFileAndLogMgr(String)} or is called
 	 * first.
 	 */
 	public Buffer() {
 	}
 
+	/**
+	 * Brings the offline buffer into use, empty and unpinned. The first time
+	 * this is done, the buffer takes a page from the arena. A buffer of a pool
+	 * simulated by the {@link PolicySimulator}, which runs without an arena,
+	 * gets no page.
+	 */
+	synchronized void bringOnline() {
+		if (contents == null && SimpleDB.pageArena() != null)
+			contents = SimpleDB.pageArena().newPage();
+		offline = false;
+	}
+
+	/**
+	 * Takes the unpinned buffer out of use. The page is first written to disk
+	 * if it is dirty, and the buffer forgets its block, but it keeps its page
+	 * for when it is brought back into use.
+	 */
+	synchronized void takeOffline() {
+		flush();
+		blk = null;
+		pins = 0;
+		hint = AccessHint.RANDOM;
+		priority = PagePriority.NORMAL;
+		chances = 0;
+		offline = true;
+	}
+
+	/**
+	 * Returns true if the buffer is out of use.
+	 *
+	 * @return true if the buffer is offline
+	 */
+	boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * Returns true if the buffer has ever been brought into use, and so has a
+	 * page.
+	 *
+	 * @return true if the buffer has a page
+	 */
+	boolean hasPage() {
+		return contents != null;
+	}
+
 	/**
 	 * Reads the contents of the specified block into the buffer's page. If the
 	 * buffer was dirty, then the contents of the previous page are first
@@ -42,11 +104,14 @@ public class Buffer {
 	 * @param b
 	 *            a reference to the data block
 	 */
-	void assignToBlock(Block b) {
+	synchronized void assignToBlock(Block b) {
 		flush();
 		blk = b;
 		contents.read(blk);
 		pins = 0;
+		hint = AccessHint.RANDOM;
+		priority = PagePriority.of(blk.fileName());
+		chances = 0;
 	}
 
 	/**
@@ -59,11 +124,32 @@ public class Buffer {
 	 * @param fmtr
 	 *            a page formatter, used to initialize the page
 	 */
-	void assignToNew(String filename, PageFormatter fmtr) {
+	synchronized void assignToNew(String filename, PageFormatter fmtr) {
 		flush();
 		fmtr.format(contents);
 		blk = contents.append(filename);
 		pins = 0;
+		hint = AccessHint.RANDOM;
+		priority = PagePriority.of(filename);
+		chances = 0;
+	}
+
+	/**
+	 * Assigns the buffer to the specified block of a trace replayed by the
+	 * {@link PolicySimulator}, as if the block had been read, but without any
+	 * disk I/O.
+	 *
+	 * @param b
+	 *            a reference to the traced block
+	 * @param p
+	 *            the priority class of the block's file
+	 */
+	synchronized void assignToTraced(Block b, PagePriority p) {
+		blk = b;
+		pins = 0;
+		hint = AccessHint.RANDOM;
+		priority = p;
+		chances = 0;
 	}
 
 	/**
@@ -80,7 +166,7 @@ public class Buffer {
 	 * ensures that the corresponding log record has been written to disk prior
 	 * to writing the page to disk.
 	 */
-	void flush() {
+	synchronized void flush() {
 		if (modifiedBy >= 0) {
 			SimpleDB.logMgr().flush(logSequenceNumber);
 			contents.write(blk);
@@ -122,18 +208,28 @@ public class Buffer {
 	 *            the id of the transaction
 	 * @return true if the transaction modified the buffer
 	 */
-	boolean isModifiedBy(int txnum) {
+	synchronized boolean isModifiedBy(int txnum) {
 		return txnum == modifiedBy;
 	}
 
+	/**
+	 * Returns true if the buffer is dirty, that is, if its page has been
+	 * modified since it was last written to disk.
+	 *
+	 * @return true if the buffer is dirty
+	 */
+	synchronized boolean isModified() {
+		return modifiedBy >= 0;
+	}
+
 	/**
 	 * Returns true if the buffer is currently pinned (that is, if it has a
-	 * nonzero pin count).
+	 * nonzero pin count), or is offline.
 	 *
 	 * @return true if the buffer is pinned
 	 */
 	boolean isPinned() {
-		return pins > 0;
+		return pins > 0 || offline;
 	}
 
 	/**
@@ -143,6 +239,62 @@ public class Buffer {
 		pins++;
 	}
 
+	/**
+	 * Returns the access hint of the buffer's block, which is the hint of its
+	 * most recent pin, or {@link AccessHint#KEEP} if it was ever pinned with
+	 * that hint since being assigned to the block.
+	 *
+	 * @return the access hint of the block
+	 */
+	public AccessHint hint() {
+		return hint;
+	}
+
+	/**
+	 * Records the hint of a pin of the buffer's block. A kept block stays kept
+	 * until the buffer is assigned to another block.
+	 *
+	 * @param h
+	 *            the hint given to the pin
+	 */
+	void setHint(AccessHint h) {
+		if (hint != AccessHint.KEEP)
+			hint = h;
+	}
+
+	/**
+	 * Returns the priority class of the buffer's block, which depends on the
+	 * file of the block.
+	 *
+	 * @return the priority class of the block
+	 */
+	public PagePriority priority() {
+		return priority;
+	}
+
+	/**
+	 * Gives the buffer's block the extra chances of its priority class, after
+	 * a pin that counts as a reuse of the block. The caller must hold the lock
+	 * of the buffer manager.
+	 */
+	void grantChances() {
+		chances = priority.extraChances();
+	}
+
+	/**
+	 * Takes one of the extra chances left to the buffer's block, if it has
+	 * any. A replacement policy passes over a block that still had a chance.
+	 * The caller must hold the lock of the buffer manager.
+	 *
+	 * @return true if the block had a chance left
+	 */
+	boolean useChance() {
+		if (chances == 0)
+			return false;
+		chances--;
+		return true;
+	}
+
 	/**
 	 * Writes an integer to the specified offset of the buffer's page. This
 	 * method assumes that the transaction has already written an appropriate
@@ -159,7 +311,7 @@ public class Buffer {
 	 * @param lsn
 	 *            the LSN of the corresponding log record
 	 */
-	public void setInt(int offset, int val, int txnum, int lsn) {
+	public synchronized void setInt(int offset, int val, int txnum, int lsn) {
 		modifiedBy = txnum;
 		if (lsn >= 0)
 			logSequenceNumber = lsn;
@@ -182,7 +334,7 @@ public class Buffer {
 	 * @param lsn
 	 *            the LSN of the corresponding log record
 	 */
-	public void setString(int offset, String val, int txnum, int lsn) {
+	public synchronized void setString(int offset, String val, int txnum, int lsn) {
 		modifiedBy = txnum;
 		if (lsn >= 0)
 			logSequenceNumber = lsn;
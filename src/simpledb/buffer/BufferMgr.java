@@ -1,7 +1,18 @@
 package simpledb.buffer;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import simpledb.file.Block;
 import simpledb.file.FileMgr;
 import simpledb.server.SimpleDB;
@@ -12,20 +23,60 @@ import simpledb.server.SimpleDB;
  * {@link #pin(Block) pin} and {@link #pinNew(String, PageFormatter) pinNew}
  * will never return null. If no buffers are currently available, then the
  * calling thread will be placed on a waiting list. The waiting threads are
- * removed from the list when a buffer becomes available. If a thread has been
- * waiting for a buffer for an excessive amount of time (currently, 10 seconds)
- * then a {@link BufferAbortException} is thrown.
+ * removed from the list one at a time, in the order they arrived, as buffers
+ * become available. If a thread has been waiting for a buffer for an excessive
+ * amount of time (10 seconds by default, set by
+ * {@link #setMaxWaitTime(long)}) then a {@link BufferAbortException} is
+ * thrown.
+ *
+ * The waiting is done by the wrapped {@link AbstractBufferMgr}, so that a
+ * {@link StripedBufferMgr} only makes a thread wait on the stripe that owns
+ * the requested block.
  *
  * @author Edward Sciore
  */
 public class BufferMgr {
-	private static final long MAX_TIME = 10000; // 10 seconds
+	public static final long DEFAULT_MAX_TIME = 10000; // 10 seconds
+
+	// The longest time a thread waits for a buffer, in milliseconds
+	private volatile long maxTime = DEFAULT_MAX_TIME;
 
 	// CS 4432 Project 1
 	// We modified this from BasicBufferMgr to our Abstract so we can easily
 	// replace which buffer manager to use.
 	private AbstractBufferMgr bufferMgr;
 
+	// The number of buffers the pool was last sized to
+	private int targetSize;
+
+	// The background writer of dirty buffers, or null if there is none
+	private PageCleaner cleaner;
+
+	// The sequential read-ahead, or null if there is none
+	private volatile ReadAhead readAhead;
+
+	// The saver of the blocks in memory, or null if there is none
+	private PoolSnapshot snapshot;
+
+	// The trace the transactions' pins are recorded to, if any
+	private volatile BlockTrace trace;
+
+	// Admits the operators that reserve working space in the pool
+	private AdmissionController admission;
+
+	// The largest number of buffers a transaction may pin beyond its
+	// reservations, or 0 if there is no limit
+	private volatile int pinQuota = 0;
+
+	// Whether shutdown() is called when the JVM shuts down
+	private boolean shutdownHook = false;
+
+	// The buffers pinned for good by pinSticky, by block
+	private final Map<Block, Buffer> sticky = new HashMap<Block, Buffer>();
+
+	// The largest number of sticky pins, or 0 if there are none
+	private volatile int maxSticky = 0;
+
 	/**
 	 * CS 4432 Project 1
 	 *
@@ -45,19 +96,556 @@ public class BufferMgr {
 	 *            the number of buffer slots to allocate
 	 */
 	public BufferMgr(int numbuffers, int bufferSelect) {
+		this(numbuffers, bufferSelect, 1);
+	}
+
+	/**
+	 * Creates a new buffer manager having the specified number of buffers,
+	 * split into the specified number of independently locked stripes. Each
+	 * stripe uses the replacement policy specified by bufferSelect. A stripe
+	 * count of 1 or less creates a single, unstriped buffer pool.
+	 *
+	 * @param numbuffers
+	 *            the number of buffer slots to allocate
+	 * @param bufferSelect
+	 *            the replacement policy to use
+	 * @param numStripes
+	 *            the number of stripes to partition the buffers into
+	 */
+	public BufferMgr(int numbuffers, int bufferSelect, int numStripes) {
+		this(numbuffers, numbuffers, bufferSelect, numStripes);
+	}
+
+	/**
+	 * Creates a new buffer manager having the specified number of buffers,
+	 * which can later be resized up to the specified capacity with
+	 * {@link #resize(int)}. Only the buffers in use take page memory.
+	 *
+	 * @param capacity
+	 *            the largest number of buffer slots the pool can grow to
+	 * @param numbuffers
+	 *            the number of buffer slots to allocate
+	 * @param bufferSelect
+	 *            the replacement policy to use
+	 * @param numStripes
+	 *            the number of stripes to partition the buffers into
+	 */
+	public BufferMgr(int capacity, int numbuffers, int bufferSelect, int numStripes) {
+		this(capacity, numbuffers, bufferSelect, numStripes, "");
+	}
+
+	/**
+	 * Creates a new buffer manager whose buffers are divided into the named
+	 * pools described by the specification, as explained in
+	 * {@link PooledBufferMgr}. Each pool is split into the specified number of
+	 * stripes. An empty specification creates a single pool.
+	 *
+	 * @param capacity
+	 *            the largest number of buffer slots the pool can grow to
+	 * @param numbuffers
+	 *            the number of buffer slots to allocate
+	 * @param bufferSelect
+	 *            the replacement policy of the pools that name none
+	 * @param numStripes
+	 *            the number of stripes to partition each pool into
+	 * @param pools
+	 *            the specification of the pools
+	 */
+	public BufferMgr(int capacity, int numbuffers, int bufferSelect, int numStripes, String pools) {
+		capacity = Math.max(capacity, numbuffers);
+		if (pools.trim().length() > 0)
+			bufferMgr = new PooledBufferMgr(capacity, numbuffers, pools, bufferSelect, numStripes);
+		else if (numStripes > 1) {
+			bufferMgr = new StripedBufferMgr(capacity, numbuffers, numStripes, bufferSelect);
+			SimpleDB.getLogger().log(Level.INFO, "Using " + numStripes + " buffer stripes");
+		} else
+			bufferMgr = createBufferMgr(capacity, numbuffers, bufferSelect);
+		targetSize = numbuffers;
+		admission = new AdmissionController(numbuffers / 2);
+	}
+
+	/**
+	 * Creates an unstriped buffer manager for the replacement policy specified
+	 * by bufferSelect. 1 is for Clock, 2 is for LRU, 3 is for LRU-2, and 4 is
+	 * for ARC. Any other value is for basic.
+	 *
+	 * @param capacity
+	 *            the largest number of buffer slots the manager can grow to
+	 * @param numbuffers
+	 *            the number of buffer slots in use
+	 * @param bufferSelect
+	 *            the replacement policy to use
+	 * @return an AbstractBufferMgr
+	 */
+	static AbstractBufferMgr createBufferMgr(int capacity, int numbuffers, int bufferSelect) {
 		switch (bufferSelect) {
 		case 1:
-			bufferMgr = new ClockBufferMgr(numbuffers);
 			SimpleDB.getLogger().log(Level.INFO, "Using Clock replacement policy");
-			break;
+			return new ClockBufferMgr(capacity, numbuffers);
 		case 2:
-			bufferMgr = new LRUBufferMgr(numbuffers);
 			SimpleDB.getLogger().log(Level.INFO, "Using LRU replacement policy");
-			break;
+			return new LRUBufferMgr(capacity, numbuffers);
+		case 3:
+			SimpleDB.getLogger().log(Level.INFO, "Using LRU-2 replacement policy");
+			return new LRUKBufferMgr(capacity, numbuffers);
+		case 4:
+			SimpleDB.getLogger().log(Level.INFO, "Using ARC replacement policy");
+			return new ARCBufferMgr(capacity, numbuffers);
 		default:
-			bufferMgr = new BasicBufferMgr(numbuffers);
 			SimpleDB.getLogger().log(Level.INFO, "Using Basic replacement policy");
-			break;
+			return new BasicBufferMgr(capacity, numbuffers);
+		}
+	}
+
+	/**
+	 * Starts a background {@link PageCleaner} that keeps the specified
+	 * fraction of the unpinned buffers clean, so that replacing a buffer
+	 * rarely requires writing its page first. Does nothing if a cleaner is
+	 * already running.
+	 *
+	 * @param target
+	 *            the fraction of unpinned buffers to keep clean
+	 */
+	public synchronized void startPageCleaner(double target) {
+		if (cleaner != null)
+			return;
+		cleaner = new PageCleaner(bufferMgr, target);
+		cleaner.start();
+		SimpleDB.getLogger().log(Level.INFO, "Started page cleaner with target " + target);
+	}
+
+	/**
+	 * Starts reading the following blocks of a file ahead of time, on a
+	 * background thread, when the blocks of the file are pinned sequentially.
+	 * Does nothing if read-ahead is already running.
+	 *
+	 * @param maxWindow
+	 *            the largest number of blocks read ahead of a scan
+	 */
+	public synchronized void startReadAhead(int maxWindow) {
+		if (readAhead != null)
+			return;
+		ReadAhead ra = new ReadAhead(bufferMgr, maxWindow);
+		ra.start();
+		readAhead = ra;
+		SimpleDB.getLogger().log(Level.INFO, "Started read-ahead with window " + maxWindow);
+	}
+
+	/**
+	 * Changes the number of buffers in the pool while the system runs, within
+	 * the capacity the pool was created with. Growing brings buffers into use,
+	 * taking the pages of buffers that were never in use from the
+	 * {@link simpledb.file.PageArena PageArena}, which grows as needed.
+	 * Shrinking writes and takes unpinned buffers out of use at once, and
+	 * takes pinned buffers out of use as they are unpinned, so the pool
+	 * reaches its new size once those pins are released. Sticky pins are
+	 * released when the pool shrinks. The reservable part of the pool is set
+	 * again to {@link SimpleDB#RESERVE_FRACTION} of the new size.
+	 *
+	 * @param numbuffers
+	 *            the new number of buffers
+	 * @return the number of buffers the pool is resized to
+	 */
+	public synchronized int resize(int numbuffers) {
+		numbuffers = Math.max(1, Math.min(numbuffers, bufferMgr.capacity()));
+		int oldTarget = targetSize;
+		if (numbuffers < oldTarget)
+			releaseSticky();
+		SimpleDB.pageArena().reserve(bufferMgr.pagesNeeded(numbuffers));
+		bufferMgr.resize(numbuffers);
+		targetSize = numbuffers;
+		admission.setBudget(reservableBuffers());
+		SimpleDB.getLogger().log(Level.INFO, "Resized buffer pool from " + oldTarget + " to " + numbuffers + " buffers");
+		return numbuffers;
+	}
+
+	/**
+	 * Changes the number of buffers of one of the named pools while the system
+	 * runs, within the capacity of that pool, in the same way as
+	 * {@link #resize(int)} does for the whole buffer pool.
+	 *
+	 * @param pool
+	 *            the name of the pool
+	 * @param numbuffers
+	 *            the new number of buffers of the pool
+	 * @return the number of buffers the pool is resized to
+	 * @throws IllegalArgumentException
+	 *             if there is no pool of that name
+	 */
+	public synchronized int resizePool(String pool, int numbuffers) {
+		int index = (bufferMgr instanceof PooledBufferMgr) ? ((PooledBufferMgr) bufferMgr).poolIndex(pool) : -1;
+		if (index < 0)
+			throw new IllegalArgumentException("no buffer pool named " + pool);
+		PooledBufferMgr pooled = (PooledBufferMgr) bufferMgr;
+		int oldSize = pooled.pool(index).size();
+		if (numbuffers < oldSize)
+			releaseSticky();
+		SimpleDB.pageArena().reserve(pooled.pagesNeeded(index, numbuffers));
+		numbuffers = pooled.resize(index, numbuffers);
+		targetSize = pooled.target();
+		admission.setBudget(reservableBuffers());
+		SimpleDB.getLogger().log(Level.INFO,
+				"Resized buffer pool " + pool + " from " + oldSize + " to " + numbuffers + " buffers");
+		return numbuffers;
+	}
+
+	/**
+	 * Returns the names of the pools the buffers are divided into, or an
+	 * empty list if they form a single pool.
+	 *
+	 * @return a list of pool names
+	 */
+	public List<String> poolNames() {
+		if (bufferMgr instanceof PooledBufferMgr)
+			return ((PooledBufferMgr) bufferMgr).poolNames();
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the number of buffers in use. While the pool is shrinking, this
+	 * is larger than the size it was resized to.
+	 *
+	 * @return the number of buffers in use
+	 */
+	public int size() {
+		return bufferMgr.size();
+	}
+
+	/**
+	 * Returns the number of buffers in use in the pool that holds the
+	 * specified file, which is the whole buffer pool unless it is split into
+	 * pools.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return the number of buffers in use in the file's pool
+	 */
+	public int poolSize(String filename) {
+		return bufferMgr.poolSize(filename);
+	}
+
+	/**
+	 * Returns the largest number of buffers the pool can be resized to.
+	 *
+	 * @return the capacity of the pool
+	 */
+	public int capacity() {
+		return bufferMgr.capacity();
+	}
+
+	/**
+	 * Reads the blocks saved in the specified file back into the pool on a
+	 * background thread, and then saves the blocks in memory to that file
+	 * periodically and when the JVM shuts down, so that the pool is warm after
+	 * a restart. Does nothing if the blocks are already being saved.
+	 *
+	 * @param file
+	 *            the file the list of blocks is saved to
+	 * @param interval
+	 *            the time between saves, in milliseconds
+	 */
+	public synchronized void startPoolSnapshot(File file, long interval) {
+		if (snapshot != null)
+			return;
+		PoolSnapshot ps = new PoolSnapshot(bufferMgr, file, interval);
+		ps.start();
+		addShutdownHook();
+		snapshot = ps;
+		SimpleDB.getLogger().log(Level.INFO, "Started saving the buffer pool to " + file.getName());
+	}
+
+	/**
+	 * Starts recording the pins, new blocks and unpins of the transactions to
+	 * the specified file, for the {@link PolicySimulator}. The trace is closed
+	 * by {@link #stopTrace()} or when the JVM shuts down. Does nothing if a
+	 * trace is already being recorded.
+	 *
+	 * @param file
+	 *            the file the trace is written to
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public synchronized void startTrace(File file) throws IOException {
+		if (trace != null)
+			return;
+		BlockTrace bt = new BlockTrace(file);
+		bt.start();
+		addShutdownHook();
+		trace = bt;
+		SimpleDB.getLogger().log(Level.INFO, "Started recording the block trace to " + file.getName());
+	}
+
+	/**
+	 * Stops recording the trace, if one is being recorded, and closes its
+	 * file.
+	 */
+	public synchronized void stopTrace() {
+		if (trace == null)
+			return;
+		trace.close();
+		trace = null;
+	}
+
+	/**
+	 * Stops the background threads of the buffer manager: the page cleaner,
+	 * the read-ahead, the saving of the pool, which saves it one last time,
+	 * and the trace. Pins still work afterwards, without those threads. The
+	 * threads can be started again.
+	 */
+	public synchronized void shutdown() {
+		if (cleaner != null) {
+			cleaner.shutdown();
+			cleaner = null;
+		}
+		if (readAhead != null) {
+			readAhead.interrupt();
+			readAhead = null;
+		}
+		if (snapshot != null) {
+			snapshot.interrupt();
+			snapshot.save();
+			snapshot = null;
+		}
+		stopTrace();
+	}
+
+	/**
+	 * Calls {@link #shutdown()} when the JVM shuts down, so that the pool is
+	 * saved and the trace closed. The hook is only added once.
+	 */
+	private void addShutdownHook() {
+		if (shutdownHook)
+			return;
+		Runtime.getRuntime().addShutdownHook(new Thread("simpledb-buffer-shutdown") {
+			@Override
+			public void run() {
+				shutdown();
+			}
+		});
+		shutdownHook = true;
+	}
+
+	/**
+	 * Returns the trace the transactions record their pins to.
+	 *
+	 * @return the trace, or null if none is being recorded
+	 */
+	public BlockTrace trace() {
+		return trace;
+	}
+
+	/**
+	 * Sets the longest time a thread waits for a buffer before a
+	 * {@link BufferAbortException} is thrown.
+	 *
+	 * @param millis
+	 *            the maximum waiting time, in milliseconds
+	 */
+	public void setMaxWaitTime(long millis) {
+		maxTime = millis;
+	}
+
+	/**
+	 * Returns the longest time a thread waits for a buffer, in milliseconds.
+	 *
+	 * @return the maximum waiting time
+	 */
+	public long getMaxWaitTime() {
+		return maxTime;
+	}
+
+	/**
+	 * Sets the number of buffers that operators may reserve at once. Half of
+	 * the pool can be reserved by default. Resizing the pool sets the number
+	 * again from {@link SimpleDB#RESERVE_FRACTION}.
+	 *
+	 * @param count
+	 *            the number of reservable buffers
+	 */
+	public void setReservableBuffers(int count) {
+		admission.setBudget(count);
+	}
+
+	/**
+	 * Returns the number of buffers operators may reserve at once in a pool of
+	 * the target size, computed afresh from {@link SimpleDB#RESERVE_FRACTION}
+	 * so that repeated resizes do not accumulate rounding errors.
+	 *
+	 * @return the number of reservable buffers
+	 */
+	private int reservableBuffers() {
+		return (int) (SimpleDB.RESERVE_FRACTION * targetSize);
+	}
+
+	/**
+	 * Returns the number of buffers currently reserved by operators.
+	 *
+	 * @return the number of reserved buffers
+	 */
+	public int reserved() {
+		return admission.reserved();
+	}
+
+	/**
+	 * Sets the largest number of buffers a transaction may pin at once,
+	 * beyond the buffers it has reserved. A quota of 0 removes the limit.
+	 *
+	 * @param quota
+	 *            the pin quota of each transaction
+	 */
+	public void setPinQuota(int quota) {
+		pinQuota = Math.max(0, quota);
+	}
+
+	/**
+	 * Returns the largest number of buffers a transaction may pin at once,
+	 * beyond the buffers it has reserved, or 0 if there is no limit.
+	 *
+	 * @return the pin quota of each transaction
+	 */
+	public int getPinQuota() {
+		return pinQuota;
+	}
+
+	/**
+	 * Sets the largest number of blocks that may be pinned for good by
+	 * {@link #pinSticky(Block)}. A limit of 0, the default, disables sticky
+	 * pins; lowering the limit does not release the pins already held.
+	 *
+	 * @param count
+	 *            the largest number of sticky pins
+	 */
+	public void setStickyLimit(int count) {
+		maxSticky = Math.max(0, count);
+	}
+
+	/**
+	 * Pins the specified block for good, so that it stays in memory however
+	 * long it goes unused, such as the root of a B-tree that every probe
+	 * reads. The pin is held by the buffer manager rather than by a
+	 * transaction, and is only released when the pool shrinks. Does nothing
+	 * if the block is already pinned for good, if the limit of sticky pins is
+	 * reached, or if no buffer is free at once. A free buffer is not taken
+	 * while another thread is waiting for one.
+	 *
+	 * @param blk
+	 *            a reference to a disk block
+	 * @return true if the block is pinned for good
+	 */
+	public boolean pinSticky(Block blk) {
+		if (maxSticky == 0)
+			return false;
+		synchronized (sticky) {
+			if (sticky.containsKey(blk))
+				return true;
+			if (sticky.size() >= maxSticky)
+				return false;
+			Buffer buff = bufferMgr.pinIfNoWaiters(blk, AccessHint.KEEP);
+			if (buff == null)
+				return false;
+			sticky.put(blk, buff);
+			return true;
+		}
+	}
+
+	/**
+	 * Releases every sticky pin, so that a shrinking pool can take those
+	 * buffers out of use. The blocks are pinned for good again the next time
+	 * they are asked to be.
+	 */
+	private void releaseSticky() {
+		synchronized (sticky) {
+			for (Buffer buff : sticky.values())
+				bufferMgr.unpinAndNotify(buff);
+			sticky.clear();
+		}
+	}
+
+	/**
+	 * Reserves working space for an operator, of at least min and at most
+	 * desired buffers. The request is admitted, downsized or queued by the
+	 * central admission controller, depending on how much of the reservable
+	 * part of the pool is left. If the request is not admitted within a fixed
+	 * time period, then a {@link BufferAbortException} is thrown. A
+	 * transaction that already holds a reservation is admitted at once, since
+	 * it would otherwise wait for buffers only it can give back.
+	 *
+	 * @param min
+	 *            the least number of buffers the operator can work with
+	 * @param desired
+	 *            the number of buffers the operator would like
+	 * @param nested
+	 *            true if the operator's transaction already holds a
+	 *            reservation
+	 * @return the reservation, which the operator releases when it is done
+	 */
+	public BufferReservation reserve(int min, int desired, boolean nested) {
+		try {
+			BufferReservation res = admission.reserve(min, desired, nested, maxTime);
+			if (res == null)
+				throw new BufferAbortException();
+			return res;
+		} catch (InterruptedException e) {
+			throw new BufferAbortException();
+		}
+	}
+
+	/**
+	 * Returns the counters of the whole buffer pool, and the number of buffers
+	 * in each state. The counters are read without locking the pool.
+	 *
+	 * @return the statistics of the pool
+	 */
+	public BufferStats stats() {
+		return gather(bufferMgr);
+	}
+
+	/**
+	 * Returns the counters of one of the named pools, and the number of its
+	 * buffers in each state.
+	 *
+	 * @param pool
+	 *            the name of the pool
+	 * @return the statistics of the pool
+	 * @throws IllegalArgumentException
+	 *             if there is no pool of that name
+	 */
+	public BufferStats stats(String pool) {
+		int index = (bufferMgr instanceof PooledBufferMgr) ? ((PooledBufferMgr) bufferMgr).poolIndex(pool) : -1;
+		if (index < 0)
+			throw new IllegalArgumentException("no buffer pool named " + pool);
+		return gather(((PooledBufferMgr) bufferMgr).pool(index));
+	}
+
+	/**
+	 * Gathers the counters of the specified manager into new statistics, and
+	 * counts its buffers by state.
+	 *
+	 * @param mgr
+	 *            the manager to gather from
+	 * @return the statistics of the manager
+	 */
+	private static BufferStats gather(AbstractBufferMgr mgr) {
+		BufferStats stats = new BufferStats();
+		mgr.collectStats(stats);
+		stats.countFrames(mgr.buffers());
+		return stats;
+	}
+
+	/**
+	 * Publishes the statistics of the buffer pool as the MBean
+	 * {@value BufferPoolStats#OBJECT_NAME} of the platform MBean server, in
+	 * place of any registered before.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(BufferPoolStats.OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(new BufferPoolStats(this), name);
+		} catch (JMException e) {
+			SimpleDB.getLogger().log(Level.WARNING, "Cannot register the buffer pool MBean", e);
 		}
 	}
 
@@ -89,16 +677,52 @@ public class BufferMgr {
 	 *            a reference to a disk block
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pin(Block blk) {
+	public Buffer pin(Block blk) {
+		return pin(blk, AccessHint.RANDOM);
+	}
+
+	/**
+	 * Pins a buffer to the specified block with the specified intent,
+	 * potentially waiting until a buffer becomes available. The replacement
+	 * policy uses the hint to decide how long to keep the block in memory
+	 * after it is unpinned. If no buffer becomes available within a fixed time
+	 * period, then a {@link BufferAbortException} is thrown.
+	 *
+	 * @param blk
+	 *            a reference to a disk block
+	 * @param hint
+	 *            the intent of the pin
+	 * @return the buffer pinned to that block
+	 */
+	public Buffer pin(Block blk, AccessHint hint) {
+		return pin(blk, hint, null);
+	}
+
+	/**
+	 * Pins a buffer to the specified block with the specified intent, through
+	 * the specified ring of a bulk operation. If the block is not in memory,
+	 * it replaces the block of one of the ring's buffers when possible, rather
+	 * than a block chosen from the whole pool. Blocks pinned through a ring do
+	 * not start reading ahead, since that would read them into the whole pool.
+	 * If no buffer becomes available within a fixed time period, then a
+	 * {@link BufferAbortException} is thrown.
+	 *
+	 * @param blk
+	 *            a reference to a disk block
+	 * @param hint
+	 *            the intent of the pin
+	 * @param ring
+	 *            the ring of the pinning scan, or null
+	 * @return the buffer pinned to that block
+	 */
+	public Buffer pin(Block blk, AccessHint hint, BufferRing ring) {
 		try {
-			long timestamp = System.currentTimeMillis();
-			Buffer buff = bufferMgr.pin(blk);
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				buff = bufferMgr.pin(blk);
-			}
+			Buffer buff = bufferMgr.pinOrWait(blk, hint, ring, maxTime);
 			if (buff == null)
 				throw new BufferAbortException();
+			ReadAhead ra = readAhead;
+			if (ra != null && ring == null)
+				ra.notePin(blk);
 			return buff;
 		} catch (InterruptedException e) {
 			throw new BufferAbortException();
@@ -116,14 +740,27 @@ public class BufferMgr {
 	 *            the formatter used to initialize the page
 	 * @return the buffer pinned to that block
 	 */
-	public synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
+	public Buffer pinNew(String filename, PageFormatter fmtr) {
+		return pinNew(filename, fmtr, null);
+	}
+
+	/**
+	 * Pins a buffer to a new block in the specified file, through the
+	 * specified ring of a bulk operation, potentially waiting until a buffer
+	 * becomes available. If no buffer becomes available within a fixed time
+	 * period, then a {@link BufferAbortException} is thrown.
+	 *
+	 * @param filename
+	 *            the name of the file
+	 * @param fmtr
+	 *            the formatter used to initialize the page
+	 * @param ring
+	 *            the ring of the writing scan, or null
+	 * @return the buffer pinned to that block
+	 */
+	public Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
 		try {
-			long timestamp = System.currentTimeMillis();
-			Buffer buff = bufferMgr.pinNew(filename, fmtr);
-			while (buff == null && !waitingTooLong(timestamp)) {
-				wait(MAX_TIME);
-				buff = bufferMgr.pinNew(filename, fmtr);
-			}
+			Buffer buff = bufferMgr.pinNewOrWait(filename, fmtr, ring, maxTime);
 			if (buff == null)
 				throw new BufferAbortException();
 			return buff;
@@ -134,18 +771,12 @@ public class BufferMgr {
 
 	/**
 	 * Unpins the specified buffer. If the buffer's pin count becomes 0, then
-	 * the threads on the wait list are notified.
+	 * the first thread waiting for a buffer is woken up.
 	 *
 	 * @param buff
 	 *            the buffer to be unpinned
 	 */
-	public synchronized void unpin(Buffer buff) {
-		bufferMgr.unpin(buff);
-		if (!buff.isPinned())
-			notifyAll();
-	}
-
-	private boolean waitingTooLong(long starttime) {
-		return System.currentTimeMillis() - starttime > MAX_TIME;
+	public void unpin(Buffer buff) {
+		bufferMgr.unpinAndNotify(buff);
 	}
 }
@@ -0,0 +1,115 @@
+package simpledb.buffer;
+
+/**
+ * The MBean that publishes the statistics of the buffer pool over JMX. It
+ * holds no counters of its own, but reads those of the buffer manager each
+ * time an attribute is asked for.
+ */
+public class BufferPoolStats implements BufferPoolStatsMBean {
+
+	/**
+	 * The name the MBean is registered under.
+	 */
+	public static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+	// The buffer manager whose statistics are published
+	private BufferMgr bufferMgr;
+
+	/**
+	 * Creates the MBean of the specified buffer manager.
+	 *
+	 * @param bufferMgr
+	 *            the buffer manager whose statistics are published
+	 */
+	public BufferPoolStats(BufferMgr bufferMgr) {
+		this.bufferMgr = bufferMgr;
+	}
+
+	public long getHits() {
+		return bufferMgr.stats().hits();
+	}
+
+	public long getMisses() {
+		return bufferMgr.stats().misses();
+	}
+
+	public double getHitRatio() {
+		return bufferMgr.stats().hitRatio();
+	}
+
+	public long getNewBlocks() {
+		return bufferMgr.stats().newBlocks();
+	}
+
+	public long getEvictions() {
+		return bufferMgr.stats().evictions();
+	}
+
+	public long getDirtyEvictions() {
+		return bufferMgr.stats().dirtyEvictions();
+	}
+
+	public long getWaits() {
+		return bufferMgr.stats().waits();
+	}
+
+	public long getWaitTimeouts() {
+		return bufferMgr.stats().waitTimeouts();
+	}
+
+	public long getWaitMillis() {
+		return bufferMgr.stats().waitMillis();
+	}
+
+	public long[] getWaitHistogram() {
+		return bufferMgr.stats().waitHistogram();
+	}
+
+	public int getSize() {
+		return bufferMgr.stats().size();
+	}
+
+	public int getCapacity() {
+		return bufferMgr.capacity();
+	}
+
+	public int getPinned() {
+		return bufferMgr.stats().pinned();
+	}
+
+	public int getDirty() {
+		return bufferMgr.stats().dirty();
+	}
+
+	public int getFree() {
+		return bufferMgr.stats().free();
+	}
+
+	public int getOffline() {
+		return bufferMgr.stats().offline();
+	}
+
+	public int getReserved() {
+		return bufferMgr.reserved();
+	}
+
+	public int getTargetT1Size() {
+		BufferStats stats = bufferMgr.stats();
+		return stats.isARC() ? stats.targetT1Size() : -1;
+	}
+
+	public int getT1Size() {
+		BufferStats stats = bufferMgr.stats();
+		return stats.isARC() ? stats.t1Size() : -1;
+	}
+
+	public int getT2Size() {
+		BufferStats stats = bufferMgr.stats();
+		return stats.isARC() ? stats.t2Size() : -1;
+	}
+
+	public int getGhostSize() {
+		BufferStats stats = bufferMgr.stats();
+		return stats.isARC() ? stats.ghostSize() : -1;
+	}
+}
@@ -0,0 +1,53 @@
+package simpledb.buffer;
+
+/**
+ * The management interface of {@link BufferPoolStats}, through which JMX
+ * clients such as jconsole read the statistics of the buffer pool. Each
+ * attribute is read from the counters at the time it is asked for. The
+ * attributes of the ARC policy (the target size of T1, the sizes of T1 and T2
+ * and of the ghost lists) are -1 if no buffers are managed by ARC.
+ */
+public interface BufferPoolStatsMBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRatio();
+
+	long getNewBlocks();
+
+	long getEvictions();
+
+	long getDirtyEvictions();
+
+	long getWaits();
+
+	long getWaitTimeouts();
+
+	long getWaitMillis();
+
+	long[] getWaitHistogram();
+
+	int getSize();
+
+	int getCapacity();
+
+	int getPinned();
+
+	int getDirty();
+
+	int getFree();
+
+	int getOffline();
+
+	int getReserved();
+
+	int getTargetT1Size();
+
+	int getT1Size();
+
+	int getT2Size();
+
+	int getGhostSize();
+}
@@ -0,0 +1,110 @@
+package simpledb.buffer;
+
+/**
+ * A number of buffers reserved by an operator for its working space, such as
+ * the chunks of a multibuffer product. The reservation does not pin any
+ * buffers itself; it admits the operator to pin that many buffers at once,
+ * and raises the pin limit of the operator's transaction by as much. The
+ * operator releases the reservation when it is closed, and the transaction
+ * releases any reservation still held when it commits or rolls back.
+ *
+ * While other requests are queued for buffers, the controller may ask the
+ * reservation to shrink to a smaller target; an operator that can work with
+ * fewer buffers checks {@link #target()} when it can change its working space,
+ * and shrinks the reservation to it.
+ */
+public class BufferReservation {
+
+	// The controller that admitted the reservation
+	private AdmissionController controller;
+
+	// The number of buffers reserved, or 0 once released
+	private int size;
+
+	// The size the controller asked the reservation to shrink to, or 0
+	private int wanted = 0;
+
+	/**
+	 * Creates a BufferReservation of the specified number of buffers.
+	 *
+	 * @param controller
+	 *            The controller that admitted the reservation.
+	 * @param size
+	 *            The number of buffers reserved.
+	 */
+	BufferReservation(AdmissionController controller, int size) {
+		this.controller = controller;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of buffers reserved.
+	 *
+	 * @return an integer, which is 0 once the reservation is released
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of buffers the operator should keep: the size the
+	 * controller asked the reservation to shrink to, if it did, and otherwise
+	 * the size of the reservation.
+	 *
+	 * @return an integer
+	 */
+	public synchronized int target() {
+		return (wanted > 0 && wanted < size) ? wanted : size;
+	}
+
+	/**
+	 * Asks the reservation to shrink to the specified size, or withdraws the
+	 * request if the size is 0. The controller calls this method while
+	 * requests are queued for buffers.
+	 *
+	 * @param target
+	 *            The number of buffers the reservation should keep.
+	 */
+	synchronized void askToShrink(int target) {
+		wanted = target;
+	}
+
+	/**
+	 * Gives back the buffers reserved beyond the specified number, once the
+	 * operator knows it needs fewer than it was given. A reservation is never
+	 * shrunk below one buffer. The controller is called without holding the
+	 * lock of the reservation, since the controller calls the reservation
+	 * while holding its own lock.
+	 *
+	 * @param newSize
+	 *            The number of buffers to keep.
+	 */
+	public void shrink(int newSize) {
+		newSize = Math.max(1, newSize);
+		int count;
+		synchronized (this) {
+			if (size == 0 || newSize >= size)
+				return;
+			count = size - newSize;
+			size = newSize;
+			wanted = 0;
+		}
+		controller.giveBack(this, count, false);
+	}
+
+	/**
+	 * Gives back all the reserved buffers. Releasing a reservation twice has
+	 * no effect.
+	 */
+	public void release() {
+		int count;
+		synchronized (this) {
+			if (size == 0)
+				return;
+			count = size;
+			size = 0;
+			wanted = 0;
+		}
+		controller.giveBack(this, count, true);
+	}
+}
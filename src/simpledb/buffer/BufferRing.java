@@ -0,0 +1,147 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * A small private set of buffers that a bulk operation, such as a large
+ * sequential scan or the writing of a temporary table, reuses in turn. When a
+ * block pinned through the ring is not in memory, the buffer manager chooses
+ * a victim as usual until the ring is full, and from then on replaces the
+ * block of the ring's oldest buffer instead of choosing a victim from the
+ * whole pool, so the operation cycles through a few buffers rather than
+ * evicting the working set of every other transaction. A page written
+ * through the ring is only replaced once the ring has gone round, rather
+ * than as soon as the operation moves on to the next block.
+ *
+ * A buffer is only reused while it is unpinned and still holds the block the
+ * ring put in it; otherwise the manager chooses a victim as usual, and the
+ * new buffer takes the place of the old one in the ring. A buffer that a
+ * shrink of the pool took out of use has lost its block, and is not reused
+ * even once a regrow brings it back. When the buffer pool is striped, a
+ * buffer can only be reused for a block of its own stripe.
+ *
+ * A ring belongs to a single scan, and is only used by the thread running it.
+ */
+public class BufferRing {
+
+	// The managers that own the buffers of the ring
+	private AbstractBufferMgr[] owners;
+
+	// The buffers of the ring
+	private Buffer[] buffs;
+
+	// The block each buffer held when it was put in the ring
+	private Block[] blocks;
+
+	// The slot filled by the next buffer
+	private int next = 0;
+
+	/**
+	 * Creates an empty BufferRing with the specified number of slots.
+	 *
+	 * @param size
+	 *            The number of buffers in the ring.
+	 */
+	public BufferRing(int size) {
+		size = Math.max(1, size);
+		owners = new AbstractBufferMgr[size];
+		buffs = new Buffer[size];
+		blocks = new Block[size];
+	}
+
+	/**
+	 * Creates a ring for a bulk operation on the specified file, sized to the
+	 * configured ring size but to no more than an eighth of the buffers
+	 * currently in the file's pool. Returns null if rings are disabled.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return a BufferRing, or null
+	 */
+	public static BufferRing create(String filename) {
+		if (SimpleDB.RING_THRESHOLD <= 0)
+			return null;
+		int poolsize = SimpleDB.bufferMgr().poolSize(filename);
+		return new BufferRing(Math.min(SimpleDB.RING_SIZE, poolsize / 8));
+	}
+
+	/**
+	 * Creates a ring for a sequential scan of the specified file, if the file
+	 * has more blocks than the configured fraction of the buffers currently in
+	 * its pool. Returns null otherwise.
+	 *
+	 * @param filename
+	 *            The name of the scanned file.
+	 * @param fileBlocks
+	 *            The number of blocks in the scanned file.
+	 * @return a BufferRing, or null
+	 */
+	public static BufferRing forScan(String filename, int fileBlocks) {
+		if (SimpleDB.RING_THRESHOLD <= 0)
+			return null;
+		int poolsize = SimpleDB.bufferMgr().poolSize(filename);
+		if (fileBlocks <= SimpleDB.RING_THRESHOLD * poolsize)
+			return null;
+		return new BufferRing(Math.min(SimpleDB.RING_SIZE, poolsize / 8));
+	}
+
+	/**
+	 * Returns the number of slots of the ring.
+	 *
+	 * @return an integer
+	 */
+	public int size() {
+		return buffs.length;
+	}
+
+	/**
+	 * Returns the buffer in the next slot of the ring, which is the oldest
+	 * one, if the specified manager can reuse it: it is a buffer of that
+	 * manager that is unpinned and still holds the block the ring put in it.
+	 * Returns null otherwise, including while the ring is not yet full, so
+	 * that the manager chooses a victim as usual and the ring grows. The slot
+	 * is filled by the next call to {@link #add(AbstractBufferMgr, Buffer)}.
+	 *
+	 * @param owner
+	 *            The manager that will reuse the buffer.
+	 * @return a Buffer, or null
+	 */
+	Buffer reusable(AbstractBufferMgr owner) {
+		Buffer buff = buffs[next];
+		if (buff != null && owners[next] == owner && !buff.isPinned() && buff.block() != null
+				&& blocks[next].equals(buff.block()))
+			return buff;
+		return null;
+	}
+
+	/**
+	 * Returns true if the specified buffer is in the ring.
+	 *
+	 * @param buff
+	 *            The buffer to look for.
+	 * @return a boolean
+	 */
+	boolean contains(Buffer buff) {
+		for (Buffer b : buffs)
+			if (b == buff)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Puts the specified buffer, which was just assigned to a block, in the
+	 * next slot of the ring.
+	 *
+	 * @param owner
+	 *            The manager that owns the buffer.
+	 * @param buff
+	 *            The buffer to add.
+	 */
+	void add(AbstractBufferMgr owner, Buffer buff) {
+		owners[next] = owner;
+		buffs[next] = buff;
+		blocks[next] = buff.block();
+		next = (next + 1) % buffs.length;
+	}
+}
@@ -0,0 +1,358 @@
+package simpledb.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The counters of a buffer manager: how often a pinned block was found in
+ * memory or had to be read, how many blocks were replaced, and how long
+ * threads waited for a buffer. Each buffer manager, and each stripe or pool
+ * of one, updates its own counters, which are atomic so that they can be read
+ * at any time without taking the manager's lock.
+ *
+ * The counters of a whole buffer pool are gathered by
+ * {@link BufferMgr#stats()} into a new BufferStats, which also counts the
+ * buffers in each state at the time it is gathered. If the pool, or any of
+ * its stripes or pools, uses the ARC policy, the statistics also hold the
+ * state of that policy: its adaptation parameter and the sizes of its lists.
+ */
+public class BufferStats {
+
+	// The number of buckets of the histogram of waiting times. Bucket 0 counts
+	// waits under a millisecond, bucket i waits from 2^(i-1) to 2^i
+	// milliseconds, and the last bucket every longer wait.
+	public static final int WAIT_BUCKETS = 16;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong newBlocks = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong dirtyEvictions = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong waitTimeouts = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLongArray waitHistogram = new AtomicLongArray(WAIT_BUCKETS);
+
+	// The number of buffers in each state, counted when the statistics of a
+	// whole pool are gathered
+	private int size, pinned, dirty, free, offline;
+
+	// The state of the ARC policy, summed over the ARC managers gathered, and
+	// whether there were any
+	private boolean arc = false;
+	private int targetT1Size, t1Size, t2Size, ghostSize;
+
+	/**
+	 * Records a pin of a block that was already in memory.
+	 */
+	void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * Records that the specified buffer is about to be assigned to a block
+	 * that is not in memory, replacing the block it holds, if any.
+	 *
+	 * @param buff
+	 *            the buffer chosen for the block
+	 */
+	void recordMiss(Buffer buff) {
+		misses.incrementAndGet();
+		recordEviction(buff);
+	}
+
+	/**
+	 * Records that the specified buffer is about to be assigned to a new block
+	 * appended to a file, replacing the block it holds, if any.
+	 *
+	 * @param buff
+	 *            the buffer chosen for the new block
+	 */
+	void recordNew(Buffer buff) {
+		newBlocks.incrementAndGet();
+		recordEviction(buff);
+	}
+
+	private void recordEviction(Buffer buff) {
+		if (buff.block() == null)
+			return;
+		evictions.incrementAndGet();
+		if (buff.isModified())
+			dirtyEvictions.incrementAndGet();
+	}
+
+	/**
+	 * Records a thread that waited for a buffer, and whether it got one.
+	 *
+	 * @param nanos
+	 *            the time the thread waited, in nanoseconds
+	 * @param timedOut
+	 *            true if the thread gave up waiting
+	 */
+	void recordWait(long nanos, boolean timedOut) {
+		waits.incrementAndGet();
+		if (timedOut)
+			waitTimeouts.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+		long millis = nanos / 1000000;
+		int bucket = Math.min(WAIT_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+		waitHistogram.incrementAndGet(bucket);
+	}
+
+	/**
+	 * Adds the counters of the specified statistics to these.
+	 *
+	 * @param other
+	 *            the statistics of a stripe or pool
+	 */
+	void add(BufferStats other) {
+		hits.addAndGet(other.hits.get());
+		misses.addAndGet(other.misses.get());
+		newBlocks.addAndGet(other.newBlocks.get());
+		evictions.addAndGet(other.evictions.get());
+		dirtyEvictions.addAndGet(other.dirtyEvictions.get());
+		waits.addAndGet(other.waits.get());
+		waitTimeouts.addAndGet(other.waitTimeouts.get());
+		waitNanos.addAndGet(other.waitNanos.get());
+		for (int i = 0; i < WAIT_BUCKETS; i++)
+			waitHistogram.addAndGet(i, other.waitHistogram.get(i));
+	}
+
+	/**
+	 * Adds the state of an ARC manager to these statistics.
+	 *
+	 * @param target
+	 *            the adaptation parameter, the target size of T1
+	 * @param t1
+	 *            the number of blocks in T1
+	 * @param t2
+	 *            the number of blocks in T2
+	 * @param ghosts
+	 *            the number of blocks in the ghost lists B1 and B2
+	 */
+	void addARC(int target, int t1, int t2, int ghosts) {
+		arc = true;
+		targetT1Size += target;
+		t1Size += t1;
+		t2Size += t2;
+		ghostSize += ghosts;
+	}
+
+	/**
+	 * Counts the specified buffers by state. The buffers are not locked, so
+	 * the counts are only a close estimate while the pool is in use.
+	 *
+	 * @param buffs
+	 *            every buffer of the pool
+	 */
+	void countFrames(Buffer[] buffs) {
+		size = pinned = dirty = free = offline = 0;
+		for (Buffer buff : buffs) {
+			if (buff.isOffline()) {
+				offline++;
+				continue;
+			}
+			size++;
+			if (buff.isPinned())
+				pinned++;
+			else if (buff.block() == null)
+				free++;
+			else if (buff.isModified())
+				dirty++;
+		}
+	}
+
+	/**
+	 * Returns the number of pins of blocks that were already in memory.
+	 *
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of pins of blocks that had to be read from disk,
+	 * including those of the read-ahead and of the warm restart.
+	 *
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the fraction of pins of existing blocks that found the block in
+	 * memory.
+	 *
+	 * @return the hit ratio, or 0 if no block has been pinned
+	 */
+	public double hitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Returns the number of new blocks appended to files.
+	 *
+	 * @return the number of new blocks
+	 */
+	public long newBlocks() {
+		return newBlocks.get();
+	}
+
+	/**
+	 * Returns the number of blocks replaced by other blocks.
+	 *
+	 * @return the number of evictions
+	 */
+	public long evictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the number of replaced blocks that had to be written first.
+	 *
+	 * @return the number of dirty evictions
+	 */
+	public long dirtyEvictions() {
+		return dirtyEvictions.get();
+	}
+
+	/**
+	 * Returns the number of times a thread waited for a buffer.
+	 *
+	 * @return the number of waits
+	 */
+	public long waits() {
+		return waits.get();
+	}
+
+	/**
+	 * Returns the number of waits that ended without a buffer.
+	 *
+	 * @return the number of timeouts
+	 */
+	public long waitTimeouts() {
+		return waitTimeouts.get();
+	}
+
+	/**
+	 * Returns the total time threads waited for a buffer.
+	 *
+	 * @return the waiting time, in milliseconds
+	 */
+	public long waitMillis() {
+		return waitNanos.get() / 1000000;
+	}
+
+	/**
+	 * Returns the histogram of waiting times, as described for
+	 * {@link #WAIT_BUCKETS}.
+	 *
+	 * @return the count of waits in each bucket
+	 */
+	public long[] waitHistogram() {
+		long[] counts = new long[WAIT_BUCKETS];
+		for (int i = 0; i < WAIT_BUCKETS; i++)
+			counts[i] = waitHistogram.get(i);
+		return counts;
+	}
+
+	/**
+	 * Returns the number of buffers in use.
+	 *
+	 * @return an integer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of pinned buffers.
+	 *
+	 * @return an integer
+	 */
+	public int pinned() {
+		return pinned;
+	}
+
+	/**
+	 * Returns the number of unpinned buffers whose page must be written before
+	 * it is replaced.
+	 *
+	 * @return an integer
+	 */
+	public int dirty() {
+		return dirty;
+	}
+
+	/**
+	 * Returns the number of buffers in use that hold no block.
+	 *
+	 * @return an integer
+	 */
+	public int free() {
+		return free;
+	}
+
+	/**
+	 * Returns the number of buffers out of use.
+	 *
+	 * @return an integer
+	 */
+	public int offline() {
+		return offline;
+	}
+
+	/**
+	 * Returns true if the statistics hold the state of the ARC policy, that is,
+	 * if some of the buffers are managed by ARC.
+	 *
+	 * @return a boolean
+	 */
+	public boolean isARC() {
+		return arc;
+	}
+
+	/**
+	 * Returns the adaptation parameter p of ARC, the target number of buffers
+	 * for blocks referenced only once (T1), summed over the ARC managers.
+	 *
+	 * @return an integer, which is 0 if no buffers are managed by ARC
+	 */
+	public int targetT1Size() {
+		return targetT1Size;
+	}
+
+	/**
+	 * Returns the number of blocks of ARC's T1 list, the blocks in memory
+	 * referenced once recently.
+	 *
+	 * @return an integer
+	 */
+	public int t1Size() {
+		return t1Size;
+	}
+
+	/**
+	 * Returns the number of blocks of ARC's T2 list, the blocks in memory
+	 * referenced at least twice recently.
+	 *
+	 * @return an integer
+	 */
+	public int t2Size() {
+		return t2Size;
+	}
+
+	/**
+	 * Returns the number of recently replaced blocks remembered in ARC's ghost
+	 * lists B1 and B2.
+	 *
+	 * @return an integer
+	 */
+	public int ghostSize() {
+		return ghostSize;
+	}
+}
@@ -12,10 +12,11 @@ public class ClockBuffer extends Buffer {
 	protected boolean refBit = false;
 
 	/**
-	 * Creates a ClockBuffer instance. Sets the reference bit to true.
+	 * Creates a ClockBuffer instance. The reference bit stays clear until a
+	 * block is pinned in the buffer, so empty buffers are replaced first.
 	 */
 	public ClockBuffer() {
-		refBit = true;
+		refBit = false;
 	}
 
 	/**
@@ -1,11 +1,7 @@
 package simpledb.buffer;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.logging.Level;
-
 import simpledb.file.Block;
-import simpledb.server.SimpleDB;
+import simpledb.file.PageTable;
 
 /**
  * CS 4432 Project 1
@@ -13,17 +9,33 @@ import simpledb.server.SimpleDB;
  * We added this class to handle clock replacement policy for a buffer manager.
  *
  * This class handles pinning and unpinning buffers in memory using the clock
- * policy for buffer replacement.
+ * policy for buffer replacement. The buffers form a fixed array, and the clock
+ * head is an index into that array that only ever moves forward, so the cost
+ * of an eviction depends on how many buffers the head passes over rather than
+ * on the size of the pool. A separate page table from each block to the index
+ * of its buffer is used to find existing blocks.
+ *
+ * Pins with the {@link AccessHint#SEQUENTIAL} or {@link AccessHint#ONE_SHOT}
+ * hint do not set the reference bit, and unpinning a one-shot block clears it,
+ * so the head takes those buffers on its first pass. A used block of high
+ * {@link PagePriority priority}, such as a catalog or B-tree directory page,
+ * keeps its buffer for an extra pass of the head. Buffers of kept blocks
+ * are passed over like pinned ones, unless every unpinned buffer is kept.
+ * Dirty buffers are passed over too, until a few have been seen, so that the
+ * page cleaner can write them before they are replaced.
  *
  * @author Aditya Nivarthi
  */
 public class ClockBufferMgr extends AbstractBufferMgr {
 
-	// The map of the memory buffers
-	protected LinkedHashMap<Block, ClockBuffer> buffer;
+	// The memory buffers, in clock order
+	protected ClockBuffer[] buffer;
+
+	// The map of each block in memory to the index of its buffer
+	protected PageTable bufferIndex;
 
 	// Location of the clock head
-	protected Block clockHeadPosition = null;
+	protected int clockHeadPosition = 0;
 
 	/**
 	 * Creates a ClockBufferMgr instance with the specified maximum number of
@@ -33,8 +45,25 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	 *            The maximum number of buffers for memory.
 	 */
 	public ClockBufferMgr(int numbuffs) {
-		super(numbuffs);
-		buffer = new LinkedHashMap<Block, ClockBuffer>();
+		this(numbuffs, numbuffs);
+	}
+
+	/**
+	 * Creates a ClockBufferMgr instance that can grow to the specified
+	 * capacity, with the specified number of buffers in use.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 */
+	public ClockBufferMgr(int capacity, int numbuffs) {
+		super(capacity);
+		buffer = new ClockBuffer[capacity];
+		for (int i = 0; i < capacity; i++)
+			buffer[i] = new ClockBuffer();
+		bufferIndex = new PageTable(capacity);
+		resize(numbuffs);
 	}
 
 	/*
@@ -50,68 +79,104 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
 	 */
 	@Override
-	protected Buffer chooseUnpinnedBuffer() {
-		printBufferContents();
-		long startTime = System.nanoTime();
-		long endTime;
-		if (numAvailable > 0) {
-			endTime = System.nanoTime();
-			SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
-			return new ClockBuffer();
-		}
-
-
-		Buffer ret = findBufferClockPolicy();
+	protected Buffer[] buffers() {
+		return buffer;
+	}
 
-		endTime = System.nanoTime();
-		SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
+	/**
+	 * An empty buffer starts with its reference bit clear, so the clock head
+	 * takes it on its first pass.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+		((ClockBuffer) buff).setRefBit(false);
+	}
 
-		return ret;
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 */
+	@Override
+	protected Buffer chooseUnpinnedBuffer() {
+		int index = chooseUnpinnedIndex();
+		return (index < 0) ? null : buffer[index];
 	}
 
 	/**
-	 * Finds a buffer to remove by clock policy and removes it from memory.
+	 * Chooses an unpinned buffer by clock policy and removes its block from
+	 * the map of blocks in memory. A reusable buffer of the pin's ring is
+	 * chosen before the clock head moves.
+	 *
+	 * @return the index of the buffer, or -1 if every buffer is pinned
 	 */
-	protected synchronized Buffer findBufferClockPolicy() {
-		// Check if buffer is empty
-		if (buffer.keySet().size() <= 0) {
-			return new ClockBuffer();
-		}
-
-		// Find the clock head position block in the list of buffer slots
-		Iterator<Block> iterator = buffer.keySet().iterator();
-		outerloop: while (iterator.hasNext()) {
-			if (iterator.next().equals(clockHeadPosition)) {
-				break outerloop;
-			}
-		}
+	protected int chooseUnpinnedIndex() {
+		int index = -1;
+		Buffer ringBuff = ringCandidate();
+		if (ringBuff != null)
+			index = bufferIndex.get(ringBuff.block().key());
+		if (index < 0)
+			index = findBufferClockPolicy(true);
+		if (index < 0)
+			index = findBufferClockPolicy(false);
+		if (index >= 0 && buffer[index].block() != null)
+			bufferIndex.remove(buffer[index].block().key());
+
+		return index;
+	}
 
-		// Run at least the partial pass from clockHeadPosition to the end of
-		// the buffer list, and then repeat from the start of the buffer list.
-		for (int j = 0; j < 3; j++) {
-			while (iterator.hasNext()) {
-				Block blk = iterator.next();
-
-				// Skip pinned blocks
-				if (buffer.get(blk).isPinned()) {
-				} else if (buffer.get(blk).getRefBit()) {
-					// Set reference bits to false (0) if not pinned
-					buffer.get(blk).setRefBit(false);
-					SimpleDB.getLogger().log(Level.INFO, "Set reference bit to 'false' on block: " + blk);
-				} else {
-					// Found a block to replace
-					clockHeadPosition = blk;
-					SimpleDB.getLogger().log(Level.INFO, "Removed block: " + blk + " from buffer");
-					return buffer.remove(blk);
-				}
+	/**
+	 * Finds a buffer to replace by clock policy. The clock head sweeps the
+	 * buffers, skipping pinned ones and clearing set reference bits, until it
+	 * finds an unpinned buffer whose reference bit is already clear and whose
+	 * block has no extra chance left. Two full sweeps, plus one for each extra
+	 * chance, are enough to clear every reference bit and chance, so if no
+	 * buffer is found by then, every buffer is pinned (or kept, if kept buffers
+	 * are passed over). A dirty buffer is only replaced if no clean one is found before
+	 * several dirty ones are passed over.
+	 *
+	 * @param passKept
+	 *            Whether to pass over the buffers of kept blocks.
+	 * @return the index of the buffer, or -1 if no buffer can be replaced
+	 */
+	protected int findBufferClockPolicy(boolean passKept) {
+		if (numAvailable <= 0)
+			return -1;
+
+		int dirtyIndex = -1;
+		int dirtyPassed = 0;
+		for (int step = 0; step < (2 + PagePriority.MAX_CHANCES) * buffer.length; step++) {
+			int index = clockHeadPosition;
+			clockHeadPosition = (clockHeadPosition + 1) % buffer.length;
+
+			ClockBuffer buff = buffer[index];
+			if (buff.isPinned() || (passKept && buff.hint() == AccessHint.KEEP)) {
+				// Skip pinned and kept blocks
+			} else if (buff.getRefBit()) {
+				// Set reference bits to false (0) if not pinned
+				buff.setRefBit(false);
+			} else if (buff.useChance()) {
+				// Pass over high-priority blocks once more
+			} else if (buff.isModified()) {
+				// Pass over dirty blocks, unless there are too many
+				if (dirtyIndex < 0)
+					dirtyIndex = index;
+				if (++dirtyPassed >= CLEAN_VICTIM_SEARCH)
+					return dirtyIndex;
+			} else {
+				// Found a block to replace
+				return index;
 			}
-			iterator = buffer.keySet().iterator();
 		}
 
-		return null;
+		return dirtyIndex;
 	}
 
 	/*
@@ -122,17 +187,21 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected Buffer findExistingBuffer(Block blk) {
-		long startTime = System.nanoTime();
-
-		ClockBuffer buff = buffer.get(blk);
-		if (buff != null) {
-			buff.setRefBit(true);
-		}
-
-		long endTime = System.nanoTime();
-		SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
+		int index = bufferIndex.get(blk.key());
+		return (index == PageTable.NONE) ? null : buffer[index];
+	}
 
-		return buff;
+	/**
+	 * A block whose reference bit is set is hotter than one whose bit is
+	 * clear.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#heat(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected long heat(Buffer buff) {
+		return ((ClockBuffer) buff).getRefBit() ? 1 : 0;
 	}
 
 	/*
@@ -142,9 +211,9 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected synchronized void flushAll(int txnum) {
-		for (Block block : buffer.keySet()) {
-			if (buffer.get(block).isModifiedBy(txnum)) {
-				buffer.get(block).flush();
+		for (ClockBuffer buff : buffer) {
+			if (buff.isModifiedBy(txnum)) {
+				buff.flush();
 			}
 		}
 	}
@@ -152,34 +221,32 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block)
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
 	 */
 	@Override
-	protected synchronized Buffer pin(Block blk) {
-		Buffer buff = findExistingBuffer(blk);
-		SimpleDB.getLogger().log(Level.INFO, "Searched for existing block: " + blk + " and block was: " + buff);
+	protected synchronized Buffer pin(Block blk, AccessHint hint) {
+		ClockBuffer buff = (ClockBuffer) findExistingBuffer(blk);
 
 		if (buff == null) {
-			buff = chooseUnpinnedBuffer();
-			if (buff == null) {
-				SimpleDB.getLogger().log(Level.SEVERE, "Unpinned buffer was null");
+			int index = chooseUnpinnedIndex();
+			if (index < 0)
 				return null;
-			}
-			buff.assignToBlock(blk);
-			buffer.put(blk, (ClockBuffer) buff);
-
-			if (clockHeadPosition == null) {
-				clockHeadPosition = blk;
-			}
-
-			if (!buff.isPinned()) {
-				numAvailable--;
-				numAvailable = (numAvailable < 0) ? 0 : numAvailable;
-			}
+			buff = buffer[index];
+			assignToBlock(buff, blk);
+			bufferIndex.put(blk.key(), index);
+		} else
+			stats.recordHit();
+
+		if (!buff.isPinned()) {
+			numAvailable--;
 		}
 
-		SimpleDB.getLogger().log(Level.INFO, "Number available: " + numAvailable);
-
+		if (hint.countsAsReuse()) {
+			buff.setRefBit(true);
+			buff.grantChances();
+		}
+		buff.setHint(hint);
 		buff.pin();
 		return buff;
 	}
@@ -192,39 +259,21 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-		Buffer buff = chooseUnpinnedBuffer();
-		if (buff == null) {
-			SimpleDB.getLogger().log(Level.SEVERE, "Unpinned buffer was null");
+		int index = chooseUnpinnedIndex();
+		if (index < 0)
 			return null;
-		}
-		buff.assignToNew(filename, fmtr);
-		buffer.put(buff.block(), (ClockBuffer) buff);
-
-		if (clockHeadPosition == null) {
-			clockHeadPosition = buff.block();
-		}
+		ClockBuffer buff = buffer[index];
+		assignToNew(buff, filename, fmtr);
+		bufferIndex.put(buff.block().key(), index);
 
 		numAvailable--;
-		numAvailable = (numAvailable < 0) ? 0 : numAvailable;
-
-		SimpleDB.getLogger().log(Level.INFO, "Number available: " + numAvailable);
 
+		buff.setRefBit(true);
+		buff.grantChances();
 		buff.pin();
 		return buff;
 	}
 
-	/**
-	 * Prints the buffer contents to the log output.
-	 */
-	protected void printBufferContents() {
-		String output = "";
-		for (Block blk : buffer.keySet()) {
-			output += blk + ": " + buffer.get(blk) + "\n";
-		}
-
-		SimpleDB.getLogger().log(Level.INFO, "\n\nBuffer Contents:\n" + output + "\n Clock head location: " + clockHeadPosition);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 *
@@ -233,6 +282,10 @@ public class ClockBufferMgr extends AbstractBufferMgr {
 	@Override
 	protected synchronized void unpin(Buffer buff) {
 		buff.unpin();
-		SimpleDB.getLogger().log(Level.INFO, "Buffer unpinned: " + buff);
+		if (!buff.isPinned()) {
+			if (buff.hint() == AccessHint.ONE_SHOT)
+				((ClockBuffer) buff).setRefBit(false);
+			numAvailable++;
+		}
 	}
 }
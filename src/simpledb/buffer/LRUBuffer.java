@@ -7,35 +7,68 @@ package simpledb.buffer;
  * used time.
  *
  * This class represents an individual buffer used in least recently used
- * replacement policy.
+ * replacement policy. The time of last use is a logical access counter kept by
+ * the {@link LRUBufferMgr}, and the previous and next references link the
+ * buffer into the manager's recency list while it is unpinned.
  *
  * @author Lambert Wang
  */
 public class LRUBuffer extends Buffer {
 
-	protected long leastRecentlyUsedTimeMillis;
+	protected long lastAccess;
+
+	// The position of this buffer in the manager's buffer pool
+	protected int index;
+
+	// The neighbours of this buffer in the recency list
+	protected LRUBuffer prev = null;
+	protected LRUBuffer next = null;
+
+	// True if the buffer is in the old part of the recency list
+	protected boolean old = false;
+
+	// True if the block was pinned with a hint that counts as reuse since it
+	// was assigned to the buffer
+	protected boolean reused = false;
 
 	/**
-	 * Creates a LRUBuffer instance. Sets the last recently used time.
+	 * Creates a LRUBuffer instance at the specified position of the buffer
+	 * pool. The access time is set when the buffer is first pinned.
+	 *
+	 * @param index
+	 *            The position of the buffer in the buffer pool.
 	 */
-	public LRUBuffer() {
-		leastRecentlyUsedTimeMillis = System.currentTimeMillis();
+	public LRUBuffer(int index) {
+		this.index = index;
+		lastAccess = 0;
 	}
 
 	/**
-	 * Returns the least recently used time in milliseconds.
+	 * Returns the position of this buffer in the buffer pool.
+	 *
+	 * @return an integer
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the logical time at which this buffer was last used.
 	 *
 	 * @return a long
 	 */
-	public long getLeastRecentlyUsedTimeMillis() {
-		return leastRecentlyUsedTimeMillis;
+	public long getLastAccess() {
+		return lastAccess;
 	}
 
 	/**
-	 * Sets the least recently used time in milliseconds.
+	 * Sets the logical time at which this buffer was last used.
+	 *
+	 * @param time
+	 *            The value of the access counter at the time of use.
 	 */
-	public void setLeastRecentlyUsedTimeMillis() {
-		leastRecentlyUsedTimeMillis = System.currentTimeMillis();
+	public void setLastAccess(long time) {
+		lastAccess = time;
 	}
 
 	/**
@@ -50,6 +83,6 @@ public class LRUBuffer extends Buffer {
 	 */
 	@Override
 	public String toString() {
-		return super.toString() + ", LRU time: " + leastRecentlyUsedTimeMillis + " ms";
+		return super.toString() + ", LRU time: " + lastAccess;
 	}
 }
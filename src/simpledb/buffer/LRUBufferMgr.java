@@ -1,10 +1,7 @@
 package simpledb.buffer;
 
-import java.util.HashMap;
-import java.util.logging.Level;
-
 import simpledb.file.Block;
-import simpledb.server.SimpleDB;
+import simpledb.file.PageTable;
 
 /**
  * CS 4432 Project 1
@@ -13,14 +10,54 @@ import simpledb.server.SimpleDB;
  * manager.
  *
  * This class handles pinning and unpinning buffers in memory using the least
- * recently used policy for buffer replacement.
+ * recently used policy for buffer replacement. The unpinned buffers are kept in
+ * a doubly-linked recency list, ordered from least to most recently used.
+ * Pinned buffers are not in the list, so the victim is always the head of the
+ * list, and both choosing a victim and touching a buffer take constant time.
+ *
+ * The list is split into a young part, at the most recently used end, and an
+ * old part of {@link #OLD_EIGHTHS} eighths of the list, at the least recently
+ * used end. A buffer whose block was pinned with the {@link AccessHint#ONE_SHOT}
+ * hint is put at the least recently used end of the list when it is unpinned.
+ * A block read by a {@link AccessHint#SEQUENTIAL} pass, and never pinned with a
+ * hint that counts as reuse, is put at the head of the old part, near the
+ * least recently used end: a scan then only replaces old blocks, and cannot
+ * flush the young part of the list, while a small table scanned over and over
+ * stays in memory if it fits in the old part. Buffers of kept blocks are
+ * passed over when choosing a victim, unless every unpinned buffer is kept.
+ * A used block of high {@link PagePriority priority}, such as a catalog or
+ * B-tree directory page, is moved back to the most recently used end once
+ * when it reaches the least recently used end.
+ *
+ * Among the first few candidates, a clean buffer is replaced in preference to
+ * a dirty one, so the page does not have to be written before the buffer is
+ * reused.
  *
  * @author Lambert Wang
  */
 public class LRUBufferMgr extends AbstractBufferMgr {
 
-	// The map of the memory buffers
-	protected HashMap<Block, LRUBuffer> buffer;
+	// The memory buffers, all created when the manager is created
+	protected LRUBuffer[] bufferpool;
+
+	// The map of each block in memory to the index of its buffer
+	protected PageTable buffer;
+
+	// The number of eighths of the recency list in its old part
+	public static final int OLD_EIGHTHS = 3;
+
+	// The least and most recently used unpinned buffers
+	protected LRUBuffer head = null;
+	protected LRUBuffer tail = null;
+
+	// The last buffer of the old part of the recency list, which starts at
+	// the head, the number of buffers in the old part, and in the list
+	protected LRUBuffer oldTail = null;
+	protected int oldCount = 0;
+	protected int listCount = 0;
+
+	// The logical clock used to time buffer accesses
+	protected long accessCounter = 0;
 
 	/**
 	 * Creates a LRUBufferMgr instance with the specified maximum number of
@@ -30,8 +67,25 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	 *            The maximum number of buffers for memory.
 	 */
 	public LRUBufferMgr(int numbuffs) {
-		super(numbuffs);
-		buffer = new HashMap<Block, LRUBuffer>();
+		this(numbuffs, numbuffs);
+	}
+
+	/**
+	 * Creates a LRUBufferMgr instance that can grow to the specified capacity,
+	 * with the specified number of buffers in use.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 */
+	public LRUBufferMgr(int capacity, int numbuffs) {
+		super(capacity);
+		buffer = new PageTable(capacity);
+		bufferpool = new LRUBuffer[capacity];
+		for (int i = 0; i < capacity; i++)
+			bufferpool[i] = new LRUBuffer(i);
+		resize(numbuffs);
 	}
 
 	/*
@@ -44,10 +98,33 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 		return numAvailable;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
+	 */
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
 	/**
-	 * Chooses an unpinned buffer to replace with a new page. If there is no
-	 * space in the memory buffer, the least recently used buffer is emptied and
-	 * returned.
+	 * An empty buffer goes to the least recently used end of the recency
+	 * list, so it is used first.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+		linkAsLeastRecent((LRUBuffer) buff);
+	}
+
+	/**
+	 * Chooses an unpinned buffer to replace with a new page. Buffers that have
+	 * never held a block start out at the least recently used end of the
+	 * recency list, so they are used first.
 	 *
 	 * (non-Javadoc)
 	 *
@@ -55,22 +132,7 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected Buffer chooseUnpinnedBuffer() {
-		printBufferContents();
-		long startTime = System.nanoTime();
-		long endTime;
-		if (numAvailable > 0) {
-			endTime = System.nanoTime();
-			SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
-			return new LRUBuffer();
-		}
-
-
-		Buffer ret = findLeastRecentlyUsed();
-
-		endTime = System.nanoTime();
-		SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
-
-		return ret;
+		return findLeastRecentlyUsed();
 	}
 
 	/*
@@ -81,53 +143,64 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected Buffer findExistingBuffer(Block blk) {
-		long startTime = System.nanoTime();
-
-		LRUBuffer buff = buffer.get(blk);
-		if (buff != null) {
-			buff.setLeastRecentlyUsedTimeMillis();
-		}
-
-		long endTime = System.nanoTime();
-		SimpleDB.getLogger().log(Level.INFO, "Time elapsed: " + (endTime - startTime) + " ns");
-
-		return buff;
+		int index = buffer.get(blk.key());
+		return (index == PageTable.NONE) ? null : bufferpool[index];
 	}
 
 	/**
-	 * Finds the least recently used buffer and removes it from memory. If the
-	 * memory buffer is empty, returns a new buffer to write into. Otherwise,
-	 * returns the least recently used buffer.
+	 * Removes the block of the least recently used unpinned buffer from memory
+	 * and returns the buffer, so it can be reused in place. Buffers of kept
+	 * blocks are only used if every unpinned buffer is kept, and the first
+	 * clean buffer among the least recently used candidates is preferred. A
+	 * candidate whose block still has an extra chance, being of high priority,
+	 * is moved to the most recently used end instead. A reusable buffer of the
+	 * pin's ring is replaced before any other. Returns null if every buffer is
+	 * pinned.
 	 */
 	protected synchronized LRUBuffer findLeastRecentlyUsed() {
-		long time = -1;
-		Block blk = null;
-
-		// Check if buffer is empty
-		if (buffer.keySet().size() <= 0) {
-			return new LRUBuffer();
-		}
-
-		// Compare each least recently used time with the smallest value to find
-		// the time farthest in the part.
-		for (Block block : buffer.keySet()) {
-			LRUBuffer buff = buffer.get(block);
-			if (!buff.isPinned()) {
-				if (time == -1) {
-					time = buff.getLeastRecentlyUsedTimeMillis();
-					blk = block;
-				} else if (time > buff.getLeastRecentlyUsedTimeMillis()) {
-					time = buff.getLeastRecentlyUsedTimeMillis();
-					blk = block;
-				}
+		LRUBuffer buff = (LRUBuffer) ringCandidate();
+		LRUBuffer dirty = null;
+		int examined = 0;
+		LRUBuffer candidate = head;
+		while (buff == null && candidate != null && examined < CLEAN_VICTIM_SEARCH) {
+			LRUBuffer next = candidate.next;
+			if (candidate.hint() == AccessHint.KEEP) {
+				// Skip kept blocks
+			} else if (candidate.useChance()) {
+				unlink(candidate);
+				linkAsMostRecent(candidate);
+			} else {
+				examined++;
+				if (!candidate.isModified())
+					buff = candidate;
+				else if (dirty == null)
+					dirty = candidate;
 			}
+			candidate = next;
 		}
+		if (buff == null)
+			buff = dirty;
+		if (buff == null)
+			buff = head;
+		if (buff == null)
+			return null;
 
-		if (blk != null) {
-			SimpleDB.getLogger().log(Level.INFO, "Removed block: " + blk + " from buffer");
-			return buffer.remove(blk);
-		}
-		return null;
+		unlink(buff);
+		if (buff.block() != null)
+			buffer.remove(buff.block().key());
+		return buff;
+	}
+
+	/**
+	 * The more recently a block was used, the hotter it is.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#heat(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected long heat(Buffer buff) {
+		return ((LRUBuffer) buff).getLastAccess();
 	}
 
 	/*
@@ -137,9 +210,9 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected synchronized void flushAll(int txnum) {
-		for (Block block : buffer.keySet()) {
-			if (buffer.get(block).isModifiedBy(txnum)) {
-				buffer.get(block).flush();
+		for (LRUBuffer buff : bufferpool) {
+			if (buff.isModifiedBy(txnum)) {
+				buff.flush();
 			}
 		}
 	}
@@ -147,32 +220,37 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block)
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
 	 */
 	@Override
-	protected synchronized Buffer pin(Block blk) {
-		Buffer buff = findExistingBuffer(blk);
-		SimpleDB.getLogger().log(Level.INFO, "Searched for existing block: " + blk + " and block was: " + buff);
+	protected synchronized Buffer pin(Block blk, AccessHint hint) {
+		LRUBuffer buff = (LRUBuffer) findExistingBuffer(blk);
 
 		if (buff == null) {
-			buff = chooseUnpinnedBuffer();
-			if (buff == null) {
-				SimpleDB.getLogger().log(Level.SEVERE, "Unpinned buffer was null");
+			buff = (LRUBuffer) chooseUnpinnedBuffer();
+			if (buff == null)
 				return null;
-			}
-			buff.assignToBlock(blk);
-			buffer.put(blk, (LRUBuffer) buff);
+			assignToBlock(buff, blk);
+			buffer.put(blk.key(), buff.getIndex());
+			buff.reused = false;
+		} else {
+			stats.recordHit();
+			if (!buff.isPinned())
+				unlink(buff);
+		}
 
-			if (!buff.isPinned()) {
-				numAvailable--;
-				numAvailable = (numAvailable < 0) ? 0 : numAvailable;
-			}
+		if (!buff.isPinned()) {
+			numAvailable--;
 		}
 
-		SimpleDB.getLogger().log(Level.INFO, "Number available: " + numAvailable);
+		buff.setHint(hint);
+		if (hint.countsAsReuse()) {
+			buff.grantChances();
+			buff.reused = true;
+		}
 		buff.pin();
-
-		((LRUBuffer) buff).setLeastRecentlyUsedTimeMillis();
+		buff.setLastAccess(++accessCounter);
 
 		return buff;
 	}
@@ -185,49 +263,162 @@ public class LRUBufferMgr extends AbstractBufferMgr {
 	 */
 	@Override
 	protected synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-		Buffer buff = chooseUnpinnedBuffer();
-		if (buff == null) {
-			SimpleDB.getLogger().log(Level.SEVERE, "Unpinned buffer was null");
+		LRUBuffer buff = (LRUBuffer) chooseUnpinnedBuffer();
+		if (buff == null)
 			return null;
-		}
 
-		buff.assignToNew(filename, fmtr);
-		SimpleDB.getLogger().log(Level.INFO, "Pinned new block: " + buff.block());
-		buffer.put(buff.block(), (LRUBuffer) buff);
+		assignToNew(buff, filename, fmtr);
+		buffer.put(buff.block().key(), buff.getIndex());
+		buff.reused = true;
 
 		numAvailable--;
-		numAvailable = (numAvailable < 0) ? 0 : numAvailable;
-		SimpleDB.getLogger().log(Level.INFO, "Number available: " + numAvailable);
 
+		buff.grantChances();
 		buff.pin();
+		buff.setLastAccess(++accessCounter);
 
-		((LRUBuffer) buff).setLeastRecentlyUsedTimeMillis();
-
-		SimpleDB.getLogger().log(Level.INFO, "New block: " + buff);
 		return buff;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected synchronized void unpin(Buffer buff) {
+		LRUBuffer lruBuff = (LRUBuffer) buff;
+		lruBuff.unpin();
+		lruBuff.setLastAccess(++accessCounter);
+		if (!lruBuff.isPinned()) {
+			if (lruBuff.hint() == AccessHint.ONE_SHOT)
+				linkAsLeastRecent(lruBuff);
+			else if (lruBuff.hint() == AccessHint.SEQUENTIAL && !lruBuff.reused)
+				linkAsOld(lruBuff);
+			else
+				linkAsMostRecent(lruBuff);
+			numAvailable++;
+		}
+	}
+
 	/**
-	 * Prints the buffer contents to the log output.
+	 * Adds the specified buffer to the most recently used end of the recency
+	 * list.
+	 *
+	 * @param buff
+	 *            The unpinned buffer to add.
+	 */
+	protected void linkAsMostRecent(LRUBuffer buff) {
+		buff.prev = tail;
+		buff.next = null;
+		if (tail == null)
+			head = buff;
+		else
+			tail.next = buff;
+		tail = buff;
+		buff.old = false;
+		listCount++;
+		balance();
+	}
+
+	/**
+	 * Adds the specified buffer to the head of the old part of the recency
+	 * list, after the other old buffers, so it is replaced before any young
+	 * buffer but after the buffers already in the old part.
+	 *
+	 * @param buff
+	 *            The unpinned buffer to add.
 	 */
-	protected void printBufferContents() {
-		String output = "";
-		for (Block blk : buffer.keySet()) {
-			output += blk + ": " + buffer.get(blk) + "\n";
+	protected void linkAsOld(LRUBuffer buff) {
+		if (oldTail == null) {
+			linkAsLeastRecent(buff);
+			return;
 		}
+		buff.prev = oldTail;
+		buff.next = oldTail.next;
+		if (oldTail.next == null)
+			tail = buff;
+		else
+			oldTail.next.prev = buff;
+		oldTail.next = buff;
+		oldTail = buff;
+		buff.old = true;
+		oldCount++;
+		listCount++;
+		balance();
+	}
 
-		SimpleDB.getLogger().log(Level.INFO, "\n\nBuffer Contents:\n" + output);
+	/**
+	 * Adds the specified buffer to the least recently used end of the recency
+	 * list, so it is the next one replaced.
+	 *
+	 * @param buff
+	 *            The unpinned buffer to add.
+	 */
+	protected void linkAsLeastRecent(LRUBuffer buff) {
+		buff.prev = null;
+		buff.next = head;
+		if (head == null)
+			tail = buff;
+		else
+			head.prev = buff;
+		head = buff;
+		buff.old = true;
+		if (oldTail == null)
+			oldTail = buff;
+		oldCount++;
+		listCount++;
+		balance();
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Removes the specified buffer from the recency list.
 	 *
-	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 * @param buff
+	 *            The buffer to remove.
 	 */
-	@Override
-	protected synchronized void unpin(Buffer buff) {
-		buff.unpin();
-		((LRUBuffer) buff).setLeastRecentlyUsedTimeMillis();
-		SimpleDB.getLogger().log(Level.INFO, "Buffer unpinned: " + buff);
+	protected void unlink(LRUBuffer buff) {
+		if (buff.old) {
+			if (buff == oldTail)
+				oldTail = buff.prev;
+			oldCount--;
+			buff.old = false;
+		}
+		listCount--;
+		if (buff.prev == null)
+			head = buff.next;
+		else
+			buff.prev.next = buff.next;
+		if (buff.next == null)
+			tail = buff.prev;
+		else
+			buff.next.prev = buff.prev;
+		buff.prev = null;
+		buff.next = null;
+		balance();
+	}
+
+	/**
+	 * Moves the boundary between the old and the young part of the recency
+	 * list until the old part holds {@link #OLD_EIGHTHS} eighths of the list.
+	 * Young buffers next to the boundary age into the old part, and old ones
+	 * next to it become young again, so the boundary moves by a buffer or so
+	 * for each change to the list.
+	 */
+	private void balance() {
+		int target = listCount * OLD_EIGHTHS / 8;
+		while (oldCount > target) {
+			oldTail.old = false;
+			oldTail = oldTail.prev;
+			oldCount--;
+		}
+		while (oldCount < target) {
+			LRUBuffer young = (oldTail == null) ? head : oldTail.next;
+			if (young == null)
+				break;
+			young.old = true;
+			oldTail = young;
+			oldCount++;
+		}
 	}
 }
@@ -0,0 +1,79 @@
+package simpledb.buffer;
+
+/**
+ * This class represents an individual buffer used in the LRU-2 replacement
+ * policy. It keeps the logical times of the last two references to its block.
+ */
+public class LRUKBuffer extends Buffer {
+
+	// The time of the most recent reference to the block
+	protected long lastAccess = 0;
+
+	// The time of the reference before that, or 0 if there was none
+	protected long previousAccess = 0;
+
+	// The position of this buffer in the manager's buffer pool
+	protected int index;
+
+	/**
+	 * Creates a LRUKBuffer instance at the specified position of the buffer
+	 * pool.
+	 *
+	 * @param index
+	 *            The position of the buffer in the buffer pool.
+	 */
+	public LRUKBuffer(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns the position of this buffer in the buffer pool.
+	 *
+	 * @return an integer
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the logical time of the most recent reference to the block.
+	 *
+	 * @return a long
+	 */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * Returns the logical time of the second most recent reference to the
+	 * block, or 0 if the block has only been referenced once.
+	 *
+	 * @return a long
+	 */
+	public long getPreviousAccess() {
+		return previousAccess;
+	}
+
+	/**
+	 * Sets the times of the last two references to the block.
+	 *
+	 * @param previous
+	 *            The time of the second most recent reference, or 0.
+	 * @param last
+	 *            The time of the most recent reference.
+	 */
+	public void setAccessTimes(long previous, long last) {
+		previousAccess = previous;
+		lastAccess = last;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.Buffer#toString()
+	 */
+	@Override
+	public String toString() {
+		return super.toString() + ", LRU-2 times: " + previousAccess + ", " + lastAccess;
+	}
+}
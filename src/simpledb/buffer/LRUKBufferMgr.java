@@ -0,0 +1,297 @@
+package simpledb.buffer;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import simpledb.file.Block;
+import simpledb.file.PageTable;
+
+/**
+ * This class handles pinning and unpinning buffers in memory using the LRU-2
+ * policy for buffer replacement. The victim is the unpinned buffer whose
+ * second most recent reference is the oldest. Blocks that have only been
+ * referenced once (such as the blocks of a large sequential scan) count as
+ * infinitely old and are replaced first, least recently used first, so a scan
+ * cannot flush the blocks that are referenced repeatedly.
+ *
+ * The time of the last reference to each recently replaced block is kept in a
+ * bounded history, so a block that is read again soon after being replaced is
+ * recognized as referenced twice. Pins of a buffer that is already pinned are
+ * correlated references, and only update the time of the last reference.
+ *
+ * Pins with the {@link AccessHint#SEQUENTIAL} or {@link AccessHint#ONE_SHOT}
+ * hint are not counted as repeated references either. A one-shot block goes
+ * to the front of the replacement order when it is unpinned, and buffers of
+ * kept blocks are passed over unless every unpinned buffer is kept. Among the
+ * first few candidates, a clean buffer is replaced in preference to a dirty
+ * one.
+ */
+public class LRUKBufferMgr extends AbstractBufferMgr {
+
+	// The memory buffers, all created when the manager is created
+	protected LRUKBuffer[] bufferpool;
+
+	// The map of each block in memory to the index of its buffer
+	protected PageTable buffer;
+
+	// The unpinned buffers, ordered from the first to the last to replace
+	protected TreeSet<LRUKBuffer> unpinned;
+
+	// The time of the last reference to each recently replaced block
+	protected LinkedHashMap<Long, Long> history;
+
+	// The logical clock used to time buffer references
+	protected long accessCounter = 0;
+
+	/**
+	 * Orders buffers by the time of their second most recent reference, and
+	 * then by the time of their most recent reference.
+	 */
+	private static final Comparator<LRUKBuffer> REPLACEMENT_ORDER = new Comparator<LRUKBuffer>() {
+		public int compare(LRUKBuffer a, LRUKBuffer b) {
+			if (a.previousAccess != b.previousAccess)
+				return (a.previousAccess < b.previousAccess) ? -1 : 1;
+			if (a.lastAccess != b.lastAccess)
+				return (a.lastAccess < b.lastAccess) ? -1 : 1;
+			return a.index - b.index;
+		}
+	};
+
+	/**
+	 * Creates a LRUKBufferMgr instance with the specified maximum number of
+	 * buffers. The history of replaced blocks holds as many blocks as there
+	 * are buffers.
+	 *
+	 * @param numbuffs
+	 *            The maximum number of buffers for memory.
+	 */
+	public LRUKBufferMgr(int numbuffs) {
+		this(numbuffs, numbuffs);
+	}
+
+	/**
+	 * Creates a LRUKBufferMgr instance that can grow to the specified
+	 * capacity, with the specified number of buffers in use. The history of
+	 * replaced blocks holds as many blocks as the capacity.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 */
+	public LRUKBufferMgr(final int capacity, int numbuffs) {
+		super(capacity);
+		buffer = new PageTable(capacity);
+		unpinned = new TreeSet<LRUKBuffer>(REPLACEMENT_ORDER);
+		bufferpool = new LRUKBuffer[capacity];
+		for (int i = 0; i < capacity; i++)
+			bufferpool[i] = new LRUKBuffer(i);
+		history = new LinkedHashMap<Long, Long>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+				return size() > capacity;
+			}
+		};
+		resize(numbuffs);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#available()
+	 */
+	@Override
+	public int available() {
+		return numAvailable;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
+	 */
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
+	/**
+	 * An empty buffer counts as never referenced, so it is replaced first.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+		LRUKBuffer lrukBuff = (LRUKBuffer) buff;
+		lrukBuff.setAccessTimes(0, 0);
+		unpinned.add(lrukBuff);
+	}
+
+	/**
+	 * Chooses the unpinned buffer to replace, removes its block from memory
+	 * and remembers the time of the block's last reference in the history.
+	 * Returns null if every buffer is pinned.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 */
+	@Override
+	protected Buffer chooseUnpinnedBuffer() {
+		if (unpinned.isEmpty())
+			return null;
+		LRUKBuffer buff = (LRUKBuffer) ringCandidate();
+		if (buff == null)
+			buff = findVictim();
+		unpinned.remove(buff);
+		Block blk = buff.block();
+		if (blk != null) {
+			buffer.remove(blk.key());
+			history.put(blk.key(), buff.lastAccess);
+		}
+		return buff;
+	}
+
+	/**
+	 * Returns the first unpinned buffer in replacement order, passing over
+	 * kept blocks unless every unpinned buffer is kept, and preferring the
+	 * first clean buffer among the first few candidates.
+	 *
+	 * @return a LRUKBuffer
+	 */
+	private LRUKBuffer findVictim() {
+		LRUKBuffer buff = null;
+		int examined = 0;
+		for (LRUKBuffer candidate : unpinned) {
+			if (examined >= CLEAN_VICTIM_SEARCH)
+				break;
+			if (candidate.hint() == AccessHint.KEEP)
+				continue;
+			if (buff == null)
+				buff = candidate;
+			examined++;
+			if (!candidate.isModified())
+				return candidate;
+		}
+		return (buff != null) ? buff : unpinned.first();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#findExistingBuffer(simpledb.file.Block)
+	 */
+	@Override
+	protected Buffer findExistingBuffer(Block blk) {
+		int index = buffer.get(blk.key());
+		return (index == PageTable.NONE) ? null : bufferpool[index];
+	}
+
+	/**
+	 * A block referenced twice is hotter than any block referenced once, and
+	 * blocks are otherwise ordered by the time of their second most recent
+	 * reference, or their only reference.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#heat(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected long heat(Buffer buff) {
+		LRUKBuffer lrukBuff = (LRUKBuffer) buff;
+		if (lrukBuff.previousAccess > 0)
+			return accessCounter + lrukBuff.previousAccess;
+		return lrukBuff.lastAccess;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#flushAll(int)
+	 */
+	@Override
+	protected synchronized void flushAll(int txnum) {
+		for (LRUKBuffer buff : bufferpool)
+			if (buff.isModifiedBy(txnum))
+				buff.flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected synchronized Buffer pin(Block blk, AccessHint hint) {
+		LRUKBuffer buff = (LRUKBuffer) findExistingBuffer(blk);
+		if (buff != null)
+			stats.recordHit();
+		long now = ++accessCounter;
+
+		if (buff == null) {
+			buff = (LRUKBuffer) chooseUnpinnedBuffer();
+			if (buff == null)
+				return null;
+			assignToBlock(buff, blk);
+			buffer.put(blk.key(), buff.getIndex());
+			Long last = history.remove(blk.key());
+			buff.setAccessTimes((last == null || !hint.countsAsReuse()) ? 0 : last, now);
+		} else if (!buff.isPinned()) {
+			unpinned.remove(buff);
+			buff.setAccessTimes(hint.countsAsReuse() ? buff.lastAccess : buff.previousAccess, now);
+		} else {
+			// a correlated reference
+			buff.setAccessTimes(buff.previousAccess, now);
+		}
+
+		if (!buff.isPinned())
+			numAvailable--;
+		buff.setHint(hint);
+		buff.pin();
+		return buff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter)
+	 */
+	@Override
+	protected synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
+		LRUKBuffer buff = (LRUKBuffer) chooseUnpinnedBuffer();
+		if (buff == null)
+			return null;
+		assignToNew(buff, filename, fmtr);
+		buffer.put(buff.block().key(), buff.getIndex());
+		buff.setAccessTimes(0, ++accessCounter);
+
+		numAvailable--;
+		buff.pin();
+		return buff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected synchronized void unpin(Buffer buff) {
+		buff.unpin();
+		if (!buff.isPinned()) {
+			if (buff.hint() == AccessHint.ONE_SHOT)
+				((LRUKBuffer) buff).setAccessTimes(0, 0);
+			unpinned.add((LRUKBuffer) buff);
+			numAvailable++;
+		}
+	}
+}
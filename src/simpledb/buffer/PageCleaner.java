@@ -0,0 +1,123 @@
+package simpledb.buffer;
+
+import java.util.logging.Level;
+
+import simpledb.server.SimpleDB;
+
+/**
+ * A background thread that writes dirty unpinned buffers to disk, so that the
+ * replacement policies find clean victims and a pin rarely has to write a
+ * page before it can reuse a buffer.
+ *
+ * Every pass looks at a window of at most {@link #WINDOW} buffers, so that its
+ * cost does not grow with the pool. The cleaner counts the unpinned buffers
+ * of the window, and if fewer than the target fraction of them are clean, it
+ * flushes dirty unpinned buffers of the window until the target is met.
+ * Flushing a buffer writes the log up to the LSN of the page's last
+ * modification, and then the page. Each pass starts where the previous
+ * window ended, so successive passes sweep the whole pool.
+ */
+public class PageCleaner extends Thread {
+
+	// The time between two passes, in milliseconds
+	public static final long INTERVAL = 50;
+
+	// The largest number of buffers looked at in one pass
+	public static final int WINDOW = 1024;
+
+	// The buffer manager whose buffers are cleaned
+	private AbstractBufferMgr bufferMgr;
+
+	// The fraction of unpinned buffers to keep clean
+	private double target;
+
+	// The position where the next pass starts
+	private int position = 0;
+
+	// Whether the cleaner has been asked to stop
+	private volatile boolean stopped = false;
+
+	/**
+	 * Creates a PageCleaner instance for the specified buffer manager. The
+	 * thread is a daemon, so it does not keep the server running.
+	 *
+	 * @param bufferMgr
+	 *            The buffer manager whose buffers are cleaned.
+	 * @param target
+	 *            The fraction of unpinned buffers to keep clean, between 0
+	 *            and 1.
+	 */
+	public PageCleaner(AbstractBufferMgr bufferMgr, double target) {
+		super("simpledb-page-cleaner");
+		this.bufferMgr = bufferMgr;
+		this.target = Math.max(0, Math.min(1, target));
+		setDaemon(true);
+	}
+
+	/**
+	 * Asks the cleaner to stop after its current pass. Called by
+	 * {@link BufferMgr#shutdown()}.
+	 */
+	public void shutdown() {
+		stopped = true;
+		interrupt();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		while (!stopped) {
+			try {
+				int written = clean();
+				if (written > 0)
+					SimpleDB.getLogger().log(Level.FINE, "Page cleaner wrote " + written + " pages");
+				Thread.sleep(INTERVAL);
+			} catch (InterruptedException e) {
+				// stop if asked to, otherwise start the next pass
+			} catch (RuntimeException e) {
+				SimpleDB.getLogger().log(Level.WARNING, "Page cleaner pass failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Makes one pass over the next window of buffers, flushing dirty unpinned
+	 * buffers of the window until the target fraction of its unpinned buffers
+	 * is clean. The pin counts are read without locking the buffer manager,
+	 * so they are only a guide: a buffer pinned in the meantime is still
+	 * flushed safely, since flushing locks the buffer.
+	 *
+	 * @return the number of pages written
+	 */
+	int clean() {
+		Buffer[] buffs = bufferMgr.buffers();
+		int window = Math.min(WINDOW, buffs.length);
+		int start = position % buffs.length;
+		position = (start + window) % buffs.length;
+		int unpinned = 0;
+		int clean = 0;
+		for (int i = 0; i < window; i++) {
+			Buffer buff = buffs[(start + i) % buffs.length];
+			if (!buff.isPinned()) {
+				unpinned++;
+				if (!buff.isModified())
+					clean++;
+			}
+		}
+
+		int needed = (int) Math.ceil(target * unpinned) - clean;
+		int written = 0;
+		for (int i = 0; i < window && written < needed; i++) {
+			Buffer buff = buffs[(start + i) % buffs.length];
+			if (!buff.isPinned() && buff.isModified()) {
+				buff.flush();
+				written++;
+			}
+		}
+		return written;
+	}
+}
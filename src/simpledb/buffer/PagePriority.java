@@ -0,0 +1,57 @@
+package simpledb.buffer;
+
+/**
+ * The priority class of a page, which the Clock and LRU policies use to keep
+ * the pages that are read on almost every query longer than others. A page
+ * of the catalog, which is scanned to plan every query, and a page of a
+ * B-tree directory, which is read on every index probe, is of high priority;
+ * every other page is of normal priority.
+ *
+ * The class of a page depends only on its file, whose type is taken from its
+ * name and the indexes of the catalog, and is set when a buffer is assigned
+ * to the page. A high-priority page that has been used
+ * is given extra chances: the policies pass it over that many more times
+ * before replacing it. A high-priority page that is no longer used therefore
+ * still leaves the pool, only later than a normal one.
+ */
+public enum PagePriority {
+	/**
+	 * A page of a table, of a temporary table, of a B-tree leaf or of a hash
+	 * index bucket.
+	 */
+	NORMAL,
+
+	/**
+	 * A page of the catalog or of a B-tree directory.
+	 */
+	HIGH;
+
+	/**
+	 * The largest number of extra chances given to a page.
+	 */
+	public static final int MAX_CHANCES = 1;
+
+	/**
+	 * Returns the number of times a used page of this class is passed over
+	 * before it is replaced, beyond the passes of a normal page.
+	 *
+	 * @return an integer, at most {@link #MAX_CHANCES}
+	 */
+	public int extraChances() {
+		return ordinal();
+	}
+
+	/**
+	 * Returns the priority class of the pages of the specified file.
+	 *
+	 * @param filename
+	 *            the name of the file
+	 * @return the priority class of its pages
+	 */
+	public static PagePriority of(String filename) {
+		String type = PooledBufferMgr.fileType(filename);
+		if (type.equals("catalog") || (type.equals("index") && filename.endsWith("dir.tbl")))
+			return HIGH;
+		return NORMAL;
+	}
+}
@@ -0,0 +1,372 @@
+package simpledb.buffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simpledb.file.Block;
+
+/**
+ * Replays a {@link BlockTrace} against the replacement policies at any pool
+ * size, so that policies can be compared, and pools sized, on the accesses of
+ * a real workload rather than by reading logs.
+ *
+ * Each policy is simulated by its own buffer manager, driven by the pins, new
+ * blocks and unpins of the trace in their original order, with their original
+ * access hints. The buffers of a simulated pool have no page and the blocks
+ * are never read or written, so a long trace replays in seconds. The hits,
+ * misses and evictions are those counted by the manager itself.
+ *
+ * Belady's optimal policy, which replaces the unpinned block whose next use is
+ * furthest in the future, is simulated alongside as the upper bound on the hit
+ * ratio that any policy could reach at each size.
+ *
+ * A pin that finds every buffer pinned would have waited in the server; the
+ * simulator cannot wait, so it counts the pin as unserved and skips it. A
+ * pool that leaves pins unserved is too small for the concurrency of the
+ * traced workload.
+ */
+public class PolicySimulator {
+
+	/**
+	 * The names of the policies that can be simulated.
+	 */
+	public static final String[] POLICIES = { "basic", "clock", "lru", "lru2", "arc", "opt" };
+
+	// The events of the trace, in order
+	private int count = 0;
+	private byte[] types = new byte[1024];
+	private byte[] hints = new byte[1024];
+	private int[] fileids = new int[1024];
+	private int[] numbers = new int[1024];
+
+	// The names of the files of the trace
+	private final Map<Integer, String> fileNames = new HashMap<Integer, String>();
+
+	// The priority class of the pages of each file of the trace
+	private final Map<Integer, PagePriority> priorities = new HashMap<Integer, PagePriority>();
+
+	/**
+	 * Reads the events of the specified trace into memory.
+	 *
+	 * @param file
+	 *            The trace file.
+	 * @throws IOException
+	 *             if the trace cannot be read
+	 */
+	public PolicySimulator(File file) throws IOException {
+		BlockTrace.Reader reader = new BlockTrace.Reader(file);
+		try {
+			while (reader.next()) {
+				if (count == types.length) {
+					int length = 2 * count;
+					types = Arrays.copyOf(types, length);
+					hints = Arrays.copyOf(hints, length);
+					fileids = Arrays.copyOf(fileids, length);
+					numbers = Arrays.copyOf(numbers, length);
+				}
+				Block blk = reader.block();
+				types[count] = (byte) reader.type();
+				hints[count] = (byte) reader.hint().ordinal();
+				fileids[count] = blk.fileId();
+				numbers[count] = blk.number();
+				if (!fileNames.containsKey(blk.fileId())) {
+					fileNames.put(blk.fileId(), reader.fileName(blk.fileId()));
+					priorities.put(blk.fileId(), reader.priority(blk.fileId()));
+				}
+				count++;
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the number of events in the trace.
+	 *
+	 * @return an integer
+	 */
+	public int events() {
+		return count;
+	}
+
+	/**
+	 * Replays the trace against the specified policy with a pool of the
+	 * specified size.
+	 *
+	 * @param policy
+	 *            One of the {@link #POLICIES}.
+	 * @param size
+	 *            The number of buffers of the pool.
+	 * @return the counters of the replay
+	 */
+	public Result simulate(String policy, int size) {
+		if (policy.equals("opt"))
+			return optimal(size);
+		AbstractBufferMgr mgr;
+		if (policy.equals("basic"))
+			mgr = new BasicBufferMgr(size);
+		else if (policy.equals("clock"))
+			mgr = new ClockBufferMgr(size);
+		else if (policy.equals("lru"))
+			mgr = new LRUBufferMgr(size);
+		else if (policy.equals("lru2"))
+			mgr = new LRUKBufferMgr(size);
+		else if (policy.equals("arc"))
+			mgr = new ARCBufferMgr(size);
+		else
+			throw new IllegalArgumentException("unknown policy " + policy);
+		return replay(mgr, policy, size);
+	}
+
+	/**
+	 * Replays the trace against the specified buffer manager.
+	 */
+	private Result replay(AbstractBufferMgr mgr, String policy, int size) {
+		Replay replay = new Replay();
+		mgr.replay = replay;
+		AccessHint[] hintValues = AccessHint.values();
+		Map<Block, Buffer> pinned = new HashMap<Block, Buffer>();
+		Map<Block, Integer> skipped = new HashMap<Block, Integer>();
+		long unserved = 0;
+		for (int i = 0; i < count; i++) {
+			Block blk = new Block(fileids[i], numbers[i]);
+			if (types[i] == BlockTrace.UNPIN) {
+				if (unskip(skipped, blk))
+					continue;
+				Buffer buff = pinned.get(blk);
+				if (buff == null)
+					continue; // pinned before the trace started
+				mgr.unpinAndNotify(buff);
+				if (!buff.isPinned())
+					pinned.remove(blk);
+				continue;
+			}
+			Buffer buff;
+			if (types[i] == BlockTrace.PIN_NEW && !mgr.isResident(blk)) {
+				replay.next = blk;
+				buff = mgr.pinNew(fileNames.get(blk.fileId()), null);
+			} else
+				buff = mgr.pin(blk, hintValues[hints[i]]);
+			if (buff == null) {
+				unserved++;
+				skip(skipped, blk);
+			} else
+				pinned.put(blk, buff);
+		}
+		BufferStats stats = mgr.stats;
+		return new Result(policy, size, stats.hits(), stats.misses(), stats.newBlocks(), stats.evictions(),
+				unserved);
+	}
+
+	/**
+	 * Replays the trace with Belady's optimal policy. The next use of the
+	 * block of every pin is found first, by a backward pass over the trace;
+	 * the unpinned blocks in memory are then kept ordered by their next use,
+	 * and the one used furthest in the future is replaced.
+	 */
+	private Result optimal(int size) {
+		int[] nextUse = new int[count];
+		Map<Long, Integer> lastUse = new HashMap<Long, Integer>();
+		for (int i = count - 1; i >= 0; i--) {
+			if (types[i] == BlockTrace.UNPIN)
+				continue;
+			long key = Block.key(fileids[i], numbers[i]);
+			Integer next = lastUse.put(key, i);
+			// a block never used again sorts after every used one
+			nextUse[i] = (next == null) ? count + i : next;
+		}
+
+		// The pin count and next use of each block in memory, and the
+		// unpinned blocks ordered by next use
+		Map<Long, int[]> resident = new HashMap<Long, int[]>();
+		TreeMap<Integer, Long> unpinned = new TreeMap<Integer, Long>();
+		Map<Block, Integer> skipped = new HashMap<Block, Integer>();
+		long hits = 0, misses = 0, newBlocks = 0, evictions = 0, unserved = 0;
+		for (int i = 0; i < count; i++) {
+			long key = Block.key(fileids[i], numbers[i]);
+			int[] frame = resident.get(key);
+			if (types[i] == BlockTrace.UNPIN) {
+				if (unskip(skipped, new Block(fileids[i], numbers[i])))
+					continue;
+				if (frame != null && frame[0] > 0 && --frame[0] == 0)
+					unpinned.put(frame[1], key);
+				continue;
+			}
+			if (frame != null) {
+				if (frame[0] == 0)
+					unpinned.remove(frame[1]);
+				frame[0]++;
+				frame[1] = nextUse[i];
+				hits++;
+				continue;
+			}
+			if (resident.size() >= size) {
+				Map.Entry<Integer, Long> victim = unpinned.pollLastEntry();
+				if (victim == null) {
+					unserved++;
+					skip(skipped, new Block(fileids[i], numbers[i]));
+					continue;
+				}
+				resident.remove(victim.getValue());
+				evictions++;
+			}
+			if (types[i] == BlockTrace.PIN_NEW)
+				newBlocks++;
+			else
+				misses++;
+			resident.put(key, new int[] { 1, nextUse[i] });
+		}
+		return new Result("opt", size, hits, misses, newBlocks, evictions, unserved);
+	}
+
+	/**
+	 * Counts a pin of the specified block that was not served.
+	 */
+	private static void skip(Map<Block, Integer> skipped, Block blk) {
+		Integer n = skipped.get(blk);
+		skipped.put(blk, (n == null) ? 1 : n + 1);
+	}
+
+	/**
+	 * Matches an unpin of the specified block with a pin that was not served.
+	 *
+	 * @return true if there was such a pin, and the unpin must be skipped
+	 */
+	private static boolean unskip(Map<Block, Integer> skipped, Block blk) {
+		Integer n = skipped.get(blk);
+		if (n == null)
+			return false;
+		if (n == 1)
+			skipped.remove(blk);
+		else
+			skipped.put(blk, n - 1);
+		return true;
+	}
+
+	/**
+	 * The state of a replay that a simulated buffer manager reads when it
+	 * assigns a buffer, in place of the disk: the priority class of the file
+	 * of a block, and the new block of the current event.
+	 */
+	class Replay {
+		private Block next;
+
+		/**
+		 * Returns the priority class of the specified block, as recorded for
+		 * its file in the trace.
+		 *
+		 * @param blk
+		 *            A block of the trace.
+		 * @return its priority class
+		 */
+		PagePriority priority(Block blk) {
+			return priorities.get(blk.fileId());
+		}
+
+		/**
+		 * Returns the block appended by the current event.
+		 *
+		 * @return the new block
+		 */
+		Block newBlock() {
+			return next;
+		}
+	}
+
+	/**
+	 * The counters of the replay of a trace by one policy at one size.
+	 */
+	public static class Result {
+		private final String policy;
+		private final int size;
+		private final long hits, misses, newBlocks, evictions, unserved;
+
+		Result(String policy, int size, long hits, long misses, long newBlocks, long evictions, long unserved) {
+			this.policy = policy;
+			this.size = size;
+			this.hits = hits;
+			this.misses = misses;
+			this.newBlocks = newBlocks;
+			this.evictions = evictions;
+			this.unserved = unserved;
+		}
+
+		/**
+		 * Returns the fraction of the pins of existing blocks that found the
+		 * block in memory.
+		 *
+		 * @return the hit ratio, or 0 if no block was pinned
+		 */
+		public double hitRatio() {
+			long total = hits + misses;
+			return (total == 0) ? 0 : (double) hits / total;
+		}
+
+		/**
+		 * Returns the number of blocks replaced by other blocks.
+		 *
+		 * @return the number of evictions
+		 */
+		public long evictions() {
+			return evictions;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%8d  %-6s %12d %12d %9.4f %10d %12d %10d", size, policy, hits, misses, hitRatio(),
+					newBlocks, evictions, unserved);
+		}
+	}
+
+	/**
+	 * Replays a trace against the replacement policies at each of the
+	 * specified pool sizes, and prints a line per policy and size.
+	 *
+	 * Usage: java simpledb.buffer.PolicySimulator trace size... [-policies
+	 * basic,clock,lru,lru2,arc,opt]
+	 *
+	 * @param args
+	 *            The trace file, the pool sizes, and optionally the policies
+	 *            to simulate.
+	 */
+	public static void main(String[] args) {
+		String[] policies = POLICIES;
+		int[] sizes = new int[args.length];
+		int numSizes = 0;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-policies") && i + 1 < args.length)
+				policies = args[++i].split(",");
+			else
+				sizes[numSizes++] = Integer.parseInt(args[i]);
+		}
+		if (numSizes == 0) {
+			System.err.println("usage: java simpledb.buffer.PolicySimulator trace size... "
+					+ "[-policies basic,clock,lru,lru2,arc,opt]");
+			System.exit(1);
+		}
+
+		PolicySimulator sim;
+		try {
+			sim = new PolicySimulator(new File(args[0]));
+		} catch (IOException e) {
+			System.err.println("cannot read " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		System.out.println(sim.events() + " events");
+		System.out.println(String.format("%8s  %-6s %12s %12s %9s %10s %12s %10s", "size", "policy", "hits",
+				"misses", "hit ratio", "new", "evictions", "unserved"));
+		for (int i = 0; i < numSizes; i++)
+			for (String policy : policies)
+				System.out.println(sim.simulate(policy.trim(), sizes[i]));
+	}
+}
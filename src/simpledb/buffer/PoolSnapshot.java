@@ -0,0 +1,211 @@
+package simpledb.buffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.server.SimpleDB;
+
+/**
+ * Saves the list of blocks in the buffer pool to a small file, and reads
+ * those blocks back into the pool after a restart, so that the server does
+ * not start with a cold pool.
+ *
+ * The list is ordered from the hottest block to the coldest, as ranked by the
+ * replacement policy, and only holds blocks of permanent files, since the ids
+ * of temporary files are not kept across restarts. It is saved periodically
+ * by this thread, and once more when the server shuts down.
+ *
+ * At startup the thread first reads the saved blocks back, hottest first, as
+ * far as the pool has room for them. The list is taken in batches, and each
+ * batch is read in file and block order, so the disk sees sorted reads. A
+ * block is skipped if it is already in memory, if its file has shrunk since,
+ * or if too few unpinned buffers are left.
+ */
+public class PoolSnapshot extends Thread {
+
+	// The number of blocks sorted and read together when prefetching
+	public static final int BATCH = 64;
+
+	// The number of unpinned buffers left to the other threads when
+	// prefetching
+	public static final int RESERVE = 4;
+
+	// The buffer manager whose blocks are saved
+	private AbstractBufferMgr bufferMgr;
+
+	// The file the list of blocks is saved to
+	private File file;
+
+	// The time between saves, in milliseconds
+	private long interval;
+
+	/**
+	 * Orders blocks by file and then by block number.
+	 */
+	private static final Comparator<Block> DISK_ORDER = new Comparator<Block>() {
+		public int compare(Block a, Block b) {
+			long ka = a.key();
+			long kb = b.key();
+			return (ka == kb) ? 0 : (ka < kb) ? -1 : 1;
+		}
+	};
+
+	/**
+	 * Creates a PoolSnapshot instance for the specified buffer manager. The
+	 * thread is a daemon, so it does not keep the server running.
+	 *
+	 * @param bufferMgr
+	 *            The buffer manager whose blocks are saved.
+	 * @param file
+	 *            The file the list of blocks is saved to.
+	 * @param interval
+	 *            The time between saves, in milliseconds.
+	 */
+	public PoolSnapshot(AbstractBufferMgr bufferMgr, File file, long interval) {
+		super("simpledb-pool-snapshot");
+		this.bufferMgr = bufferMgr;
+		this.file = file;
+		this.interval = interval;
+		setDaemon(true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			int count = prefetch();
+			SimpleDB.getLogger().log(Level.INFO, "Prefetched " + count + " blocks from " + file.getName());
+		} catch (RuntimeException e) {
+			SimpleDB.getLogger().log(Level.WARNING, "Prefetching the buffer pool failed", e);
+		}
+		while (true) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			save();
+		}
+	}
+
+	/**
+	 * Writes the list of blocks in memory to the file, hottest first. The
+	 * list is written to a temporary file first and then renamed, so a crash
+	 * while saving leaves the previous list intact.
+	 */
+	public synchronized void save() {
+		FileMgr fm = SimpleDB.fileMgr();
+		List<Block> blocks = bufferMgr.residentBlocks();
+		File tmp = new File(file.getPath() + ".new");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				for (Block blk : blocks) {
+					if (fm.isPermanent(blk.fileId())) {
+						out.writeInt(blk.fileId());
+						out.writeInt(blk.number());
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				tmp.renameTo(file);
+			}
+		} catch (IOException e) {
+			SimpleDB.getLogger().log(Level.WARNING, "Cannot save the buffer pool to " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Reads the saved blocks back into the buffer pool, hottest first, in
+	 * sorted batches.
+	 *
+	 * @return the number of blocks read
+	 */
+	int prefetch() {
+		List<Block> blocks = load();
+		int limit = Math.min(blocks.size(), bufferMgr.size() - RESERVE);
+		int count = 0;
+		for (int start = 0; start < limit; start += BATCH) {
+			List<Block> batch = new ArrayList<Block>(blocks.subList(start, Math.min(limit, start + BATCH)));
+			Collections.sort(batch, DISK_ORDER);
+			for (Block blk : batch) {
+				if (bufferMgr.available() <= RESERVE)
+					return count;
+				if (readBlock(blk))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the saved list of blocks, dropping the blocks that no longer
+	 * belong to a permanent file.
+	 *
+	 * @return the saved blocks, hottest first
+	 */
+	private List<Block> load() {
+		FileMgr fm = SimpleDB.fileMgr();
+		List<Block> blocks = new ArrayList<Block>();
+		if (!file.exists())
+			return blocks;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				while (true) {
+					int fileid = in.readInt();
+					int blknum = in.readInt();
+					if (fm.isPermanent(fileid))
+						blocks.add(new Block(fileid, blknum));
+				}
+			} catch (EOFException e) {
+				// the end of the list
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			SimpleDB.getLogger().log(Level.WARNING, "Cannot read " + file.getName(), e);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Reads the specified block into the buffer pool, unless it is already in
+	 * memory, it is past the end of its file, or a thread is waiting for a
+	 * buffer. The buffer is pinned without waiting, and unpinned right after.
+	 *
+	 * @param blk
+	 *            The block to read.
+	 * @return true if the block was read
+	 */
+	private boolean readBlock(Block blk) {
+		if (blk.number() >= SimpleDB.fileMgr().size(blk.fileId()) || bufferMgr.isResident(blk))
+			return false;
+		Buffer buff = bufferMgr.pinIfNoWaiters(blk, AccessHint.RANDOM);
+		if (buff == null)
+			return false;
+		bufferMgr.unpinAndNotify(buff);
+		return true;
+	}
+}
@@ -0,0 +1,681 @@
+package simpledb.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * This class divides the buffer pool into separate named pools, each a
+ * complete buffer manager with its own size and replacement policy. Every
+ * file is routed to exactly one pool, so the blocks of one kind of file can
+ * only replace blocks of the same pool: a large sort spilling to temporary
+ * tables cannot evict the catalog or the index directory pages that point
+ * lookups depend on.
+ *
+ * The pools are described by a specification of comma-separated entries of
+ * the form name:fraction[:policy[:pattern]]. The fraction is the share of
+ * the buffers (and of the capacity) the pool is given, and the policy is one
+ * of basic, clock, lru, lru2 or arc. A pool with a pattern holds the files
+ * whose names match it, where * matches any characters. A pool without a
+ * pattern is named after the type of file it holds: catalog, index, temp or
+ * data. Pools with patterns are tried first, in the order given. The data
+ * pool always exists and holds the files no other pool takes; it is given
+ * the buffers the other pools leave, so its fraction is ignored.
+ */
+public class PooledBufferMgr extends AbstractBufferMgr {
+
+	// The name of the pool that holds the files no other pool takes
+	public static final String DATA = "data";
+
+	// The policy names, indexed by the number used for bufferSelect
+	private static final List<String> POLICIES = Arrays.asList("basic", "clock", "lru", "lru2", "arc");
+
+	// The tables of the catalog, without their file extension
+	private static final List<String> CATALOG = Arrays.asList("tblcat", "fldcat", "idxcat", "viewcat");
+
+	// The names of the indexes in the catalog
+	private static final Set<String> indexNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	// The names of the pools
+	private String[] names;
+
+	// The file name pattern of each pool, or null if it holds a file type
+	private Pattern[] patterns;
+
+	// The pools
+	private AbstractBufferMgr[] pools;
+
+	// The number of buffers each pool was last sized to
+	private int[] targets;
+
+	// The index of the data pool
+	private int dataPool;
+
+	// The buffers of all the pools
+	private Buffer[] bufferpool;
+
+	// The pool of each file, indexed by file id; entries are null until the
+	// file is first routed. The array is replaced, never changed in place,
+	// when it grows.
+	private volatile AbstractBufferMgr[] routes = new AbstractBufferMgr[0];
+
+	// Serializes the routing of files not yet routed
+	private final Object routeLock = new Object();
+
+	/**
+	 * Creates a PooledBufferMgr instance with the pools described by the
+	 * specification. The pools share the specified capacity and number of
+	 * buffers in use by their fractions, and the data pool takes what the
+	 * others leave of both. A pool that names no policy uses the
+	 * one specified by bufferSelect, and each pool is split into the specified
+	 * number of stripes.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 * @param spec
+	 *            The specification of the pools.
+	 * @param bufferSelect
+	 *            The replacement policy of the pools that name none.
+	 * @param numStripes
+	 *            The number of stripes of each pool.
+	 */
+	public PooledBufferMgr(int capacity, int numbuffs, String spec, int bufferSelect, int numStripes) {
+		super(capacity);
+		List<String> entries = new ArrayList<String>();
+		for (String entry : spec.split(","))
+			if (entry.trim().length() > 0)
+				entries.add(entry.trim());
+		int count = entries.size();
+		boolean hasData = false;
+		for (String entry : entries) {
+			String[] fields = entry.split(":");
+			if (fields[0].trim().equals(DATA) && fields.length <= 3)
+				hasData = true;
+		}
+		if (!hasData)
+			count++;
+
+		names = new String[count];
+		patterns = new Pattern[count];
+		pools = new AbstractBufferMgr[count];
+		targets = new int[count];
+		int[] capacities = new int[count];
+		int[] selects = new int[count];
+		int sizeLeft = numbuffs;
+		int capacityLeft = capacity;
+		dataPool = count - 1;
+		for (int i = 0; i < count; i++) {
+			selects[i] = bufferSelect;
+			if (i == entries.size()) {
+				names[i] = DATA;
+				continue;
+			}
+			String[] fields = entries.get(i).split(":");
+			names[i] = fields[0].trim();
+			if (fields.length > 2 && fields[2].trim().length() > 0)
+				selects[i] = policy(fields[2].trim());
+			if (fields.length > 3)
+				patterns[i] = glob(fields[3].trim());
+			else if (!names[i].equals(DATA) && !names[i].equals("catalog") && !names[i].equals("index")
+					&& !names[i].equals("temp"))
+				throw new IllegalArgumentException("buffer pool " + names[i] + " names no file type or pattern");
+			if (names[i].equals(DATA) && patterns[i] == null) {
+				dataPool = i;
+				continue;
+			}
+			double fraction = (fields.length > 1) ? Double.parseDouble(fields[1].trim()) : 0;
+			targets[i] = Math.max(1, (int) (fraction * numbuffs));
+			capacities[i] = Math.max(targets[i], (int) (fraction * capacity));
+			sizeLeft -= targets[i];
+			capacityLeft -= capacities[i];
+		}
+		if (sizeLeft < 1)
+			throw new IllegalArgumentException("buffer pools leave no buffers for the data pool");
+		targets[dataPool] = sizeLeft;
+		capacities[dataPool] = Math.max(sizeLeft, capacityLeft);
+
+		maxBufferCount = 0;
+		for (int i = 0; i < count; i++) {
+			SimpleDB.getLogger().log(Level.INFO, "Using buffer pool " + names[i] + " of " + targets[i] + " buffers");
+			if (numStripes > 1)
+				pools[i] = new StripedBufferMgr(capacities[i], targets[i], numStripes, selects[i]);
+			else
+				pools[i] = BufferMgr.createBufferMgr(capacities[i], targets[i], selects[i]);
+			maxBufferCount += pools[i].capacity();
+		}
+
+		bufferpool = new Buffer[maxBufferCount];
+		int pos = 0;
+		for (AbstractBufferMgr pool : pools) {
+			Buffer[] buffs = pool.buffers();
+			System.arraycopy(buffs, 0, bufferpool, pos, buffs.length);
+			pos += buffs.length;
+		}
+	}
+
+	/**
+	 * Records the name of an index of the catalog, so that its files are
+	 * known to be index files. The index manager records every index in
+	 * idxcat when the database is opened, before recovery, and every index
+	 * when it is created, before its files are.
+	 *
+	 * @param idxname
+	 *            The name of the index.
+	 */
+	public static void addIndex(String idxname) {
+		indexNames.add(idxname);
+	}
+
+	/**
+	 * Returns the type of the specified file, which is the name of the pool
+	 * without a pattern that holds it. Index files are named after their
+	 * index: a B-tree index is stored in the files idxname + leaf and
+	 * idxname + dir, and a hash index in one file per bucket, idxname
+	 * followed by the bucket number. A file is only taken for an index file
+	 * if it is named that way after an index in the catalog, so a user table
+	 * such as orders2 or userdir is data.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return one of catalog, index, temp or data
+	 */
+	public static String fileType(String filename) {
+		if (filename.startsWith("temp"))
+			return "temp";
+		String name = filename.endsWith(".tbl") ? filename.substring(0, filename.length() - 4) : filename;
+		if (CATALOG.contains(name))
+			return "catalog";
+		if (isIndexFile(name))
+			return "index";
+		return DATA;
+	}
+
+	/**
+	 * Returns whether the file of the specified name, without its extension,
+	 * belongs to an index in the catalog. The name of a hash index can end
+	 * in digits itself, so every split of the trailing digits is tried.
+	 */
+	private static boolean isIndexFile(String name) {
+		if (indexNames.isEmpty())
+			return false;
+		if (name.endsWith("leaf") && indexNames.contains(name.substring(0, name.length() - 4)))
+			return true;
+		if (name.endsWith("dir") && indexNames.contains(name.substring(0, name.length() - 3)))
+			return true;
+		for (int i = name.length() - 1; i > 0 && Character.isDigit(name.charAt(i)); i--)
+			if (indexNames.contains(name.substring(0, i)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the names of the pools, in the order they were specified.
+	 *
+	 * @return a list of pool names
+	 */
+	public List<String> poolNames() {
+		return Arrays.asList(names);
+	}
+
+	/**
+	 * Returns the index of the pool of the specified name.
+	 *
+	 * @param name
+	 *            The name of the pool.
+	 * @return an integer, or -1 if there is no such pool
+	 */
+	int poolIndex(String name) {
+		return poolNames().indexOf(name);
+	}
+
+	/**
+	 * Returns the pool at the specified index.
+	 *
+	 * @param pool
+	 *            The index of the pool.
+	 * @return an AbstractBufferMgr
+	 */
+	AbstractBufferMgr pool(int pool) {
+		return pools[pool];
+	}
+
+	/**
+	 * Returns the number of buffers the pools were last sized to, in total.
+	 *
+	 * @return an integer
+	 */
+	synchronized int target() {
+		int total = 0;
+		for (int target : targets)
+			total += target;
+		return total;
+	}
+
+	/**
+	 * Resizes one pool only, within its own capacity.
+	 *
+	 * @param pool
+	 *            The index of the pool.
+	 * @param numbuffs
+	 *            The new number of buffers of the pool.
+	 * @return the number of buffers the pool is resized to
+	 */
+	synchronized int resize(int pool, int numbuffs) {
+		numbuffs = Math.max(1, Math.min(numbuffs, pools[pool].capacity()));
+		pools[pool].resize(numbuffs);
+		targets[pool] = numbuffs;
+		return numbuffs;
+	}
+
+	/**
+	 * Returns the number of pages one pool needs from the page arena to be
+	 * resized to the specified number of buffers.
+	 *
+	 * @param pool
+	 *            The index of the pool.
+	 * @param numbuffs
+	 *            The new number of buffers of the pool.
+	 * @return an integer
+	 */
+	int pagesNeeded(int pool, int numbuffs) {
+		return pools[pool].pagesNeeded(Math.max(1, Math.min(numbuffs, pools[pool].capacity())));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#available()
+	 */
+	@Override
+	public int available() {
+		int count = 0;
+		for (AbstractBufferMgr pool : pools)
+			count += pool.available();
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#size()
+	 */
+	@Override
+	public int size() {
+		int count = 0;
+		for (AbstractBufferMgr pool : pools)
+			count += pool.size();
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#poolSize(java.lang.String)
+	 */
+	@Override
+	public int poolSize(String filename) {
+		return poolFor(filename).size();
+	}
+
+	/**
+	 * Splits the new number of buffers between the pools in proportion to
+	 * their current sizes, and resizes each pool in turn.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#resize(int)
+	 */
+	@Override
+	protected synchronized void resize(int numbuffs) {
+		int[] sizes = split(numbuffs);
+		for (int i = 0; i < pools.length; i++) {
+			pools[i].resize(sizes[i]);
+			targets[i] = sizes[i];
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pagesNeeded(int)
+	 */
+	@Override
+	protected synchronized int pagesNeeded(int numbuffs) {
+		int[] sizes = split(numbuffs);
+		int count = 0;
+		for (int i = 0; i < pools.length; i++)
+			count += pools[i].pagesNeeded(sizes[i]);
+		return count;
+	}
+
+	/**
+	 * Buffers are only brought into use by the pools, so the divided pool as
+	 * a whole never adds one.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
+	 */
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
+	/**
+	 * Victims are always chosen by the pool that holds the block being pinned,
+	 * so the divided pool as a whole never chooses one.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 */
+	@Override
+	protected Buffer chooseUnpinnedBuffer() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#findExistingBuffer(simpledb.file.Block)
+	 */
+	@Override
+	protected Buffer findExistingBuffer(Block blk) {
+		AbstractBufferMgr pool = poolFor(blk.fileId());
+		synchronized (pool) {
+			return pool.findExistingBuffer(blk);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#isResident(simpledb.file.Block)
+	 */
+	@Override
+	protected boolean isResident(Block blk) {
+		return poolFor(blk.fileId()).isResident(blk);
+	}
+
+	/**
+	 * The hottest blocks of the pools are taken in turn, so that every pool
+	 * is warmed after a restart.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#residentBlocks()
+	 */
+	@Override
+	protected List<Block> residentBlocks() {
+		return interleave(pools);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#collectStats(simpledb.buffer.BufferStats)
+	 */
+	@Override
+	protected void collectStats(BufferStats total) {
+		for (AbstractBufferMgr pool : pools)
+			pool.collectStats(total);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#flushAll(int)
+	 */
+	@Override
+	protected void flushAll(int txnum) {
+		for (AbstractBufferMgr pool : pools)
+			pool.flushAll(txnum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected Buffer pin(Block blk, AccessHint hint) {
+		return poolFor(blk.fileId()).pin(blk, hint);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter)
+	 */
+	@Override
+	protected Buffer pinNew(String filename, PageFormatter fmtr) {
+		return poolFor(filename).pinNew(filename, fmtr);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint, simpledb.buffer.BufferRing)
+	 */
+	@Override
+	protected Buffer pin(Block blk, AccessHint hint, BufferRing ring) {
+		return poolFor(blk.fileId()).pin(blk, hint, ring);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter, simpledb.buffer.BufferRing)
+	 */
+	@Override
+	protected Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+		return poolFor(filename).pinNew(filename, fmtr, ring);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void unpin(Buffer buff) {
+		poolFor(buff.block().fileId()).unpin(buff);
+	}
+
+	/**
+	 * Pins the block in the pool that holds its file, waiting only on that
+	 * pool.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinOrWait(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint, simpledb.buffer.BufferRing, long)
+	 */
+	@Override
+	protected Buffer pinOrWait(Block blk, AccessHint hint, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		return poolFor(blk.fileId()).pinOrWait(blk, hint, ring, maxTime);
+	}
+
+	/**
+	 * Pins the block in the pool that holds its file, if no thread is waiting on it.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinIfNoWaiters(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected Buffer pinIfNoWaiters(Block blk, AccessHint hint) {
+		return poolFor(blk.fileId()).pinIfNoWaiters(blk, hint);
+	}
+
+	/**
+	 * Pins a new block in the pool that holds the file, waiting only on that
+	 * pool. Unlike the stripe of a block, the pool does not depend on the
+	 * block number, so it is known before the block is appended.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNewOrWait(java.lang.String,
+	 * simpledb.buffer.PageFormatter, simpledb.buffer.BufferRing, long)
+	 */
+	@Override
+	protected Buffer pinNewOrWait(String filename, PageFormatter fmtr, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		return poolFor(filename).pinNewOrWait(filename, fmtr, ring, maxTime);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#unpinAndNotify(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void unpinAndNotify(Buffer buff) {
+		poolFor(buff.block().fileId()).unpinAndNotify(buff);
+	}
+
+	/**
+	 * Returns the pool that holds the specified file.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return an AbstractBufferMgr
+	 */
+	private AbstractBufferMgr poolFor(String filename) {
+		return poolFor(SimpleDB.fileMgr().fileId(filename));
+	}
+
+	/**
+	 * Returns the pool that holds the file of the specified id. The route of
+	 * a file is worked out from its name the first time, and remembered.
+	 *
+	 * @param fileid
+	 *            The id of the file.
+	 * @return an AbstractBufferMgr
+	 */
+	private AbstractBufferMgr poolFor(int fileid) {
+		AbstractBufferMgr[] r = routes;
+		if (fileid < r.length && r[fileid] != null)
+			return r[fileid];
+		synchronized (routeLock) {
+			r = routes;
+			if (fileid >= r.length)
+				r = Arrays.copyOf(r, Math.max(fileid + 1, 2 * r.length));
+			else
+				r = r.clone();
+			r[fileid] = pools[route(SimpleDB.fileMgr().fileName(fileid))];
+			routes = r;
+			return r[fileid];
+		}
+	}
+
+	/**
+	 * Returns the index of the pool that holds the specified file: the first
+	 * pool whose pattern matches the file name, else the pool named after
+	 * the type of the file, else the data pool.
+	 *
+	 * @param filename
+	 *            The name of the file.
+	 * @return an integer
+	 */
+	private int route(String filename) {
+		for (int i = 0; i < pools.length; i++)
+			if (patterns[i] != null && patterns[i].matcher(filename).matches())
+				return i;
+		String type = fileType(filename);
+		for (int i = 0; i < pools.length; i++)
+			if (patterns[i] == null && names[i].equals(type))
+				return i;
+		return dataPool;
+	}
+
+	/**
+	 * Returns the sizes of the pools when the specified number of buffers is
+	 * split between them in proportion to their current sizes. Every pool
+	 * keeps at least one buffer and stays within its capacity; the buffers
+	 * left over by rounding go to the data pool, and then to the other pools,
+	 * as far as their capacities allow.
+	 *
+	 * @param numbuffs
+	 *            The number of buffers to split.
+	 * @return an array of sizes, indexed like the pools
+	 */
+	private int[] split(int numbuffs) {
+		numbuffs = Math.max(pools.length, Math.min(numbuffs, maxBufferCount));
+		long total = 0;
+		for (int target : targets)
+			total += target;
+		int[] sizes = new int[pools.length];
+		int left = numbuffs;
+		for (int i = 0; i < pools.length; i++) {
+			sizes[i] = (int) Math.max(1, Math.min(pools[i].capacity(), numbuffs * (long) targets[i] / total));
+			left -= sizes[i];
+		}
+		for (int n = 0; n < pools.length && left > 0; n++) {
+			int i = (dataPool + n) % pools.length;
+			int extra = Math.min(left, pools[i].capacity() - sizes[i]);
+			sizes[i] += extra;
+			left -= extra;
+		}
+		return sizes;
+	}
+
+	/**
+	 * Returns the policy number of the specified policy name.
+	 *
+	 * @param name
+	 *            One of basic, clock, lru, lru2 or arc.
+	 * @return an integer
+	 */
+	private static int policy(String name) {
+		int select = POLICIES.indexOf(name);
+		if (select < 0)
+			throw new IllegalArgumentException("unknown replacement policy " + name);
+		return select;
+	}
+
+	/**
+	 * Compiles a file name pattern, in which * matches any characters.
+	 *
+	 * @param glob
+	 *            The file name pattern.
+	 * @return a Pattern
+	 */
+	private static Pattern glob(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (String part : glob.split("\\*", -1)) {
+			if (regex.length() > 0)
+				regex.append(".*");
+			regex.append(Pattern.quote(part));
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
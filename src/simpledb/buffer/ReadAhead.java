@@ -0,0 +1,174 @@
+package simpledb.buffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * Detects sequential pins on a file and reads the following blocks into the
+ * buffer pool ahead of time, on a background thread, so that a sequential
+ * scan finds its next blocks already in memory.
+ *
+ * Each file being read has a stream that remembers the last block pinned and
+ * how many consecutive blocks were pinned before it. Once a scan has pinned
+ * a few consecutive blocks, the stream asks for the next window of blocks to
+ * be read. Whenever the scan catches up with half of what was read ahead, the
+ * next window is requested, and the window doubles, so a scan that keeps
+ * consuming its blocks gets a larger window. A pin out of sequence resets the
+ * stream. The window never exceeds the maximum, nor half of the unpinned
+ * buffers, so reading ahead does not push out more than it brings in.
+ *
+ * Streams are kept in a small table indexed by file id, each locked on its
+ * own, so threads scanning different files do not contend. The blocks are
+ * read with the {@link AccessHint#SEQUENTIAL} hint, and only while there are
+ * unpinned buffers to spare.
+ */
+public class ReadAhead extends Thread {
+
+	// The number of consecutive pins that starts reading ahead
+	public static final int TRIGGER = 2;
+
+	// The window of the first read ahead of a scan
+	public static final int MIN_WINDOW = 4;
+
+	// The number of streams tracked at a time
+	private static final int STREAMS = 64;
+
+	/**
+	 * The state of a sequential read of one file.
+	 */
+	private static class Stream {
+		int fileid = -1;
+		int last = -1;
+		int run = 0;
+		int window = MIN_WINDOW;
+		int ahead = -1;
+
+		void reset(int fileid, int blknum) {
+			this.fileid = fileid;
+			last = blknum;
+			run = 1;
+			window = MIN_WINDOW;
+			ahead = -1;
+		}
+	}
+
+	// The buffer manager the blocks are read into
+	private AbstractBufferMgr bufferMgr;
+
+	// The largest window
+	private int maxWindow;
+
+	// The streams, indexed by file id
+	private Stream[] streams = new Stream[STREAMS];
+
+	// The blocks waiting to be read
+	private BlockingQueue<Block> pending;
+
+	/**
+	 * Creates a ReadAhead instance for the specified buffer manager. The
+	 * thread is a daemon, so it does not keep the server running.
+	 *
+	 * @param bufferMgr
+	 *            The buffer manager the blocks are read into.
+	 * @param maxWindow
+	 *            The largest number of blocks read ahead of a scan.
+	 */
+	public ReadAhead(AbstractBufferMgr bufferMgr, int maxWindow) {
+		super("simpledb-read-ahead");
+		this.bufferMgr = bufferMgr;
+		this.maxWindow = Math.max(MIN_WINDOW, maxWindow);
+		for (int i = 0; i < STREAMS; i++)
+			streams[i] = new Stream();
+		pending = new ArrayBlockingQueue<Block>(4 * this.maxWindow);
+		setDaemon(true);
+	}
+
+	/**
+	 * Records a pin of the specified block, and requests the next blocks of
+	 * its file if the pins of the file are sequential.
+	 *
+	 * @param blk
+	 *            The block that was pinned.
+	 */
+	public void notePin(Block blk) {
+		int fileid = blk.fileId();
+		int blknum = blk.number();
+		Stream s = streams[fileid & (STREAMS - 1)];
+		int from;
+		int to;
+		synchronized (s) {
+			if (s.fileid != fileid || (blknum != s.last && blknum != s.last + 1)) {
+				s.reset(fileid, blknum);
+				return;
+			}
+			if (blknum == s.last)
+				return;
+			s.last = blknum;
+			s.run++;
+			if (s.run < TRIGGER || s.ahead - blknum > s.window / 2)
+				return;
+
+			// the scan caught up with the previous window, so widen the next
+			if (s.ahead >= 0)
+				s.window = Math.min(2 * s.window, windowLimit());
+			from = Math.max(s.ahead, blknum) + 1;
+			to = blknum + s.window;
+			s.ahead = to;
+		}
+
+		for (int b = from; b <= to; b++)
+			if (!pending.offer(new Block(fileid, b)))
+				break;
+	}
+
+	/**
+	 * Returns the largest window allowed now: the maximum window, but no more
+	 * than half of the unpinned buffers.
+	 *
+	 * @return an integer
+	 */
+	private int windowLimit() {
+		return Math.max(MIN_WINDOW, Math.min(maxWindow, bufferMgr.available() / 2));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				readBlock(pending.take());
+			} catch (InterruptedException e) {
+				return;
+			} catch (RuntimeException e) {
+				SimpleDB.getLogger().log(Level.WARNING, "Read ahead failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the specified block into the buffer pool, unless it is already in
+	 * memory, it is past the end of its file, there are too few unpinned
+	 * buffers left, or a thread is waiting for a buffer. The buffer is pinned
+	 * without waiting, and unpinned right after.
+	 *
+	 * @param blk
+	 *            The block to read.
+	 */
+	private void readBlock(Block blk) {
+		if (blk.number() >= SimpleDB.fileMgr().size(blk.fileId()))
+			return;
+		if (bufferMgr.available() <= MIN_WINDOW || bufferMgr.isResident(blk))
+			return;
+		Buffer buff = bufferMgr.pinIfNoWaiters(blk, AccessHint.SEQUENTIAL);
+		if (buff != null)
+			bufferMgr.unpinAndNotify(buff);
+	}
+}
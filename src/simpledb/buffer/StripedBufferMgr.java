@@ -0,0 +1,449 @@
+package simpledb.buffer;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+/**
+ * This class partitions the buffer pool into independent stripes. Each block
+ * hashes to exactly one stripe, and each stripe is a complete buffer manager
+ * of its own (with its own buffers, lookup table and replacement state) that
+ * is locked separately from the others. Threads pinning blocks of different
+ * stripes therefore never contend for the same lock, and a thread waiting for
+ * a free buffer only waits on the stripe that owns its block.
+ */
+public class StripedBufferMgr extends AbstractBufferMgr {
+
+	// The stripes of the buffer pool
+	protected AbstractBufferMgr[] stripes;
+
+	// The buffers of all the stripes
+	protected Buffer[] bufferpool;
+
+	// The locks that serialize the appends done by pinNew to each file, by file
+	// id, so the new block number is known before the block is appended
+	private final ConcurrentHashMap<Integer, Object> appendLocks = new ConcurrentHashMap<Integer, Object>();
+
+	/**
+	 * Creates a StripedBufferMgr instance with the specified maximum number of
+	 * buffers, split as evenly as possible into the specified number of
+	 * stripes. Each stripe uses the replacement policy specified by
+	 * bufferSelect.
+	 *
+	 * @param numbuffs
+	 *            The maximum number of buffers for memory.
+	 * @param numStripes
+	 *            The number of stripes to create.
+	 * @param bufferSelect
+	 *            The replacement policy used by each stripe.
+	 */
+	public StripedBufferMgr(int numbuffs, int numStripes, int bufferSelect) {
+		this(numbuffs, numbuffs, numStripes, bufferSelect);
+	}
+
+	/**
+	 * Creates a StripedBufferMgr instance that can grow to the specified
+	 * capacity, with the specified number of buffers in use. The capacity and
+	 * the buffers in use are each split as evenly as possible into the
+	 * specified number of stripes.
+	 *
+	 * @param capacity
+	 *            The largest number of buffers for memory.
+	 * @param numbuffs
+	 *            The number of buffers in use.
+	 * @param numStripes
+	 *            The number of stripes to create.
+	 * @param bufferSelect
+	 *            The replacement policy used by each stripe.
+	 */
+	public StripedBufferMgr(int capacity, int numbuffs, int numStripes, int bufferSelect) {
+		super(capacity);
+		numStripes = Math.max(1, Math.min(numStripes, Math.min(capacity, numbuffs)));
+		stripes = new AbstractBufferMgr[numStripes];
+		for (int i = 0; i < numStripes; i++)
+			stripes[i] = BufferMgr.createBufferMgr(share(capacity, i, numStripes), share(numbuffs, i, numStripes),
+					bufferSelect);
+
+		bufferpool = new Buffer[capacity];
+		int pos = 0;
+		for (AbstractBufferMgr stripe : stripes) {
+			Buffer[] buffs = stripe.buffers();
+			System.arraycopy(buffs, 0, bufferpool, pos, buffs.length);
+			pos += buffs.length;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#available()
+	 */
+	@Override
+	public int available() {
+		int count = 0;
+		for (AbstractBufferMgr stripe : stripes)
+			count += stripe.available();
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#size()
+	 */
+	@Override
+	public int size() {
+		int count = 0;
+		for (AbstractBufferMgr stripe : stripes)
+			count += stripe.size();
+		return count;
+	}
+
+	/**
+	 * Splits the new number of buffers as evenly as possible between the
+	 * stripes, and resizes each stripe in turn.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#resize(int)
+	 */
+	@Override
+	protected void resize(int numbuffs) {
+		numbuffs = Math.max(stripes.length, Math.min(numbuffs, maxBufferCount));
+		for (int i = 0; i < stripes.length; i++)
+			stripes[i].resize(share(numbuffs, i, stripes.length));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pagesNeeded(int)
+	 */
+	@Override
+	protected int pagesNeeded(int numbuffs) {
+		numbuffs = Math.max(stripes.length, Math.min(numbuffs, maxBufferCount));
+		int count = 0;
+		for (int i = 0; i < stripes.length; i++)
+			count += stripes[i].pagesNeeded(share(numbuffs, i, stripes.length));
+		return count;
+	}
+
+	/**
+	 * Buffers are only brought into use by the stripes, so the striped pool
+	 * as a whole never adds one.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#addEmptyBuffer(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void addEmptyBuffer(Buffer buff) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#buffers()
+	 */
+	@Override
+	protected Buffer[] buffers() {
+		return bufferpool;
+	}
+
+	/**
+	 * Victims are always chosen by the stripe that owns the block being pinned,
+	 * so the striped pool as a whole never chooses one.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#chooseUnpinnedBuffer()
+	 */
+	@Override
+	protected Buffer chooseUnpinnedBuffer() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#findExistingBuffer(simpledb.file.Block)
+	 */
+	@Override
+	protected Buffer findExistingBuffer(Block blk) {
+		AbstractBufferMgr stripe = stripeFor(blk);
+		synchronized (stripe) {
+			return stripe.findExistingBuffer(blk);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#isResident(simpledb.file.Block)
+	 */
+	@Override
+	protected boolean isResident(Block blk) {
+		return stripeFor(blk).isResident(blk);
+	}
+
+	/**
+	 * Blocks hash evenly over the stripes, so the hottest blocks of the
+	 * stripes are taken in turn.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#residentBlocks()
+	 */
+	@Override
+	protected List<Block> residentBlocks() {
+		return interleave(stripes);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#collectStats(simpledb.buffer.BufferStats)
+	 */
+	@Override
+	protected void collectStats(BufferStats total) {
+		for (AbstractBufferMgr stripe : stripes)
+			stripe.collectStats(total);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#flushAll(int)
+	 */
+	@Override
+	protected void flushAll(int txnum) {
+		for (AbstractBufferMgr stripe : stripes)
+			stripe.flushAll(txnum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected Buffer pin(Block blk, AccessHint hint) {
+		return stripeFor(blk).pin(blk, hint);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter)
+	 */
+	@Override
+	protected Buffer pinNew(String filename, PageFormatter fmtr) {
+		int fileid = SimpleDB.fileMgr().fileId(filename);
+		synchronized (appendLock(fileid)) {
+			return stripeForNew(fileid).pinNew(filename, fmtr);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pin(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint, simpledb.buffer.BufferRing)
+	 */
+	@Override
+	protected Buffer pin(Block blk, AccessHint hint, BufferRing ring) {
+		return stripeFor(blk).pin(blk, hint, ring);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNew(java.lang.String,
+	 * simpledb.buffer.PageFormatter, simpledb.buffer.BufferRing)
+	 */
+	@Override
+	protected Buffer pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+		int fileid = SimpleDB.fileMgr().fileId(filename);
+		synchronized (appendLock(fileid)) {
+			return stripeForNew(fileid).pinNew(filename, fmtr, ring);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#unpin(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void unpin(Buffer buff) {
+		stripeFor(buff.block()).unpin(buff);
+	}
+
+	/**
+	 * Pins the block in the stripe that owns it, waiting only on that stripe.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinOrWait(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint, simpledb.buffer.BufferRing, long)
+	 */
+	@Override
+	protected Buffer pinOrWait(Block blk, AccessHint hint, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		return stripeFor(blk).pinOrWait(blk, hint, ring, maxTime);
+	}
+
+	/**
+	 * Pins the block in the stripe that owns it, if no thread is waiting on it.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinIfNoWaiters(simpledb.file.Block,
+	 * simpledb.buffer.AccessHint)
+	 */
+	@Override
+	protected Buffer pinIfNoWaiters(Block blk, AccessHint hint) {
+		return stripeFor(blk).pinIfNoWaiters(blk, hint);
+	}
+
+	/**
+	 * Pins a new block in the stripe that will own it. The stripe is only known
+	 * once the number of the new block is known, so the append is done while
+	 * holding the append lock of the file, and the waiting is done in the
+	 * stripe's queue after releasing it. The stripe is chosen again after each
+	 * wait, since other threads may have appended to the file in the
+	 * meantime; if it changed, the turn given by the old stripe is passed on.
+	 *
+	 * (non-Javadoc)
+	 *
+	 * @see simpledb.buffer.AbstractBufferMgr#pinNewOrWait(java.lang.String,
+	 * simpledb.buffer.PageFormatter, simpledb.buffer.BufferRing, long)
+	 */
+	@Override
+	protected Buffer pinNewOrWait(String filename, PageFormatter fmtr, BufferRing ring, long maxTime)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxTime;
+		int fileid = SimpleDB.fileMgr().fileId(filename);
+		Object appendLock = appendLock(fileid);
+		AbstractBufferMgr stripe = null;
+		Waiter w = null;
+		while (true) {
+			synchronized (appendLock) {
+				AbstractBufferMgr next = stripeForNew(fileid);
+				if (w != null && next != stripe) {
+					stripe.cancel(w);
+					w = null;
+				}
+				stripe = next;
+				synchronized (stripe) {
+					stripe.takeTurn(w);
+					if (w != null || !stripe.hasWaiters()) {
+						Buffer buff = stripe.pinNew(filename, fmtr, ring);
+						if (buff != null) {
+							stripe.admitted(w);
+							return buff;
+						}
+					}
+					w = stripe.enqueue(w);
+				}
+			}
+			if (!stripe.awaitTurn(w, deadline))
+				return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * simpledb.buffer.AbstractBufferMgr#unpinAndNotify(simpledb.buffer.Buffer)
+	 */
+	@Override
+	protected void unpinAndNotify(Buffer buff) {
+		stripeFor(buff.block()).unpinAndNotify(buff);
+	}
+
+	/**
+	 * Returns the stripe that owns the specified block.
+	 *
+	 * @param blk
+	 *            The block to find the stripe for.
+	 * @return an AbstractBufferMgr
+	 */
+	protected AbstractBufferMgr stripeFor(Block blk) {
+		return stripes[stripeIndex(blk.fileId(), blk.number())];
+	}
+
+	/**
+	 * Returns the stripe that will own the next block appended to the file
+	 * of the specified id. The caller must hold the append lock of the file.
+	 *
+	 * @param fileid
+	 *            The id of the file to append to.
+	 * @return an AbstractBufferMgr
+	 */
+	private AbstractBufferMgr stripeForNew(int fileid) {
+		return stripes[stripeIndex(fileid, SimpleDB.fileMgr().size(fileid))];
+	}
+
+	/**
+	 * Returns the lock that serializes the appends to the file of the
+	 * specified id. Appends to different files take different locks, so an
+	 * append that writes a dirty victim or extends its file does not hold up
+	 * the appends to other files.
+	 *
+	 * @param fileid
+	 *            The id of the file.
+	 * @return the append lock of the file
+	 */
+	private Object appendLock(int fileid) {
+		Object lock = appendLocks.get(fileid);
+		if (lock == null) {
+			Object created = new Object();
+			lock = appendLocks.putIfAbsent(fileid, created);
+			if (lock == null)
+				lock = created;
+		}
+		return lock;
+	}
+
+	/**
+	 * Returns the share of the specified stripe when the specified number of
+	 * buffers is split as evenly as possible between the stripes.
+	 *
+	 * @param numbuffs
+	 *            The number of buffers to split.
+	 * @param stripe
+	 *            The index of the stripe.
+	 * @param numStripes
+	 *            The number of stripes.
+	 * @return an integer
+	 */
+	private static int share(int numbuffs, int stripe, int numStripes) {
+		return numbuffs / numStripes + (stripe < numbuffs % numStripes ? 1 : 0);
+	}
+
+	/**
+	 * Hashes the file id and block number to a stripe index. The hash is
+	 * mixed so that consecutive blocks of a file spread over all stripes.
+	 *
+	 * @param fileid
+	 *            The id of the file.
+	 * @param blknum
+	 *            The block number within the file.
+	 * @return an integer
+	 */
+	private int stripeIndex(int fileid, int blknum) {
+		int h = fileid * 31 + blknum;
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return (h & Integer.MAX_VALUE) % stripes.length;
+	}
+}
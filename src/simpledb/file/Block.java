@@ -1,25 +1,42 @@
 package simpledb.file;
 
+import simpledb.server.SimpleDB;
+
 /**
  * A reference to a disk block.
- * A Block object consists of a filename and a block number.
+ * A Block object consists of a file id and a block number.
+ * The file id is the small integer that the {@link FileMgr}
+ * assigns to the file's name, so blocks are compared, hashed
+ * and logged without touching the name.
  * It does not hold the contents of the block;
  * instead, that is the job of a {@link Page} object.
  * @author Edward Sciore
  */
 public class Block {
-   private String filename;
+   private int fileid;
    private int blknum;
    
    /**
     * Constructs a block reference 
     * for the specified filename and block number.
+    * The file's id is obtained from the file manager
+    * returned by {@link simpledb.server.SimpleDB#fileMgr()}.
     * @param filename the name of the file
     * @param blknum the block number
     */
    public Block(String filename, int blknum) {
-      this.filename = filename;
-      this.blknum   = blknum;
+      this(SimpleDB.fileMgr().fileId(filename), blknum);
+   }
+   
+   /**
+    * Constructs a block reference 
+    * for the specified file id and block number.
+    * @param fileid the id of the file
+    * @param blknum the block number
+    */
+   public Block(int fileid, int blknum) {
+      this.fileid = fileid;
+      this.blknum = blknum;
    }
    
    /**
@@ -27,7 +44,15 @@ public class Block {
     * @return the filename
     */
    public String fileName() {
-      return filename;
+      return SimpleDB.fileMgr().fileName(fileid);
+   }
+   
+   /**
+    * Returns the id of the file where the block lives.
+    * @return the file id
+    */
+   public int fileId() {
+      return fileid;
    }
    
    /**
@@ -38,16 +63,35 @@ public class Block {
       return blknum;
    }
    
+   /**
+    * Returns the block's file id and block number packed into a long,
+    * for use as the key of a {@link PageTable}.
+    * @return the packed key
+    */
+   public long key() {
+      return key(fileid, blknum);
+   }
+   
+   /**
+    * Packs the specified file id and block number into a long.
+    * @param fileid the id of the file
+    * @param blknum the block number
+    * @return the packed key
+    */
+   public static long key(int fileid, int blknum) {
+      return ((long) fileid << 32) | (blknum & 0xffffffffL);
+   }
+   
    public boolean equals(Object obj) {
       Block blk = (Block) obj;
-      return filename.equals(blk.filename) && blknum == blk.blknum;
+      return fileid == blk.fileid && blknum == blk.blknum;
    }
    
    public String toString() {
-      return "[file " + filename + ", block " + blknum + "]";
+      return "[file " + fileName() + ", block " + blknum + "]";
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return fileid * 31 + blknum;
    }
 }
@@ -1,10 +1,10 @@
 package simpledb.file;
 
-import static simpledb.file.Page.BLOCK_SIZE;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The SimpleDB file manager.
@@ -19,12 +19,73 @@ import java.util.*;
  * Method {@link #isNew() isNew} is called during system initialization by {@link simpledb.server.SimpleDB#init}.
  * Method {@link #size(String) size} is called by the log manager and transaction manager to
  * determine the end of the file.
+ * <p>
+ * The file manager also assigns each file a small integer id,
+ * which {@link Block} objects, log records and the buffer and lock tables
+ * use instead of the file's name.
+ * The ids of permanent files are stored in the file id catalog,
+ * so they stay the same when the database is restarted.
+ * Temporary files are deleted at startup, so their ids are not stored.
+ * <p>
+ * The block size is a property of the database, chosen when
+ * it is created and stored in the database header file,
+ * which every later startup reads back.
+ * A database created before the header existed has
+ * blocks of {@link #LEGACY_BLOCK_SIZE} bytes.
+ * <p>
+ * Files are opened in "rws" mode, so that every write
+ * is on disk when it returns, unless deferred sync is on.
+ * Then writes go to the file system cache, and the files of
+ * permanent tables and indexes written since the last call to
+ * {@link #force()} are forced to disk by that call, which the
+ * recovery manager makes before every commit, rollback and checkpoint
+ * record. Temporary files are never forced.
  * @author Edward Sciore
  */
 public class FileMgr {
    private File dbDirectory;
    private boolean isNew;
-   private Map<String,FileChannel> openFiles = new HashMap<String,FileChannel>();
+   /**
+    * The name of the file id catalog.
+    */
+   public static final String FILE_ID_CATALOG = "simpledb.fileids";
+   
+   /**
+    * The name of the database header file.
+    */
+   public static final String HEADER_FILE = "simpledb.header";
+   
+   /**
+    * The smallest, largest and default block size of a new database.
+    * The block size must be a power of two.
+    */
+   public static final int MIN_BLOCK_SIZE = 4096;
+   public static final int MAX_BLOCK_SIZE = 65536;
+   public static final int DEFAULT_BLOCK_SIZE = 4096;
+   
+   /**
+    * The block size of a database that has no header file.
+    */
+   public static final int LEGACY_BLOCK_SIZE = 400;
+   
+   // The first int and the format version of the header file
+   private static final int HEADER_MAGIC = 0x53444248;
+   private static final int HEADER_VERSION = 1;
+   
+   private int blocksize;
+   private boolean deferredSync = false;
+   private Set<Integer> unforced = new HashSet<Integer>();
+   private Object forceLock = new Object();
+
+   private List<FileChannel> openFiles = new ArrayList<FileChannel>();
+   private Map<String,Integer> fileIds = new ConcurrentHashMap<String,Integer>();
+
+   // The file names indexed by id. Entries are only added, under the
+   // lock of the file manager, and the array is republished after each
+   // change, so names are looked up without the lock.
+   private volatile String[] fileNames = new String[16];
+   private FileOutputStream catalogFile;
+   private DataOutputStream catalog;
 
    /**
     * Creates a file manager for the specified database.
@@ -36,18 +97,37 @@ public class FileMgr {
     * @param dbname the name of the directory that holds the database
     */
    public FileMgr(String dbname) {
+      this(dbname, DEFAULT_BLOCK_SIZE);
+   }
+   
+   /**
+    * Creates a file manager for the specified database,
+    * as above, which uses blocks of the specified size
+    * if the database is new.
+    * An existing database keeps the block size it was created with.
+    * @param dbname the name of the directory that holds the database
+    * @param blocksize the block size of a new database, in bytes
+    */
+   public FileMgr(String dbname, int blocksize) {
       String homedir = System.getProperty("user.home");
       dbDirectory = new File(homedir, dbname);
       isNew = !dbDirectory.exists();
+      if (!isValidBlockSize(blocksize))
+         throw new IllegalArgumentException("the block size must be a power of two from "
+               + MIN_BLOCK_SIZE + " to " + MAX_BLOCK_SIZE + " bytes");
 
       // create the directory if the database is new
       if (isNew && !dbDirectory.mkdir())
          throw new RuntimeException("cannot create " + dbname);
 
-      // remove any leftover temporary tables
+      // remove any leftover temporary tables, before they can make
+      // a new database look like one from before the header
       for (String filename : dbDirectory.list())
          if (filename.startsWith("temp"))
          new File(dbDirectory, filename).delete();
+
+      readHeader(blocksize);
+      readFileIdCatalog();
    }
 
    /**
@@ -58,8 +138,8 @@ public class FileMgr {
    synchronized void read(Block blk, ByteBuffer bb) {
       try {
          bb.clear();
-         FileChannel fc = getFile(blk.fileName());
-         fc.read(bb, blk.number() * BLOCK_SIZE);
+         FileChannel fc = getFile(blk.fileId());
+         fc.read(bb, (long) blk.number() * blocksize);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
@@ -74,8 +154,10 @@ public class FileMgr {
    synchronized void write(Block blk, ByteBuffer bb) {
       try {
          bb.rewind();
-         FileChannel fc = getFile(blk.fileName());
-         fc.write(bb, blk.number() * BLOCK_SIZE);
+         FileChannel fc = getFile(blk.fileId());
+         fc.write(bb, (long) blk.number() * blocksize);
+         if (deferredSync && isPermanent(blk.fileId()))
+            unforced.add(blk.fileId());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
@@ -90,27 +172,195 @@ public class FileMgr {
     * @return a reference to the newly-created block.
     */
    synchronized Block append(String filename, ByteBuffer bb) {
-      int newblknum = size(filename);
-      Block blk = new Block(filename, newblknum);
+      int fileid = fileId(filename);
+      int newblknum = size(fileid);
+      Block blk = new Block(fileid, newblknum);
       write(blk, bb);
       return blk;
    }
 
+   /**
+    * Forces to disk the permanent files written since the last force.
+    * When this method returns, every block written before it was called
+    * is on disk, including blocks that another thread was still forcing.
+    * The files are forced outside the lock of the file manager,
+    * so that reads and writes are not held up.
+    * If deferred sync is off, every write is already on disk,
+    * and the method does nothing.
+    */
+   public void force() {
+      synchronized (forceLock) {
+         List<FileChannel> channels = new ArrayList<FileChannel>();
+         synchronized (this) {
+            for (int fileid : unforced)
+               channels.add(openFiles.get(fileid));
+            unforced.clear();
+         }
+         try {
+            for (FileChannel fc : channels)
+               fc.force(true);
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot force the database files");
+         }
+      }
+   }
+
+   /**
+    * Forces the file with the specified id to disk,
+    * if deferred sync is on.
+    * The log manager calls this method each time it writes
+    * its page, so that log records are on disk before the
+    * blocks they describe.
+    * @param fileid the id of the file
+    */
+   public void force(int fileid) {
+      if (!deferredSync)
+         return;
+      try {
+         FileChannel fc;
+         synchronized (this) {
+            fc = getFile(fileid);
+            unforced.remove(fileid);
+         }
+         fc.force(true);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot force " + fileName(fileid));
+      }
+   }
+
+   /**
+    * Turns deferred sync on or off.
+    * Files that are already open keep the mode they were opened in,
+    * so this method is called right after the file manager is created.
+    * @param deferredSync true if writes are forced to disk only by {@link #force()}
+    */
+   public synchronized void setDeferredSync(boolean deferredSync) {
+      this.deferredSync = deferredSync;
+   }
+
+   /**
+    * Returns true if writes are forced to disk only by {@link #force()}.
+    * @return true if deferred sync is on
+    */
+   public synchronized boolean isDeferredSync() {
+      return deferredSync;
+   }
+
    /**
     * Returns the number of blocks in the specified file.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public synchronized int size(String filename) {
+      return size(fileId(filename));
+   }
+
+   /**
+    * Returns the number of blocks in the file with the specified id.
+    * @param fileid the id of the file
+    * @return the number of blocks in the file
+    */
+   public synchronized int size(int fileid) {
       try {
-         FileChannel fc = getFile(filename);
-         return (int)(fc.size() / BLOCK_SIZE);
+         FileChannel fc = getFile(fileid);
+         return (int)(fc.size() / blocksize);
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot access " + filename);
+         throw new RuntimeException("cannot access " + fileName(fileid));
+      }
+   }
+
+   /**
+    * Returns the id of the specified file.
+    * Ids are small non-negative integers, assigned in the order
+    * that the files are first asked for.
+    * Only the first request for a file takes the lock
+    * of the file manager.
+    * @param filename the name of the file
+    * @return the id of the file
+    */
+   public int fileId(String filename) {
+      Integer id = fileIds.get(filename);
+      if (id != null)
+         return id;
+      synchronized (this) {
+         id = fileIds.get(filename);
+         if (id == null) {
+            id = openFiles.size();
+            addFileId(filename, id);
+            if (!filename.startsWith("temp"))
+               writeFileId(filename, id);
+         }
+         return id;
       }
    }
 
+   /**
+    * Returns the name of the file having the specified id.
+    * The name is looked up without the lock of the file manager,
+    * so it never waits for disk I/O.
+    * @param fileid the id of the file
+    * @return the name of the file
+    */
+   public String fileName(int fileid) {
+      return fileNames[fileid];
+   }
+
+   /**
+    * Returns true if the specified id belongs to a permanent file,
+    * that is, to a file whose id is stored in the file id catalog
+    * and so names the same file after a restart.
+    * @param fileid the id of the file
+    * @return true if the id is that of a permanent file
+    */
+   public boolean isPermanent(int fileid) {
+      String filename = knownName(fileid);
+      return filename != null && !filename.startsWith("temp");
+   }
+
+   /**
+    * Returns true if the specified id belongs to a temporary file,
+    * whose updates are not logged and which is never forced to disk.
+    * @param fileid the id of the file
+    * @return true if the id is that of a temporary file
+    */
+   public boolean isTemporary(int fileid) {
+      String filename = knownName(fileid);
+      return filename != null && filename.startsWith("temp");
+   }
+   
+   /**
+    * Returns the specified file of the database directory.
+    * This is used for the system's own files that are not
+    * read through pages.
+    * @param filename the name of the file
+    * @return the file
+    */
+   public File directoryFile(String filename) {
+      return new File(dbDirectory, filename);
+   }
+
+   /**
+    * Returns the size of the blocks of the database.
+    * @return the block size, in bytes
+    */
+   public int blockSize() {
+      return blocksize;
+   }
+   
+   /**
+    * Returns true if the specified size can be
+    * the block size of a new database.
+    * @param blocksize a size in bytes
+    * @return true if the size is a power of two within the allowed range
+    */
+   public static boolean isValidBlockSize(int blocksize) {
+      return blocksize >= MIN_BLOCK_SIZE && blocksize <= MAX_BLOCK_SIZE
+            && Integer.bitCount(blocksize) == 1;
+   }
+
    /**
     * Returns a boolean indicating whether the file manager
     * had to create a new database directory.
@@ -121,22 +371,142 @@ public class FileMgr {
    }
 
    /**
-    * Returns the file channel for the specified filename.
-    * The file channel is stored in a map keyed on the filename.
+    * Returns the file channel for the file having the specified id.
+    * The file channel is stored in a list indexed by the file id.
     * If the file is not open, then it is opened and the file channel
-    * is added to the map.
-    * @param filename the specified filename
+    * is added to the list.
+    * @param fileid the id of the file
     * @return the file channel associated with the open file.
     * @throws IOException
     */
-   private FileChannel getFile(String filename) throws IOException {
-      FileChannel fc = openFiles.get(filename);
+   private FileChannel getFile(int fileid) throws IOException {
+      FileChannel fc = openFiles.get(fileid);
       if (fc == null) {
-         File dbTable = new File(dbDirectory, filename);
-         RandomAccessFile f = new RandomAccessFile(dbTable, "rws");
+         File dbTable = new File(dbDirectory, fileNames[fileid]);
+         RandomAccessFile f = new RandomAccessFile(dbTable, deferredSync ? "rw" : "rws");
          fc = f.getChannel();
-         openFiles.put(filename, fc);
+         openFiles.set(fileid, fc);
       }
       return fc;
    }
+
+   /**
+    * Reads the block size from the header file.
+    * If there is no header, then the header is written:
+    * with the specified block size if the database has no files yet,
+    * and with the legacy block size if it was created
+    * before the header existed.
+    * @param newsize the block size of a new database
+    */
+   private void readHeader(int newsize) {
+      File hdrfile = new File(dbDirectory, HEADER_FILE);
+      try {
+         if (hdrfile.exists()) {
+            DataInputStream in = new DataInputStream(new FileInputStream(hdrfile));
+            try {
+               if (in.readInt() != HEADER_MAGIC || in.readInt() != HEADER_VERSION)
+                  throw new IOException();
+               blocksize = in.readInt();
+            }
+            finally {
+               in.close();
+            }
+            return;
+         }
+         boolean legacy = dbDirectory.list().length > 0;
+         blocksize = legacy ? LEGACY_BLOCK_SIZE : newsize;
+         FileOutputStream out = new FileOutputStream(hdrfile);
+         try {
+            DataOutputStream hdr = new DataOutputStream(out);
+            hdr.writeInt(HEADER_MAGIC);
+            hdr.writeInt(HEADER_VERSION);
+            hdr.writeInt(blocksize);
+            hdr.flush();
+            out.getFD().sync();
+         }
+         finally {
+            out.close();
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + HEADER_FILE);
+      }
+   }
+
+   /**
+    * Reads the ids of the permanent files from the file id catalog,
+    * and opens the catalog for appending new ids.
+    * Each entry of the catalog is a file id followed by the file's name.
+    */
+   private void readFileIdCatalog() {
+      File catfile = new File(dbDirectory, FILE_ID_CATALOG);
+      try {
+         if (catfile.exists()) {
+            DataInputStream in = new DataInputStream(
+                  new BufferedInputStream(new FileInputStream(catfile)));
+            try {
+               while (true) {
+                  int id = in.readInt();
+                  String filename = in.readUTF();
+                  addFileId(filename, id);
+               }
+            }
+            catch (EOFException e) {
+               // the end of the catalog
+            }
+            finally {
+               in.close();
+            }
+         }
+         catalogFile = new FileOutputStream(catfile, true);
+         catalog = new DataOutputStream(catalogFile);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + FILE_ID_CATALOG);
+      }
+   }
+
+   /**
+    * Appends the specified id to the file id catalog,
+    * and forces it to disk before the id is used.
+    */
+   private void writeFileId(String filename, int id) {
+      try {
+         catalog.writeInt(id);
+         catalog.writeUTF(filename);
+         catalog.flush();
+         catalogFile.getFD().sync();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write " + FILE_ID_CATALOG);
+      }
+   }
+
+   /**
+    * Returns the name of the file having the specified id,
+    * or null if no file has that id.
+    */
+   private String knownName(int fileid) {
+      String[] names = fileNames;
+      return (fileid >= 0 && fileid < names.length) ? names[fileid] : null;
+   }
+
+   /**
+    * Records the name of the file having the specified id,
+    * leaving a gap of unused ids below it if needed.
+    * The array of names grows by doubling, and is written
+    * back to its volatile field after every change, so that
+    * a thread that looks up a name without the lock sees it.
+    * The caller must hold the lock of the file manager.
+    */
+   private void addFileId(String filename, int id) {
+      String[] names = fileNames;
+      if (id >= names.length)
+         names = Arrays.copyOf(names, Math.max(2 * names.length, id + 1));
+      names[id] = filename;
+      while (openFiles.size() <= id)
+         openFiles.add(null);
+      fileIds.put(filename, id);
+      fileNames = names;
+   }
 }
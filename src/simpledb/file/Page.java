@@ -6,7 +6,7 @@ import java.nio.charset.Charset;
 
 /**
  * The contents of a disk block in memory.
- * A page is treated as an array of BLOCK_SIZE bytes.
+ * A page is treated as an array of {@link #blockSize()} bytes.
  * There are methods to get/set values into this array,
  * and to read/write the contents of this array to a disk block.
  * 
@@ -37,12 +37,14 @@ import java.nio.charset.Charset;
  */
 public class Page {
    /**
-    * The number of bytes in a block.
-    * This value is set unreasonably low, so that it is easier
-    * to create and test databases having a lot of blocks.
-    * A more realistic value would be 4K.
+    * Returns the number of bytes in a block, which is
+    * the block size of the database, as read from its
+    * header by the file manager.
+    * @return the block size, in bytes
     */
-   public static final int BLOCK_SIZE = 400;
+   public static int blockSize() {
+      return SimpleDB.fileMgr().blockSize();
+   }
    
    /**
     * The size of an integer in bytes.
@@ -66,7 +68,7 @@ public class Page {
       return INT_SIZE + (n * (int)bytesPerChar);
    }
    
-   private ByteBuffer contents = ByteBuffer.allocateDirect(BLOCK_SIZE);
+   private ByteBuffer contents;
    private FileMgr filemgr = SimpleDB.fileMgr();
    
    /**
@@ -81,7 +83,20 @@ public class Page {
     * {@link simpledb.server.SimpleDB#initFileLogAndBufferMgr(String)}
     * is called first.
     */
-   public Page() {}
+   public Page() {
+      this(ByteBuffer.allocateDirect(blockSize()));
+   }
+   
+   /**
+    * Creates a page whose contents are held in the specified
+    * byte buffer, which must have a capacity of one block.
+    * This constructor is called by {@link PageArena},
+    * whose pages are all slices of one region of memory.
+    * @param contents the memory holding the page contents
+    */
+   Page(ByteBuffer contents) {
+      this.contents = contents;
+   }
    
    /**
     * Populates the page with the contents of the specified disk block. 
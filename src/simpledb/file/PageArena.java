@@ -0,0 +1,126 @@
+package simpledb.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single off-heap region of memory that backs the pages
+ * of the buffer pool and the log manager.
+ * The region is reserved during system initialization,
+ * and is carved into block-sized slices, one per page.
+ * Because the slices are never freed, no direct memory
+ * is allocated (or reclaimed by the garbage collector)
+ * while the system runs, except when the buffer pool is
+ * grown beyond its largest size so far, in which case the
+ * arena reserves another chunk for the new pages.
+ * <p>
+ * A single direct byte buffer cannot hold more than 2GB,
+ * so a larger region is reserved as several chunks,
+ * each a whole number of blocks.
+ * The JVM's direct memory limit (-XX:MaxDirectMemorySize)
+ * must be at least the size of the arena.
+ */
+public class PageArena {
+   /**
+    * The largest chunk of the region, in bytes.
+    */
+   public static final int MAX_CHUNK_SIZE = 1 << 30;
+
+   private int pageSize = Page.blockSize();
+   private List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+   private int pageCount = 0;
+   private int nextPage = 0;
+   private int chunkIndex = 0;
+   private int chunkOffset = 0;
+
+   /**
+    * Reserves an arena big enough to hold the specified number of pages.
+    * @param pageCount the number of pages in the arena
+    */
+   public PageArena(int pageCount) {
+      addChunks(pageCount);
+   }
+   
+   /**
+    * Makes sure that at least the specified number of pages
+    * can still be handed out, reserving more memory if needed.
+    * @param pages the number of pages that must be available
+    */
+   public synchronized void reserve(int pages) {
+      int missing = pages - (pageCount - nextPage);
+      if (missing > 0)
+         addChunks(missing);
+   }
+   
+   /**
+    * Reserves chunks of memory for the specified number of pages.
+    * @param pages the number of pages to add to the arena
+    */
+   private void addChunks(int pages) {
+      int pagesPerChunk = MAX_CHUNK_SIZE / pageSize;
+      while (pages > 0) {
+         int size = Math.min(pagesPerChunk, pages);
+         chunks.add(ByteBuffer.allocateDirect(size * pageSize));
+         pageCount += size;
+         pages -= size;
+      }
+   }
+
+   /**
+    * Returns the number of pages that fit into a region
+    * of the specified number of bytes.
+    * @param bytes the size of the region, in bytes
+    * @return the number of whole pages in the region
+    */
+   public static int pagesIn(long bytes) {
+      return (int) Math.min(Integer.MAX_VALUE, bytes / Page.blockSize());
+   }
+
+   /**
+    * Creates a page whose contents are the next unused slice of the arena.
+    * @return the new page
+    */
+   public synchronized Page newPage() {
+      if (nextPage >= pageCount)
+         throw new RuntimeException("page arena exhausted: " + pageCount + " pages");
+      ByteBuffer chunk = chunks.get(chunkIndex);
+      if (chunkOffset >= chunk.capacity()) {
+         chunk = chunks.get(++chunkIndex);
+         chunkOffset = 0;
+      }
+      int offset = chunkOffset;
+      chunkOffset += pageSize;
+      nextPage++;
+
+      chunk.limit(offset + pageSize);
+      chunk.position(offset);
+      ByteBuffer slice = chunk.slice();
+      chunk.clear();
+      return new Page(slice);
+   }
+
+   /**
+    * Returns the number of pages the arena can hold.
+    * @return the capacity of the arena, in pages
+    */
+   public synchronized int pageCount() {
+      return pageCount;
+   }
+
+   /**
+    * Returns the number of pages not yet handed out.
+    * @return the number of unused pages
+    */
+   public synchronized int available() {
+      return pageCount - nextPage;
+   }
+
+   /**
+    * Returns the size of the arena.
+    * @return the size of the arena, in bytes
+    */
+   public synchronized long size() {
+      return (long) pageCount * pageSize;
+   }
+}
@@ -0,0 +1,208 @@
+package simpledb.file;
+
+import java.util.Arrays;
+
+/**
+ * A hash table from blocks to integers, keyed by the packed
+ * long value of {@link Block#key()}.
+ * The table uses open addressing with linear probing over
+ * parallel arrays of keys and values, so lookups, insertions
+ * and removals neither build strings nor allocate objects.
+ * Removal shifts the following entries of the probe sequence
+ * back, so the table never fills up with deleted markers.
+ * <p>
+ * The table is not thread-safe; its users already hold
+ * their own locks when accessing it.
+ */
+public class PageTable {
+   /**
+    * The value returned by {@link #get(long)} for a missing key.
+    */
+   public static final int NONE = -1;
+
+   /**
+    * The key of an empty slot.
+    * No block has this key, since file ids are never negative.
+    */
+   public static final long EMPTY = Long.MIN_VALUE;
+
+   private long[] keys;
+   private int[] vals;
+   private int size = 0;
+   private int mask;
+
+   /**
+    * Creates a table sized to hold the specified number of entries
+    * without growing.
+    * @param expected the expected number of entries
+    */
+   public PageTable(int expected) {
+      int capacity = 8;
+      while (capacity * 3 / 4 < expected)
+         capacity <<= 1;
+      allocate(capacity);
+   }
+
+   /**
+    * Returns the value for the specified key,
+    * or {@link #NONE} if the key is not in the table.
+    * @param key the packed key of a block
+    * @return the value for that key
+    */
+   public int get(long key) {
+      return get(key, NONE);
+   }
+
+   /**
+    * Returns the value for the specified key,
+    * or the specified default if the key is not in the table.
+    * @param key the packed key of a block
+    * @param dflt the value to return for a missing key
+    * @return the value for that key
+    */
+   public int get(long key, int dflt) {
+      for (int i = slot(key); ; i = (i + 1) & mask) {
+         long k = keys[i];
+         if (k == key)
+            return vals[i];
+         if (k == EMPTY)
+            return dflt;
+      }
+   }
+
+   /**
+    * Returns true if the specified key is in the table.
+    * @param key the packed key of a block
+    * @return true if the key is in the table
+    */
+   public boolean containsKey(long key) {
+      for (int i = slot(key); ; i = (i + 1) & mask) {
+         long k = keys[i];
+         if (k == key)
+            return true;
+         if (k == EMPTY)
+            return false;
+      }
+   }
+
+   /**
+    * Maps the specified key to the specified value,
+    * replacing any previous value.
+    * @param key the packed key of a block
+    * @param val the value
+    */
+   public void put(long key, int val) {
+      int i = slot(key);
+      for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+         if (keys[i] == key) {
+            vals[i] = val;
+            return;
+         }
+      }
+      keys[i] = key;
+      vals[i] = val;
+      if (++size > keys.length * 3 / 4)
+         grow();
+   }
+
+   /**
+    * Removes the specified key from the table.
+    * @param key the packed key of a block
+    * @return the removed value, or {@link #NONE} if the key was not in the table
+    */
+   public int remove(long key) {
+      int i = slot(key);
+      for (; keys[i] != key; i = (i + 1) & mask)
+         if (keys[i] == EMPTY)
+            return NONE;
+      int val = vals[i];
+      size--;
+
+      // shift back the entries whose probe sequence passes the hole
+      int hole = i;
+      for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+         int home = slot(keys[j]);
+         if (((j - home) & mask) >= ((j - hole) & mask)) {
+            keys[hole] = keys[j];
+            vals[hole] = vals[j];
+            hole = j;
+         }
+      }
+      keys[hole] = EMPTY;
+      return val;
+   }
+
+   /**
+    * Removes every entry from the table.
+    */
+   public void clear() {
+      Arrays.fill(keys, EMPTY);
+      size = 0;
+   }
+
+   /**
+    * Returns the number of entries in the table.
+    * @return the number of entries
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns the number of slots in the table.
+    * Together with {@link #keyAt(int)} and {@link #valueAt(int)},
+    * this allows the entries to be visited without allocating an iterator.
+    * @return the number of slots
+    */
+   public int slots() {
+      return keys.length;
+   }
+
+   /**
+    * Returns the key stored in the specified slot,
+    * or {@link #EMPTY} if the slot is empty.
+    * @param slot the slot number
+    * @return the key in that slot
+    */
+   public long keyAt(int slot) {
+      return keys[slot];
+   }
+
+   /**
+    * Returns the value stored in the specified slot.
+    * @param slot the slot number
+    * @return the value in that slot
+    */
+   public int valueAt(int slot) {
+      return vals[slot];
+   }
+
+   private int slot(long key) {
+      key ^= (key >>> 33);
+      key *= 0xff51afd7ed558ccdL;
+      key ^= (key >>> 33);
+      return (int) key & mask;
+   }
+
+   private void grow() {
+      long[] oldkeys = keys;
+      int[] oldvals = vals;
+      allocate(keys.length * 2);
+      for (int i = 0; i < oldkeys.length; i++) {
+         if (oldkeys[i] != EMPTY) {
+            int j = slot(oldkeys[i]);
+            while (keys[j] != EMPTY)
+               j = (j + 1) & mask;
+            keys[j] = oldkeys[i];
+            vals[j] = oldvals[i];
+         }
+      }
+   }
+
+   private void allocate(int capacity) {
+      keys = new long[capacity];
+      vals = new int[capacity];
+      mask = capacity - 1;
+      Arrays.fill(keys, EMPTY);
+   }
+}
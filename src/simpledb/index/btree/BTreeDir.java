@@ -1,5 +1,6 @@
 package simpledb.index.btree;
 
+import simpledb.buffer.AccessHint;
 import simpledb.file.Block;
 import simpledb.tx.Transaction;
 import simpledb.record.TableInfo;
@@ -18,6 +19,8 @@ public class BTreeDir {
    /**
     * Creates an object to hold the contents of the specified
     * B-tree block.
+    * The root block is read by every probe of the index,
+    * so it is pinned as kept.
     * @param blk a reference to the specified B-tree block
     * @param ti the metadata of the B-tree directory file
     * @param tx the calling transaction
@@ -26,7 +29,7 @@ public class BTreeDir {
       this.ti = ti;
       this.tx = tx;
       filename = blk.fileName();
-      contents = new BTreePage(blk, ti, tx);
+      contents = new BTreePage(blk, ti, tx, hintFor(blk));
    }
 
    /**
@@ -46,7 +49,7 @@ public class BTreeDir {
       Block childblk = findChildBlock(searchkey);
       while (contents.getFlag() > 0) {
          contents.close();
-         contents = new BTreePage(childblk, ti, tx);
+         contents = new BTreePage(childblk, ti, tx, hintFor(childblk));
          childblk = findChildBlock(searchkey);
       }
       return childblk.number();
@@ -107,6 +110,11 @@ public class BTreeDir {
       return new DirEntry(splitval, newblk.number());
    }
 
+   private AccessHint hintFor(Block blk) {
+      // the root is always block 0
+      return (blk.number() == 0) ? AccessHint.KEEP : AccessHint.RANDOM;
+   }
+
    private Block findChildBlock(Constant searchkey) {
       int slot = contents.findSlotBefore(searchkey);
       if (contents.getDataVal(slot+1).equals(searchkey))
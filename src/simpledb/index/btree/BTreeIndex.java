@@ -1,6 +1,7 @@
 package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
+import simpledb.buffer.AccessHint;
 import simpledb.file.Block;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
@@ -44,7 +45,7 @@ public class BTreeIndex implements Index {
       if (tx.size(dirTi.fileName()) == 0)
          // create new root block
          tx.append(dirTi.fileName(), new BTPageFormatter(dirTi, 0));
-      BTreePage page = new BTreePage(rootblk, dirTi, tx);
+      BTreePage page = new BTreePage(rootblk, dirTi, tx, AccessHint.KEEP);
       if (page.getNumRecs() == 0) {
 			// insert initial directory entry
          int fldtype = dirsch.type("dataval");
@@ -54,6 +55,8 @@ public class BTreeIndex implements Index {
          page.insertDir(0, minval, 0);
 		}
       page.close();
+      // every probe starts at the root, so keep it in memory for good
+      tx.pinSticky(rootblk);
    }
 
    /**
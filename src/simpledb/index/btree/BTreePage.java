@@ -2,6 +2,7 @@ package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
 import static simpledb.file.Page.*;
+import simpledb.buffer.AccessHint;
 import simpledb.file.Block;
 import simpledb.record.*;
 import simpledb.query.*;
@@ -27,11 +28,23 @@ public class BTreePage {
     * @param tx the calling transaction
     */
    public BTreePage(Block currentblk, TableInfo ti, Transaction tx) {
+      this(currentblk, ti, tx, AccessHint.RANDOM);
+   }
+   
+   /**
+    * Opens a page for the specified B-tree block,
+    * pinning the block with the specified intent.
+    * @param currentblk a reference to the B-tree block
+    * @param ti the metadata for the particular B-tree file
+    * @param tx the calling transaction
+    * @param hint the intent of the pin
+    */
+   public BTreePage(Block currentblk, TableInfo ti, Transaction tx, AccessHint hint) {
       this.currentblk = currentblk;
       this.ti = ti;
       this.tx = tx;
       slotsize = ti.recordLength();
-      tx.pin(currentblk);
+      tx.pin(currentblk, hint);
    }
    
    /**
@@ -62,7 +75,7 @@ public class BTreePage {
     * @return true if the block is full
     */
    public boolean isFull() {
-      return slotpos(getNumRecs()+1) >= BLOCK_SIZE;
+      return slotpos(getNumRecs()+1) >= blockSize();
    }
    
    /**
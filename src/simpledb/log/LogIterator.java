@@ -59,7 +59,7 @@ class LogIterator implements Iterator<BasicLogRecord> {
     * and positions it after the last record in that block.
     */
    private void moveToNextBlock() {
-      blk = new Block(blk.fileName(), blk.number()-1);
+      blk = new Block(blk.fileId(), blk.number()-1);
       pg.read(blk);
       currentrec = pg.getInt(LogMgr.LAST_POS);
    }
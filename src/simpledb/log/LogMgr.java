@@ -23,7 +23,7 @@ public class LogMgr implements Iterable<BasicLogRecord> {
    public static final int LAST_POS = 0;
 
    private String logfile;
-   private Page mypage = new Page();
+   private Page mypage = SimpleDB.pageArena().newPage();
    private Block currentblk;
    private int currentpos;
 
@@ -35,9 +35,12 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * that it gets from the method
     * {@link simpledb.server.SimpleDB#fileMgr()}.
     * That object is created during system initialization.
+    * Its page comes from the {@link PageArena} of
+    * {@link simpledb.server.SimpleDB#pageArena()}.
     * Thus this constructor cannot be called until
-    * {@link simpledb.server.SimpleDB#initFileMgr(String)}
-    * is called first.
+    * {@link simpledb.server.SimpleDB#initFileMgr(String)} and
+    * {@link simpledb.server.SimpleDB#initPageArena(int)}
+    * are called first.
     * @param logfile the name of the log file
     */
    public LogMgr(String logfile) {
@@ -58,7 +61,7 @@ public class LogMgr implements Iterable<BasicLogRecord> {
     * All earlier log records will also be written to disk.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
+   public synchronized void flush(int lsn) {
       if (lsn >= currentLSN())
          flush();
    }
@@ -86,7 +89,7 @@ public class LogMgr implements Iterable<BasicLogRecord> {
       int recsize = INT_SIZE;  // 4 bytes for the integer that points to the previous log record
       for (Object obj : rec)
          recsize += size(obj);
-      if (currentpos + recsize >= BLOCK_SIZE){ // the log record doesn't fit,
+      if (currentpos + recsize >= blockSize()){ // the log record doesn't fit,
          flush();        // so move to the next block.
          appendNewBlock();
       }
@@ -134,10 +137,13 @@ public class LogMgr implements Iterable<BasicLogRecord> {
    }
 
    /**
-    * Writes the current page to the log file.
+    * Writes the current page to the log file,
+    * and forces the file to disk if the file manager
+    * defers its syncs.
     */
    private void flush() {
       mypage.write(currentblk);
+      SimpleDB.fileMgr().force(currentblk.fileId());
    }
 
    /**
@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferRing;
 import simpledb.record.*;
 import simpledb.query.*;
 
@@ -9,6 +10,8 @@ import simpledb.query.*;
  * A temporary table is not registered in the catalog.
  * The class therefore has a method getTableInfo to return the 
  * table's metadata. 
+ * A temporary table is written and read in bulk,
+ * so each scan of it uses its own {@link BufferRing}.
  * @author Edward Sciore
  */
 public class TempTable {
@@ -32,7 +35,7 @@ public class TempTable {
     * Opens a table scan for the temporary table.
     */
    public UpdateScan open() {
-      return new TableScan(ti, tx);
+      return new TableScan(ti, tx, BufferRing.create(ti.fileName()));
    }
    
    /**
@@ -1,6 +1,7 @@
 package simpledb.metadata;
 
 import static simpledb.metadata.TableMgr.MAX_NAME;
+import simpledb.buffer.PooledBufferMgr;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import java.util.*;
@@ -29,18 +30,43 @@ public class IndexMgr {
          tblmgr.createTable("idxcat", sch, tx);
       }
       ti = tblmgr.getTableInfo("idxcat", tx);
+      if (!isnew)
+         addIndexes(ti, tx);
+   }
+   
+   /**
+    * Records the name of every index in the <i>idxcat</i> table
+    * with the buffer manager, which tells index files from
+    * tables by the names of the indexes.
+    * This method is called when an existing database is opened,
+    * before recovery pins the blocks of any index file.
+    * @param tblmgr the table manager
+    * @param tx the system startup transaction
+    */
+   public static void addIndexes(TableMgr tblmgr, Transaction tx) {
+      addIndexes(tblmgr.getTableInfo("idxcat", tx), tx);
+   }
+   
+   private static void addIndexes(TableInfo ti, Transaction tx) {
+      RecordFile rf = new RecordFile(ti, tx);
+      while (rf.next())
+         PooledBufferMgr.addIndex(rf.getString("indexname"));
+      rf.close();
    }
    
    /**
     * Creates an index of the specified type for the specified field.
     * A unique ID is assigned to this index, and its information
     * is stored in the idxcat table.
+    * The name of the index is recorded with the buffer manager
+    * before any of its files is created.
     * @param idxname the name of the index
     * @param tblname the name of the indexed table
     * @param fldname the name of the indexed field
     * @param tx the calling transaction
     */
    public void createIndex(String idxname, String tblname, String fldname, Transaction tx) {
+      PooledBufferMgr.addIndex(idxname);
       RecordFile rf = new RecordFile(ti, tx);
       rf.insert();
       rf.setString("indexname", idxname);
@@ -19,7 +19,20 @@ public class BufferNeeds {
     * @return the highest number less than the number of available buffers, that is a root of the plan's output size
     */
    public static int bestRoot(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      return bestRoot(size, SimpleDB.bufferMgr().available());
+   }
+   
+   /**
+    * This method considers the various roots
+    * of the specified output size (in blocks),
+    * and returns the highest root that is less than
+    * the specified number of buffers, such as
+    * the size of a buffer reservation.
+    * @param size the size of the output file
+    * @param avail the number of buffers the scan may use
+    * @return the highest number less than avail, that is a root of the plan's output size
+    */
+   public static int bestRoot(int size, int avail) {
       if (avail <= 1)
          return 1;
       int k = Integer.MAX_VALUE;
@@ -40,7 +53,20 @@ public class BufferNeeds {
     * @return the highest number less than the number of available buffers, that is a factor of the plan's output size
     */
    public static int bestFactor(int size) {
-      int avail = SimpleDB.bufferMgr().available();
+      return bestFactor(size, SimpleDB.bufferMgr().available());
+   }
+   
+   /**
+    * This method considers the various factors
+    * of the specified output size (in blocks),
+    * and returns the highest factor that is less than
+    * the specified number of buffers, such as
+    * the size of a buffer reservation.
+    * @param size the size of the output file
+    * @param avail the number of buffers the scan may use
+    * @return the highest number less than avail, that is a factor of the plan's output size
+    */
+   public static int bestFactor(int size, int avail) {
       if (avail <= 1)
          return 1;
       int k = size;
@@ -2,6 +2,7 @@ package simpledb.multibuffer;
 
 import static java.sql.Types.INTEGER;
 import simpledb.tx.Transaction;
+import simpledb.buffer.AccessHint;
 import simpledb.record.*;
 import simpledb.file.Block;
 import simpledb.query.*;
@@ -21,6 +22,7 @@ public class ChunkScan implements Scan {
    
    /**
     * Creates a chunk consisting of the specified pages. 
+    * The chunk is read once, so its pages are pinned as one-shot.
     * @param ti the metadata for the chunked table
     * @param startbnum the starting block number
     * @param endbnum  the ending block number
@@ -34,7 +36,7 @@ public class ChunkScan implements Scan {
       String filename = ti.fileName();
       for (int i=startbnum; i<=endbnum; i++) {
          Block blk = new Block(filename, i);
-         pages.add(new RecordPage(blk, ti, tx));
+         pages.add(new RecordPage(blk, ti, tx, AccessHint.ONE_SHOT));
       }
       beforeFirst();
    }
@@ -1,5 +1,6 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferReservation;
 import simpledb.tx.Transaction;
 import simpledb.record.TableInfo;
 import simpledb.query.*;
@@ -13,11 +14,18 @@ public class MultiBufferProductScan implements Scan {
    private Scan lhsscan, rhsscan=null, prodscan;
    private TableInfo ti;
    private Transaction tx;
+   private BufferReservation reservation;
    private int chunksize, nextblknum, filesize;
    
    
    /**
     * Creates the scan class for the product of the LHS scan and a table.
+    * The chunk size is chosen from the buffers the scan manages
+    * to reserve, rather than from the buffers that happen to be
+    * available, so that concurrent scans share the buffer pool.
+    * If other scans are later queued for buffers, the chunk size
+    * is lowered between chunks to what the reservation is asked
+    * to keep.
     * @param lhsscan the LHS scan
     * @param ti the metadata for the RHS table
     * @param tx the current transaction
@@ -27,7 +35,9 @@ public class MultiBufferProductScan implements Scan {
       this.ti = ti;
       this.tx = tx;
       filesize = tx.size(ti.fileName());
-      chunksize = BufferNeeds.bestFactor(filesize);
+      reservation = tx.reserveBuffers(1, filesize);
+      chunksize = BufferNeeds.bestFactor(filesize, reservation.size());
+      reservation.shrink(chunksize);
       beforeFirst();
    }
    
@@ -58,11 +68,13 @@ public class MultiBufferProductScan implements Scan {
    }
    
    /**
-    * Closes the current scans.
+    * Closes the current scans,
+    * and releases the scan's buffer reservation.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
       prodscan.close();
+      reservation.release();
    }
    
    /** 
@@ -109,6 +121,11 @@ public class MultiBufferProductScan implements Scan {
          rhsscan.close();
       if (nextblknum >= filesize)
          return false;
+      int target = reservation.target();
+      if (target < chunksize) {
+         chunksize = BufferNeeds.bestFactor(filesize - nextblknum, target);
+         reservation.shrink(chunksize);
+      }
       int end = nextblknum + chunksize - 1;
       if (end >= filesize)
          end = filesize - 1;
@@ -7,14 +7,14 @@ import simpledb.index.query.*;
 import simpledb.metadata.IndexInfo;
 import simpledb.multibuffer.MultiBufferProductPlan;
 import simpledb.server.SimpleDB;
-import java.util.Map;
+import java.util.*;
 
 /**
  * This class contains methods for planning a single table.
  * @author Edward Sciore
  */
 class TablePlanner {
-   private TablePlan myplan;
+   private Plan myplan;
    private Predicate mypred;
    private Schema myschema;
    private Map<String,IndexInfo> indexes;
@@ -26,6 +26,7 @@ class TablePlanner {
     * The table planner is responsible for determining
     * which portion of the predicate is useful to the table,
     * and when indexes are useful.
+    * A virtual table has no indexes.
     * @param tblname the name of the table
     * @param mypred the query predicate
     * @param tx the calling transaction
@@ -33,9 +34,14 @@ class TablePlanner {
    public TablePlanner(String tblname, Predicate mypred, Transaction tx) {
       this.mypred  = mypred;
       this.tx  = tx;
-      myplan   = new TablePlan(tblname, tx);
+      myplan   = SimpleDB.planner().createVirtualPlan(tblname);
+      if (myplan != null)
+         indexes = new HashMap<String,IndexInfo>();
+      else {
+         myplan  = new TablePlan(tblname, tx);
+         indexes = SimpleDB.mdMgr().getIndexInfo(tblname, tx);
+      }
       myschema = myplan.schema();
-      indexes  = SimpleDB.mdMgr().getIndexInfo(tblname, tx);
    }
    
    /**
@@ -0,0 +1,53 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>alter system</i> statement,
+ * which changes a setting of the running server.
+ */
+public class AlterSystemData {
+   private String setting;
+   private int value;
+   private String pool;
+   
+   /**
+    * Saves the name of the setting and its new value.
+    */
+   public AlterSystemData(String setting, int value) {
+      this(setting, value, null);
+   }
+   
+   /**
+    * Saves the name of the setting, its new value,
+    * and the buffer pool the setting applies to.
+    */
+   public AlterSystemData(String setting, int value, String pool) {
+      this.setting = setting;
+      this.value = value;
+      this.pool = pool;
+   }
+   
+   /**
+    * Returns the name of the setting to change.
+    * @return the name of the setting
+    */
+   public String setting() {
+      return setting;
+   }
+   
+   /**
+    * Returns the new value of the setting.
+    * @return the new value
+    */
+   public int value() {
+      return value;
+   }
+   
+   /**
+    * Returns the name of the buffer pool the setting applies to,
+    * or null if it applies to the whole server.
+    * @return the name of the pool
+    */
+   public String pool() {
+      return pool;
+   }
+}
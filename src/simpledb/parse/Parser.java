@@ -95,6 +95,8 @@ public class Parser {
          return delete();
       else if (lex.matchKeyword("update"))
          return modify();
+      else if (lex.matchKeyword("alter"))
+         return alterSystem();
       else
          return create();
    }
@@ -241,5 +243,23 @@ public class Parser {
       lex.eatDelim(')');
       return new CreateIndexData(idxname, tblname, fldname);
    }
+   
+   
+//  Method for parsing alter system commands
+   
+   public AlterSystemData alterSystem() {
+      lex.eatKeyword("alter");
+      lex.eatKeyword("system");
+      lex.eatKeyword("set");
+      String setting = lex.eatId();
+      lex.eatDelim('=');
+      int value = lex.eatIntConstant();
+      String pool = null;
+      if (lex.matchKeyword("on")) {
+         lex.eatKeyword("on");
+         pool = lex.eatStringConstant();
+      }
+      return new AlterSystemData(setting, value, pool);
+   }
 }
 
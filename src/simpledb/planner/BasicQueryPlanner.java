@@ -14,7 +14,7 @@ public class BasicQueryPlanner implements QueryPlanner {
    
    /**
     * Creates a query plan as follows.  It first takes
-    * the product of all tables and views; it then selects on the predicate;
+    * the product of all tables, views and virtual tables; it then selects on the predicate;
     * and finally it projects on the field list. 
     */
    public Plan createPlan(QueryData data, Transaction tx) {
@@ -22,8 +22,11 @@ public class BasicQueryPlanner implements QueryPlanner {
       List<Plan> plans = new ArrayList<Plan>();
       for (String tblname : data.tables()) {
          String viewdef = SimpleDB.mdMgr().getViewDef(tblname, tx);
+         Plan virtual = SimpleDB.planner().createVirtualPlan(tblname);
          if (viewdef != null)
             plans.add(SimpleDB.planner().createQueryPlan(viewdef, tx));
+         else if (virtual != null)
+            plans.add(virtual);
          else
             plans.add(new TablePlan(tblname, tx));
       }
@@ -1,5 +1,7 @@
 package simpledb.planner;
 
+import simpledb.buffer.BufferMgr;
+import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
 import simpledb.parse.*;
 import simpledb.query.*;
@@ -29,12 +31,39 @@ public class Planner {
       return qplanner.createPlan(data, tx);
    }
    
+   /**
+    * Creates a plan for the specified virtual table,
+    * whose rows are computed by the server rather than stored.
+    * The only virtual table is <i>bufferstats</i>.
+    * The method returns null if the table is not virtual,
+    * so that every query planner reads it the same way.
+    * @param tblname the name of the table
+    * @return the plan of the virtual table, or null
+    */
+   public Plan createVirtualPlan(String tblname) {
+      if (isVirtualTable(tblname))
+         return new BufferStatsPlan();
+      else
+         return null;
+   }
+   
+   /**
+    * Returns true if the specified table is a virtual table.
+    * @param tblname the name of the table
+    * @return true if the table is virtual
+    */
+   public boolean isVirtualTable(String tblname) {
+      return BufferStatsPlan.TABLE_NAME.equals(tblname);
+   }
+   
    /**
     * Executes an SQL insert, delete, modify, or
     * create statement.
     * The method dispatches to the appropriate method of the
     * supplied update planner,
     * depending on what the parser returns.
+    * An alter system statement is executed by the planner itself.
+    * A virtual table cannot be changed.
     * @param cmd the SQL update string
     * @param tx the transaction
     * @return an integer denoting the number of affected records
@@ -42,6 +71,8 @@ public class Planner {
    public int executeUpdate(String cmd, Transaction tx) {
       Parser parser = new Parser(cmd);
       Object obj = parser.updateCmd();
+      if (isVirtualTable(updatedTable(obj)))
+         throw new BadSyntaxException();
       if (obj instanceof InsertData)
          return uplanner.executeInsert((InsertData)obj, tx);
       else if (obj instanceof DeleteData)
@@ -54,7 +85,52 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)obj, tx);
       else if (obj instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)obj, tx);
+      else if (obj instanceof AlterSystemData)
+         return executeAlterSystem((AlterSystemData)obj);
       else
          return 0;
    }
+   
+   /**
+    * Returns the name of the table or view that the
+    * parsed update statement changes or creates.
+    * @param obj the parsed representation of the statement
+    * @return the name of the table, or null if it changes none
+    */
+   private String updatedTable(Object obj) {
+      if (obj instanceof InsertData)
+         return ((InsertData)obj).tableName();
+      else if (obj instanceof DeleteData)
+         return ((DeleteData)obj).tableName();
+      else if (obj instanceof ModifyData)
+         return ((ModifyData)obj).tableName();
+      else if (obj instanceof CreateTableData)
+         return ((CreateTableData)obj).tableName();
+      else if (obj instanceof CreateViewData)
+         return ((CreateViewData)obj).viewName();
+      else if (obj instanceof CreateIndexData)
+         return ((CreateIndexData)obj).tableName();
+      else
+         return null;
+   }
+   
+   /**
+    * Changes a setting of the running server.
+    * The only setting is <i>buffers</i>, the number of
+    * buffers in the buffer pool, or in the named pool
+    * given after <i>on</i>.
+    * @param data the parsed representation of the alter system statement
+    * @return the new value of the setting
+    */
+   private int executeAlterSystem(AlterSystemData data) {
+      if (!data.setting().equals("buffers"))
+         throw new BadSyntaxException();
+      BufferMgr bm = SimpleDB.bufferMgr();
+      if (data.pool() == null)
+         return bm.resize(data.value());
+      else if (bm.poolNames().contains(data.pool()))
+         return bm.resizePool(data.pool(), data.value());
+      else
+         throw new BadSyntaxException();
+   }
 }
@@ -0,0 +1,123 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferStats;
+import simpledb.record.Schema;
+import simpledb.server.SimpleDB;
+
+/**
+ * The Plan class corresponding to the read-only virtual table
+ * <i>bufferstats</i>, whose records are the statistics of the
+ * buffer pool when the scan is opened.
+ * Each record has the name of a pool (<i>all</i> for the whole
+ * buffer pool), the name of a metric, and its value.
+ * A pool managed by the ARC policy also has the rows
+ * arctargett1, arct1, arct2 and arcghosts.
+ * Values too large for an integer are capped.
+ */
+public class BufferStatsPlan implements Plan {
+   /**
+    * The name of the virtual table.
+    */
+   public static final String TABLE_NAME = "bufferstats";
+   
+   private static final int METRICS = 14 + BufferStats.WAIT_BUCKETS;
+   private Schema sch = new Schema();
+   
+   /**
+    * Creates a plan for the virtual table.
+    */
+   public BufferStatsPlan() {
+      sch.addStringField("pool", 16);
+      sch.addStringField("metric", 20);
+      sch.addIntField("value");
+   }
+   
+   /**
+    * Creates a scan over the statistics of the buffer pool,
+    * and of each named pool, as they are now.
+    * @see simpledb.query.Plan#open()
+    */
+   public Scan open() {
+      BufferMgr bm = SimpleDB.bufferMgr();
+      List<String> pools = new ArrayList<String>();
+      List<String> metrics = new ArrayList<String>();
+      List<Integer> values = new ArrayList<Integer>();
+      addRows("all", bm.stats(), pools, metrics, values);
+      for (String pool : bm.poolNames())
+         addRows(pool, bm.stats(pool), pools, metrics, values);
+      return new BufferStatsScan(pools, metrics, values);
+   }
+   
+   /**
+    * The table is in memory, so no block is accessed.
+    * @see simpledb.query.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return 0;
+   }
+   
+   /**
+    * Returns the number of records of the table.
+    * @see simpledb.query.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return METRICS * (1 + SimpleDB.bufferMgr().poolNames().size());
+   }
+   
+   /**
+    * Estimates the number of distinct values of the field.
+    * @see simpledb.query.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      if (fldname.equals("pool"))
+         return 1 + SimpleDB.bufferMgr().poolNames().size();
+      else if (fldname.equals("metric"))
+         return METRICS;
+      else
+         return recordsOutput();
+   }
+   
+   /**
+    * Returns the schema of the table:
+    * pool varchar(16), metric varchar(20), value int.
+    * @see simpledb.query.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+   
+   private static void addRows(String pool, BufferStats s, List<String> pools,
+                               List<String> metrics, List<Integer> values) {
+      long[] row = { s.hits(), s.misses(), Math.round(1000 * s.hitRatio()),
+                     s.newBlocks(), s.evictions(), s.dirtyEvictions(),
+                     s.waits(), s.waitTimeouts(), s.waitMillis(),
+                     s.size(), s.pinned(), s.dirty(), s.free(), s.offline() };
+      String[] names = { "hits", "misses", "hitpermille",
+                         "newblocks", "evictions", "dirtyevictions",
+                         "waits", "waittimeouts", "waitmillis",
+                         "size", "pinned", "dirty", "free", "offline" };
+      for (int i = 0; i < row.length; i++)
+         addRow(pool, names[i], row[i], pools, metrics, values);
+      long[] histogram = s.waitHistogram();
+      for (int i = 0; i < histogram.length; i++) {
+         String name = (i < histogram.length - 1) ? "waitsunder" + (1L << i) + "ms"
+                                                  : "waitsover" + (1L << (i - 1)) + "ms";
+         addRow(pool, name, histogram[i], pools, metrics, values);
+      }
+      if (s.isARC()) {
+         addRow(pool, "arctargett1", s.targetT1Size(), pools, metrics, values);
+         addRow(pool, "arct1", s.t1Size(), pools, metrics, values);
+         addRow(pool, "arct2", s.t2Size(), pools, metrics, values);
+         addRow(pool, "arcghosts", s.ghostSize(), pools, metrics, values);
+      }
+   }
+   
+   private static void addRow(String pool, String metric, long value, List<String> pools,
+                              List<String> metrics, List<Integer> values) {
+      pools.add(pool);
+      metrics.add(metric);
+      values.add((int) Math.min(value, Integer.MAX_VALUE));
+   }
+}
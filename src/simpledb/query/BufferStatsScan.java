@@ -0,0 +1,66 @@
+package simpledb.query;
+
+import java.util.List;
+
+/**
+ * The scan class corresponding to the virtual table
+ * <i>bufferstats</i>.
+ * The records are held in memory, and cannot be changed.
+ */
+public class BufferStatsScan implements Scan {
+   private List<String> pools, metrics;
+   private List<Integer> values;
+   private int current = -1;
+   
+   /**
+    * Creates a scan over the specified records,
+    * given as one list per field.
+    * @param pools the pool of each record
+    * @param metrics the metric of each record
+    * @param values the value of each record
+    */
+   public BufferStatsScan(List<String> pools, List<String> metrics, List<Integer> values) {
+      this.pools = pools;
+      this.metrics = metrics;
+      this.values = values;
+   }
+   
+   public void beforeFirst() {
+      current = -1;
+   }
+   
+   public boolean next() {
+      current++;
+      return current < values.size();
+   }
+   
+   public void close() {
+   }
+   
+   public Constant getVal(String fldname) {
+      if (fldname.equals("value"))
+         return new IntConstant(getInt(fldname));
+      else
+         return new StringConstant(getString(fldname));
+   }
+   
+   public int getInt(String fldname) {
+      if (fldname.equals("value"))
+         return values.get(current);
+      else
+         throw new RuntimeException("field " + fldname + " not found.");
+   }
+   
+   public String getString(String fldname) {
+      if (fldname.equals("pool"))
+         return pools.get(current);
+      else if (fldname.equals("metric"))
+         return metrics.get(current);
+      else
+         throw new RuntimeException("field " + fldname + " not found.");
+   }
+   
+   public boolean hasField(String fldname) {
+      return fldname.equals("pool") || fldname.equals("metric") || fldname.equals("value");
+   }
+}
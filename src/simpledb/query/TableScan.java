@@ -2,6 +2,7 @@ package simpledb.query;
 
 import static java.sql.Types.INTEGER;
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferRing;
 import simpledb.record.*;
 
 /**
@@ -27,6 +28,18 @@ public class TableScan implements UpdateScan {
       sch = ti.schema();
    }
    
+   /**
+    * Creates a new table scan whose record file
+    * reads and writes through the specified ring.
+    * @param ti the table's metadata
+    * @param tx the calling transaction
+    * @param ring the ring of buffers to use, or null
+    */
+   public TableScan(TableInfo ti, Transaction tx, BufferRing ring) {
+      rf  = new RecordFile(ti, tx, ring);
+      sch = ti.schema();
+   }
+   
    // Scan methods
    
    public void beforeFirst() {
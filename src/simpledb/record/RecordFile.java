@@ -1,5 +1,7 @@
 package simpledb.record;
 
+import simpledb.buffer.AccessHint;
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
 import simpledb.tx.Transaction;
 
@@ -7,6 +9,11 @@ import simpledb.tx.Transaction;
  * Manages a file of records.
  * There are methods for iterating through the records
  * and accessing their contents.
+ * Blocks reached by iterating are pinned as sequential,
+ * and blocks reached by RID are pinned as random.
+ * A record file larger than a fraction of the buffer pool
+ * is read through a {@link BufferRing}, so that scanning it
+ * does not evict the blocks of other transactions.
  * @author Edward Sciore
  */
 public class RecordFile {
@@ -15,6 +22,7 @@ public class RecordFile {
    private String filename;
    private RecordPage rp;
    private int currentblknum;
+   private BufferRing ring;
    
    /**
     * Constructs an object to manage a file of records.
@@ -23,12 +31,26 @@ public class RecordFile {
     * @param tx the transaction
     */
    public RecordFile(TableInfo ti, Transaction tx) {
+      this(ti, tx, BufferRing.forScan(ti.fileName(), tx.size(ti.fileName())));
+   }
+   
+   /**
+    * Constructs an object to manage a file of records,
+    * whose blocks are pinned and appended through
+    * the specified ring.
+    * If the file does not exist, it is created.
+    * @param ti the table metadata
+    * @param tx the transaction
+    * @param ring the ring of buffers to use, or null
+    */
+   public RecordFile(TableInfo ti, Transaction tx, BufferRing ring) {
       this.ti = ti;
       this.tx = tx;
+      this.ring = ring;
       filename = ti.fileName();
       if (tx.size(filename) == 0)
          appendBlock();
-      moveTo(0);
+      moveTo(0, AccessHint.SEQUENTIAL);
    }
    
    /**
@@ -43,7 +65,7 @@ public class RecordFile {
     * will wind up at the first record. 
     */
    public void beforeFirst() {
-      moveTo(0);
+      moveTo(0, AccessHint.SEQUENTIAL);
    }
    
    /**
@@ -57,7 +79,7 @@ public class RecordFile {
             return true;
          if (atLastBlock())
             return false;
-         moveTo(currentblknum + 1);
+         moveTo(currentblknum + 1, AccessHint.SEQUENTIAL);
       }
    }
    
@@ -122,7 +144,7 @@ public class RecordFile {
       while (!rp.insert()) {
          if (atLastBlock())
             appendBlock();
-         moveTo(currentblknum + 1);
+         moveTo(currentblknum + 1, AccessHint.SEQUENTIAL);
       }
    }
    
@@ -132,7 +154,7 @@ public class RecordFile {
     * @param rid a record identifier
     */
    public void moveToRid(RID rid) {
-      moveTo(rid.blockNumber());
+      moveTo(rid.blockNumber(), AccessHint.RANDOM);
       rp.moveToId(rid.id());
    }
    
@@ -145,12 +167,12 @@ public class RecordFile {
       return new RID(currentblknum, id);
    }
    
-   private void moveTo(int b) {
+   private void moveTo(int b, AccessHint hint) {
       if (rp != null)
          rp.close();
       currentblknum = b;
       Block blk = new Block(filename, currentblknum);
-      rp = new RecordPage(blk, ti, tx);
+      rp = new RecordPage(blk, ti, tx, hint, ring);
    }
    
    private boolean atLastBlock() {
@@ -159,6 +181,6 @@ public class RecordFile {
    
    private void appendBlock() {
       RecordFormatter fmtr = new RecordFormatter(ti);
-      tx.append(filename, fmtr);
+      tx.append(filename, fmtr, ring);
    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package simpledb.record;
 
 import static simpledb.file.Page.*;
+import simpledb.buffer.AccessHint;
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
 import simpledb.tx.Transaction;
 
@@ -24,11 +26,37 @@ public class RecordPage {
      * @param tx the transaction performing the operations
      */
    public RecordPage(Block blk, TableInfo ti, Transaction tx) {
+      this(blk, ti, tx, AccessHint.RANDOM);
+   }
+   
+   /** Creates the record manager for the specified block,
+     * pinning the block with the specified intent.
+     * The current record is set to be prior to the first one.
+     * @param blk a reference to the disk block
+     * @param ti the table's metadata
+     * @param tx the transaction performing the operations
+     * @param hint the intent of the pin
+     */
+   public RecordPage(Block blk, TableInfo ti, Transaction tx, AccessHint hint) {
+      this(blk, ti, tx, hint, null);
+   }
+   
+   /** Creates the record manager for the specified block,
+     * pinning the block with the specified intent
+     * through the ring of a bulk operation.
+     * The current record is set to be prior to the first one.
+     * @param blk a reference to the disk block
+     * @param ti the table's metadata
+     * @param tx the transaction performing the operations
+     * @param hint the intent of the pin
+     * @param ring the ring of the pinning scan, or null
+     */
+   public RecordPage(Block blk, TableInfo ti, Transaction tx, AccessHint hint, BufferRing ring) {
       this.blk = blk;
       this.ti = ti;
       this.tx = tx;
       slotsize = ti.recordLength() + INT_SIZE;
-      tx.pin(blk);
+      tx.pin(blk, hint, ring);
   }
    
    /**
@@ -146,7 +174,7 @@ public class RecordPage {
    }
    
    private boolean isValidSlot() {
-      return currentpos() + slotsize <= BLOCK_SIZE;
+      return currentpos() + slotsize <= blockSize();
    }
    
    private boolean searchFor(int flag) {
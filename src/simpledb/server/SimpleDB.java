@@ -1,5 +1,6 @@
 package simpledb.server;
 
+import java.io.IOException;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -7,8 +8,11 @@ import java.util.logging.SimpleFormatter;
 
 import simpledb.buffer.BufferMgr;
 import simpledb.file.FileMgr;
+import simpledb.file.PageArena;
 import simpledb.log.LogMgr;
+import simpledb.metadata.IndexMgr;
 import simpledb.metadata.MetadataMgr;
+import simpledb.metadata.TableMgr;
 import simpledb.planner.BasicQueryPlanner;
 import simpledb.planner.BasicUpdatePlanner;
 import simpledb.planner.Planner;
@@ -30,12 +34,88 @@ import simpledb.tx.Transaction;
 public class SimpleDB {
 	public static int BUFFER_SIZE = 8;
 
+	// The number of independently locked stripes of the buffer pool
+	public static int BUFFER_STRIPES = 1;
+
+	// The named pools the buffer pool is divided into, each with its own share
+	// of the buffers and replacement policy, and the files each pool holds, as
+	// described in PooledBufferMgr; for example
+	// "catalog:0.05:lru,index:0.2:lru,temp:0.15:clock". Empty keeps a single
+	// pool.
+	public static String BUFFER_POOLS = "";
+
+	// The size of the buffer pool in bytes. When positive, it overrides
+	// BUFFER_SIZE, and the pool holds as many blocks as fit in it.
+	public static long BUFFER_POOL_BYTES = 0;
+
+	// The largest size in bytes the buffer pool can be resized to while the
+	// system runs. When zero, the pool can grow to BUFFER_POOL_GROWTH times
+	// its initial number of buffers.
+	public static long BUFFER_POOL_MAX_BYTES = 0;
+	public static int BUFFER_POOL_GROWTH = 4;
+
+	// The fraction of unpinned buffers the page cleaner keeps clean. Zero
+	// disables the page cleaner.
+	public static double CLEAN_TARGET = 0.25;
+
+	// The largest number of blocks read ahead of a sequential scan. Zero
+	// disables read-ahead.
+	public static int READ_AHEAD = 32;
+
+	// Scans of files larger than this fraction of the buffer pool, and scans
+	// of temporary tables, reuse a private ring of at most RING_SIZE buffers.
+	// Zero disables the rings.
+	public static double RING_THRESHOLD = 0.25;
+	public static int RING_SIZE = 16;
+
+	// The longest time a transaction waits for a buffer, in milliseconds
+	public static long BUFFER_WAIT_TIME = BufferMgr.DEFAULT_MAX_TIME;
+
+	// The time between saves of the list of blocks in the buffer pool, in
+	// milliseconds. The list is read back into the pool at startup. Zero
+	// disables saving and reading back the list.
+	public static long POOL_SNAPSHOT_INTERVAL = 60000;
+	public static String POOL_SNAPSHOT_FILE = "simpledb.pool";
+
+	// The fraction of the buffer pool that operators may reserve at once for
+	// their working space
+	public static double RESERVE_FRACTION = 0.5;
+
+	// The fraction of the buffer pool a transaction may pin at once, beyond
+	// the buffers it has reserved, but never fewer than MIN_PIN_QUOTA buffers.
+	// Zero removes the limit.
+	public static double PIN_QUOTA = 0.5;
+	public static int MIN_PIN_QUOTA = 8;
+
+	// The largest number of B-tree roots pinned in the buffer pool for good,
+	// so that index probes never read them from disk. Zero disables the
+	// sticky pins.
+	public static int STICKY_ROOTS = 0;
+
+	// The file in the database directory the pins of the transactions are
+	// traced to, for the PolicySimulator. Empty disables the trace.
+	public static String BUFFER_TRACE_FILE = "";
+
+	// The size in bytes of the blocks of a new database, between
+	// FileMgr.MIN_BLOCK_SIZE and FileMgr.MAX_BLOCK_SIZE. An existing
+	// database keeps the size recorded in its header file.
+	public static int NEW_BLOCK_SIZE = FileMgr.DEFAULT_BLOCK_SIZE;
+
+	// If true, data, index and temporary files are written without a sync,
+	// and the files of permanent tables and indexes are forced to disk
+	// before every commit, rollback and checkpoint record instead. The log
+	// is forced each time its page is written.
+	public static boolean DEFERRED_SYNC = false;
+
 	public static String LOG_FILE = "simpledb.log";
 	public static String CS4431_BASIC_LOG = "cs4432_basic.log";
 	public static String CS4431_LRU_LOG = "cs4432_lru.log";
 	public static String CS4431_CLOCK_LOG = "cs4432_clock.log";
+	public static String CS4431_LRU2_LOG = "cs4432_lru2.log";
+	public static String CS4431_ARC_LOG = "cs4432_arc.log";
 
 	private static FileMgr fm;
+	private static PageArena arena;
 	private static BufferMgr bm;
 	private static LogMgr logm;
 	private static MetadataMgr mdm;
@@ -48,6 +128,29 @@ public class SimpleDB {
 		return bm;
 	}
 
+	/**
+	 * Returns the number of buffers in the buffer pool, as configured by
+	 * BUFFER_POOL_BYTES or, if that is not set, by BUFFER_SIZE.
+	 *
+	 * @return the number of buffers
+	 */
+	public static int bufferCount() {
+		return (BUFFER_POOL_BYTES > 0) ? PageArena.pagesIn(BUFFER_POOL_BYTES) : BUFFER_SIZE;
+	}
+
+	/**
+	 * Returns the largest number of buffers the buffer pool can be resized
+	 * to, as configured by BUFFER_POOL_MAX_BYTES or, if that is not set, by
+	 * BUFFER_POOL_GROWTH. It is never less than the initial number of buffers.
+	 *
+	 * @return the capacity of the buffer pool
+	 */
+	public static int bufferCapacity() {
+		long capacity = (BUFFER_POOL_MAX_BYTES > 0) ? PageArena.pagesIn(BUFFER_POOL_MAX_BYTES)
+				: (long) bufferCount() * Math.max(1, BUFFER_POOL_GROWTH);
+		return (int) Math.max(bufferCount(), Math.min(Integer.MAX_VALUE, capacity));
+	}
+
 	// The following initialization methods are useful for
 	// testing the lower-level components of the system
 	// without having to initialize everything.
@@ -79,13 +182,18 @@ public class SimpleDB {
 		Transaction tx = new Transaction();
 		boolean isnew = fm.isNew();
 		if (isnew) {
-			logger.log(Level.INFO, "Creating new database");
+			logger.log(Level.INFO, "Creating new database with " + fm.blockSize() + "-byte blocks");
 		} else {
-			logger.log(Level.INFO, "Recovering existing database");
+			logger.log(Level.INFO, "Recovering existing database with " + fm.blockSize() + "-byte blocks");
+			// Index files are told from tables by the names in idxcat, so
+			// read them before recovery pins any index blocks.
+			IndexMgr.addIndexes(new TableMgr(false, tx), tx);
 			tx.recover();
 		}
 		initMetadataMgr(isnew, tx);
 		tx.commit();
+		if (POOL_SNAPSHOT_INTERVAL > 0)
+			bm.startPoolSnapshot(fm.directoryFile(POOL_SNAPSHOT_FILE), POOL_SNAPSHOT_INTERVAL);
 	}
 
 	/**
@@ -96,6 +204,7 @@ public class SimpleDB {
 	 */
 	public static void initFileAndLogMgr(String dirname, String log_name) {
 		initFileMgr(dirname);
+		initPageArena(bufferCount() + 1);
 		logm = new LogMgr(LOG_FILE);
 
 		// CS 4432 Project 1
@@ -131,11 +240,34 @@ public class SimpleDB {
 			case 2:
 			log_name = CS4431_LRU_LOG;
 			break;
+			case 3:
+			log_name = CS4431_LRU2_LOG;
+			break;
+			case 4:
+			log_name = CS4431_ARC_LOG;
+			break;
 			default:
 			break;
 		}
 		initFileAndLogMgr(dirname, log_name);
-		bm = new BufferMgr(BUFFER_SIZE, bufferSelect);
+		bm = new BufferMgr(bufferCapacity(), bufferCount(), bufferSelect, BUFFER_STRIPES, BUFFER_POOLS);
+		bm.setMaxWaitTime(BUFFER_WAIT_TIME);
+		bm.setReservableBuffers((int) (RESERVE_FRACTION * bufferCount()));
+		if (PIN_QUOTA > 0)
+			bm.setPinQuota(Math.max(MIN_PIN_QUOTA, (int) (PIN_QUOTA * bufferCount())));
+		bm.setStickyLimit(STICKY_ROOTS);
+		bm.registerMBean();
+		if (CLEAN_TARGET > 0)
+			bm.startPageCleaner(CLEAN_TARGET);
+		if (READ_AHEAD > 0)
+			bm.startReadAhead(READ_AHEAD);
+		if (BUFFER_TRACE_FILE.length() > 0) {
+			try {
+				bm.startTrace(fm.directoryFile(BUFFER_TRACE_FILE));
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Cannot create the block trace " + BUFFER_TRACE_FILE, e);
+			}
+		}
 	}
 
 	/**
@@ -145,7 +277,19 @@ public class SimpleDB {
 	 *            the name of the database directory
 	 */
 	public static void initFileMgr(String dirname) {
-		fm = new FileMgr(dirname);
+		fm = new FileMgr(dirname, NEW_BLOCK_SIZE);
+		fm.setDeferredSync(DEFERRED_SYNC);
+	}
+
+	/**
+	 * Reserves the region of memory that holds the pages of the buffer pool
+	 * and the log manager.
+	 *
+	 * @param pageCount
+	 *            the number of pages the region must hold
+	 */
+	public static void initPageArena(int pageCount) {
+		arena = new PageArena(pageCount);
 	}
 
 	/**
@@ -160,6 +304,10 @@ public class SimpleDB {
 		mdm = new MetadataMgr(isnew, tx);
 	}
 
+	public static PageArena pageArena() {
+		return arena;
+	}
+
 	public static LogMgr logMgr() {
 		return logm;
 	}
@@ -18,16 +18,104 @@ public class Startup {
 		 *
 		 * -lru : triggers the LRU policy for replacement
 		 *
+		 * -lru2 : triggers the scan-resistant LRU-2 policy for replacement
+		 *
+		 * -arc : triggers the adaptive replacement cache (ARC) policy
+		 *
 		 * No arguments : triggers the basic buffer manager
 		 *
+		 * -stripes n : splits the buffer pool into n independently locked
+		 * stripes, each using the chosen replacement policy
+		 *
+		 * -pools spec : divides the buffer pool into named pools with their
+		 * own sizes and policies, such as catalog:0.05:lru,index:0.2:lru,
+		 * temp:0.15:clock, so that temporary tables cannot evict the catalog
+		 * and index pages (see PooledBufferMgr)
+		 *
+		 * -poolsize n[K|M|G] : sizes the buffer pool in bytes instead of blocks
+		 *
+		 * -maxpoolsize n[K|M|G] : the largest size in bytes the buffer pool can
+		 * be resized to while the server runs (default 4 times its size)
+		 *
+		 * -cleantarget f : the fraction of unpinned buffers the background page
+		 * cleaner keeps clean (0 disables the cleaner)
+		 *
+		 * -readahead n : the largest number of blocks read ahead of a
+		 * sequential scan (0 disables read-ahead)
+		 *
+		 * -ring f : scans of files larger than the fraction f of the buffer
+		 * pool, and of temporary tables, reuse a small private ring of
+		 * buffers (0 disables the rings)
+		 *
+		 * -bufferwait ms : the longest time a transaction waits for a buffer
+		 * before it is aborted
+		 *
+		 * -reserve f : the fraction of the buffer pool that operators such as
+		 * the multibuffer product may reserve at once
+		 *
+		 * -pinquota f : the fraction of the buffer pool a transaction may pin
+		 * at once beyond its reservations (0 removes the limit)
+		 *
+		 * -poolsnapshot ms : how often the list of blocks in the buffer pool is
+		 * saved, to be read back into the pool at the next startup (0 disables
+		 * it)
+		 *
+		 * -stickyroots n : pins the roots of up to n B-tree indexes in the
+		 * buffer pool for good (0, the default, disables it)
+		 *
+		 * -trace file : records the pins of the transactions to the file in the
+		 * database directory, to be replayed by simpledb.buffer.PolicySimulator
+		 *
+		 * -blocksize n[K] : the block size of a new database, a power of two
+		 * from 4K to 64K (default 4K); an existing database keeps its own
+		 *
+		 * -deferredsync : writes blocks without a sync, and forces the
+		 * modified files to disk at each commit, rollback and checkpoint
+		 * instead; temporary files are never forced
+		 *
 		 * @author Lambert Wang
 		 */
 		int bufferManager = 0;
-		for (String s : args) {
+		for (int i = 0; i < args.length; i++) {
+			String s = args[i];
 			if (s.equals("-clock")) {
 				bufferManager = 1;
 			} else if (s.equals("-lru")) {
 				bufferManager = 2;
+			} else if (s.equals("-lru2")) {
+				bufferManager = 3;
+			} else if (s.equals("-arc")) {
+				bufferManager = 4;
+			} else if (s.equals("-stripes") && i + 1 < args.length) {
+				SimpleDB.BUFFER_STRIPES = Integer.parseInt(args[++i]);
+			} else if (s.equals("-pools") && i + 1 < args.length) {
+				SimpleDB.BUFFER_POOLS = args[++i];
+			} else if (s.equals("-poolsize") && i + 1 < args.length) {
+				SimpleDB.BUFFER_POOL_BYTES = parseBytes(args[++i]);
+			} else if (s.equals("-maxpoolsize") && i + 1 < args.length) {
+				SimpleDB.BUFFER_POOL_MAX_BYTES = parseBytes(args[++i]);
+			} else if (s.equals("-cleantarget") && i + 1 < args.length) {
+				SimpleDB.CLEAN_TARGET = Double.parseDouble(args[++i]);
+			} else if (s.equals("-readahead") && i + 1 < args.length) {
+				SimpleDB.READ_AHEAD = Integer.parseInt(args[++i]);
+			} else if (s.equals("-ring") && i + 1 < args.length) {
+				SimpleDB.RING_THRESHOLD = Double.parseDouble(args[++i]);
+			} else if (s.equals("-bufferwait") && i + 1 < args.length) {
+				SimpleDB.BUFFER_WAIT_TIME = Long.parseLong(args[++i]);
+			} else if (s.equals("-reserve") && i + 1 < args.length) {
+				SimpleDB.RESERVE_FRACTION = Double.parseDouble(args[++i]);
+			} else if (s.equals("-pinquota") && i + 1 < args.length) {
+				SimpleDB.PIN_QUOTA = Double.parseDouble(args[++i]);
+			} else if (s.equals("-poolsnapshot") && i + 1 < args.length) {
+				SimpleDB.POOL_SNAPSHOT_INTERVAL = Long.parseLong(args[++i]);
+			} else if (s.equals("-stickyroots") && i + 1 < args.length) {
+				SimpleDB.STICKY_ROOTS = Integer.parseInt(args[++i]);
+			} else if (s.equals("-trace") && i + 1 < args.length) {
+				SimpleDB.BUFFER_TRACE_FILE = args[++i];
+			} else if (s.equals("-blocksize") && i + 1 < args.length) {
+				SimpleDB.NEW_BLOCK_SIZE = (int) parseBytes(args[++i]);
+			} else if (s.equals("-deferredsync")) {
+				SimpleDB.DEFERRED_SYNC = true;
 			}
 		}
 
@@ -44,4 +132,25 @@ public class Startup {
 
 		System.out.println("database server ready");
 	}
+
+	/**
+	 * Parses a size in bytes, optionally followed by K, M or G.
+	 *
+	 * @param s
+	 *            the size to parse
+	 * @return the size in bytes
+	 */
+	private static long parseBytes(String s) {
+		String upper = s.toUpperCase();
+		long unit = 1;
+		if (upper.endsWith("K"))
+			unit = 1L << 10;
+		else if (upper.endsWith("M"))
+			unit = 1L << 20;
+		else if (upper.endsWith("G"))
+			unit = 1L << 30;
+		if (unit > 1)
+			upper = upper.substring(0, upper.length() - 1);
+		return Long.parseLong(upper) * unit;
+	}
 }
@@ -6,13 +6,29 @@ import simpledb.buffer.*;
 import java.util.*;
 
 /**
- * Manages the transaction's currently-pinned buffers. 
+ * Manages the transaction's currently-pinned buffers.
+ * A transaction may pin at most the buffer manager's
+ * pin quota of buffers at once, plus the buffers
+ * its operators have reserved.
+ * If the buffer manager is recording a trace, the
+ * pins and unpins are recorded with the id of the
+ * transaction.
  * @author Edward Sciore
  */
 class BufferList {
    private Map<Block,Buffer> buffers = new HashMap<Block,Buffer>();
    private List<Block> pins = new ArrayList<Block>();
+   private List<BufferReservation> reservations = new ArrayList<BufferReservation>();
    private BufferMgr bufferMgr = SimpleDB.bufferMgr();
+   private int txnum;
+   
+   /**
+    * Creates the list of buffers of the specified transaction.
+    * @param txnum the id of the transaction
+    */
+   BufferList(int txnum) {
+      this.txnum = txnum;
+   }
    
    /**
     * Returns the buffer pinned to the specified block.
@@ -26,30 +42,63 @@ class BufferList {
    }
    
    /**
-    * Pins the block and keeps track of the buffer internally.
+    * Pins the block with the specified intent,
+    * through the specified ring if there is one,
+    * and keeps track of the buffer internally.
     * @param blk a reference to the disk block
+    * @param hint the intent of the pin
+    * @param ring the ring of the pinning scan, or null
     */
-   void pin(Block blk) {
-      Buffer buff = bufferMgr.pin(blk);
+   void pin(Block blk, AccessHint hint, BufferRing ring) {
+      if (!buffers.containsKey(blk))
+         checkPinLimit();
+      Buffer buff = bufferMgr.pin(blk, hint, ring);
       buffers.put(blk, buff);
       pins.add(blk);
+      BlockTrace trace = bufferMgr.trace();
+      if (trace != null)
+         trace.pin(blk, hint, txnum);
    }
    
    /**
     * Appends a new block to the specified file
-    * and pins it.
+    * and pins it, through the specified ring if there is one.
     * @param filename the name of the file
     * @param fmtr the formatter used to initialize the new page
+    * @param ring the ring of the writing scan, or null
     * @return a reference to the newly-created block
     */
-   Block pinNew(String filename, PageFormatter fmtr) {
-      Buffer buff = bufferMgr.pinNew(filename, fmtr);
+   Block pinNew(String filename, PageFormatter fmtr, BufferRing ring) {
+      checkPinLimit();
+      Buffer buff = bufferMgr.pinNew(filename, fmtr, ring);
       Block blk = buff.block();
       buffers.put(blk, buff);
       pins.add(blk);
+      BlockTrace trace = bufferMgr.trace();
+      if (trace != null)
+         trace.pinNew(blk, txnum);
       return blk;
    }
    
+   /**
+    * Reserves working space for an operator of the transaction,
+    * and raises the transaction's pin limit by its size.
+    * If the transaction already holds a reservation,
+    * the request is nested in it and does not wait.
+    * @param min the least number of buffers the operator can work with
+    * @param desired the number of buffers the operator would like
+    * @return the reservation
+    */
+   BufferReservation reserve(int min, int desired) {
+      boolean nested = false;
+      for (BufferReservation held : reservations)
+         if (held.size() > 0)
+            nested = true;
+      BufferReservation res = bufferMgr.reserve(min, desired, nested);
+      reservations.add(res);
+      return res;
+   }
+   
    /**
     * Unpins the specified block.
     * @param blk a reference to the disk block
@@ -60,17 +109,49 @@ class BufferList {
       pins.remove(blk);
       if (!pins.contains(blk))
          buffers.remove(blk);
+      BlockTrace trace = bufferMgr.trace();
+      if (trace != null)
+         trace.unpin(blk, txnum);
    }
    
    /**
-    * Unpins any buffers still pinned by this transaction.
+    * Unpins any buffers still pinned by this transaction,
+    * and releases any reservations it still holds.
     */
    void unpinAll() {
+      BlockTrace trace = bufferMgr.trace();
       for (Block blk : pins) {
          Buffer buff = buffers.get(blk);
          bufferMgr.unpin(buff);
+         if (trace != null)
+            trace.unpin(blk, txnum);
       }
       buffers.clear();
       pins.clear();
+      for (BufferReservation res : reservations)
+         res.release();
+      reservations.clear();
+   }
+   
+   /**
+    * Throws a BufferAbortException if pinning one more
+    * buffer would exceed the transaction's pin limit,
+    * which is the pin quota plus the reserved buffers.
+    * Released reservations are forgotten along the way.
+    */
+   private void checkPinLimit() {
+      int quota = bufferMgr.getPinQuota();
+      if (quota <= 0)
+         return;
+      int limit = quota;
+      Iterator<BufferReservation> iter = reservations.iterator();
+      while (iter.hasNext()) {
+         int size = iter.next().size();
+         if (size == 0)
+            iter.remove();
+         limit += size;
+      }
+      if (buffers.size() >= limit)
+         throw new BufferAbortException();
    }
 }
\ No newline at end of file
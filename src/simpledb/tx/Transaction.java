@@ -18,7 +18,7 @@ public class Transaction {
    private RecoveryMgr    recoveryMgr;
    private ConcurrencyMgr concurMgr;
    private int txnum;
-   private BufferList myBuffers = new BufferList();
+   private BufferList myBuffers;
    
    /**
     * Creates a new transaction and its associated 
@@ -34,6 +34,7 @@ public class Transaction {
     */
    public Transaction() {
       txnum       = nextTxNumber();
+      myBuffers   = new BufferList(txnum);
       recoveryMgr = new RecoveryMgr(txnum);
       concurMgr   = new ConcurrencyMgr();
    }
@@ -84,7 +85,56 @@ public class Transaction {
     * @param blk a reference to the disk block
     */
    public void pin(Block blk) {
-      myBuffers.pin(blk);
+      pin(blk, AccessHint.RANDOM);
+   }
+   
+   /**
+    * Pins the specified block, telling the buffer manager
+    * how the block is going to be used.
+    * @param blk a reference to the disk block
+    * @param hint the intent of the pin
+    */
+   public void pin(Block blk, AccessHint hint) {
+      pin(blk, hint, null);
+   }
+   
+   /**
+    * Pins the specified block with the specified intent,
+    * through the ring of a bulk operation.
+    * If the block is not in memory, it is read into
+    * one of the ring's buffers when possible.
+    * @param blk a reference to the disk block
+    * @param hint the intent of the pin
+    * @param ring the ring of the pinning scan, or null
+    */
+   public void pin(Block blk, AccessHint hint, BufferRing ring) {
+      myBuffers.pin(blk, hint, ring);
+   }
+   
+   /**
+    * Pins the specified block for good, if sticky pins
+    * are enabled, so that it stays in memory between
+    * transactions. Unlike the other pins of the transaction,
+    * the pin is not released when the transaction ends,
+    * and the block need not be unpinned.
+    * @param blk a reference to the disk block
+    */
+   public void pinSticky(Block blk) {
+      SimpleDB.bufferMgr().pinSticky(blk);
+   }
+   
+   /**
+    * Reserves working space in the buffer pool
+    * for an operator of this transaction.
+    * The operator should release the reservation
+    * when it is closed; any reservation still held
+    * is released when the transaction ends.
+    * @param min the least number of buffers the operator can work with
+    * @param desired the number of buffers the operator would like
+    * @return the reservation, whose size is the number of buffers granted
+    */
+   public BufferReservation reserveBuffers(int min, int desired) {
+      return myBuffers.reserve(min, desired);
    }
    
    /**
@@ -191,9 +241,22 @@ public class Transaction {
     * @return a reference to the newly-created disk block
     */
    public Block append(String filename, PageFormatter fmtr) {
+      return append(filename, fmtr, null);
+   }
+   
+   /**
+    * Appends a new block to the end of the specified file,
+    * through the ring of a bulk operation,
+    * and returns a reference to it.
+    * @param filename the name of the file
+    * @param fmtr the formatter used to initialize the new page
+    * @param ring the ring of the writing scan, or null
+    * @return a reference to the newly-created disk block
+    */
+   public Block append(String filename, PageFormatter fmtr, BufferRing ring) {
       Block dummyblk = new Block(filename, END_OF_FILE);
       concurMgr.xLock(dummyblk);
-      Block blk = myBuffers.pinNew(filename, fmtr);
+      Block blk = myBuffers.pinNew(filename, fmtr, ring);
       unpin(blk);
       return blk;
    }
@@ -1,7 +1,7 @@
 package simpledb.tx.concurrency;
 
 import simpledb.file.Block;
-import java.util.*;
+import simpledb.file.PageTable;
 
 /**
  * The concurrency manager for the transaction.
@@ -9,16 +9,19 @@ import java.util.*;
  * The concurrency manager keeps track of which locks the 
  * transaction currently has, and interacts with the
  * global lock table as needed. 
+ * The locks are kept in a {@link PageTable} keyed by the packed
+ * block key, whose value is the lock type.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
+   private static final int SLOCK = 'S', XLOCK = 'X';
    
    /**
     * The global lock table.  This variable is static because all transactions
     * share the same table.
     */
    private static LockTable locktbl = new LockTable();
-   private Map<Block,String> locks  = new HashMap<Block,String>();
+   private PageTable locks  = new PageTable(16);
    
    /**
     * Obtains an SLock on the block, if necessary.
@@ -27,9 +30,10 @@ public class ConcurrencyMgr {
     * @param blk a reference to the disk block
     */
    public void sLock(Block blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
+      long key = blk.key();
+      if (!locks.containsKey(key)) {
+         locktbl.sLock(key);
+         locks.put(key, SLOCK);
       }
    }
    
@@ -41,10 +45,11 @@ public class ConcurrencyMgr {
     * @param blk a refrence to the disk block
     */
    public void xLock(Block blk) {
-      if (!hasXLock(blk)) {
+      long key = blk.key();
+      if (!hasXLock(key)) {
          sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+         locktbl.xLock(key);
+         locks.put(key, XLOCK);
       }
    }
    
@@ -53,13 +58,13 @@ public class ConcurrencyMgr {
     * unlock each one.
     */
    public void release() {
-      for (Block blk : locks.keySet())
-         locktbl.unlock(blk);
+      for (int i = 0; i < locks.slots(); i++)
+         if (locks.keyAt(i) != PageTable.EMPTY)
+            locktbl.unlock(locks.keyAt(i));
       locks.clear();
    }
    
-   private boolean hasXLock(Block blk) {
-      String locktype = locks.get(blk);
-      return locktype != null && locktype.equals("X");
+   private boolean hasXLock(long key) {
+      return locks.get(key) == XLOCK;
    }
 }
@@ -1,7 +1,6 @@
 package simpledb.tx.concurrency;
 
-import simpledb.file.Block;
-import java.util.*;
+import simpledb.file.PageTable;
 
 /**
  * The lock table, which provides methods to lock and unlock blocks.
@@ -12,12 +11,14 @@ import java.util.*;
  * are removed from the wait list and rescheduled.
  * If one of those transactions discovers that the lock it is waiting for
  * is still locked, it will place itself back on the wait list.
+ * Blocks are identified by their packed {@link simpledb.file.Block#key() key},
+ * so that lookups in the table do not allocate.
  * @author Edward Sciore
  */
 class LockTable {
    private static final long MAX_TIME = 10000; // 10 seconds
    
-   private Map<Block,Integer> locks = new HashMap<Block,Integer>();
+   private PageTable locks = new PageTable(64);
    
    /**
     * Grants an SLock on the specified block.
@@ -27,9 +28,9 @@ class LockTable {
     * If the thread remains on the wait list for a certain 
     * amount of time (currently 10 seconds),
     * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * @param blk the key of the disk block
     */
-   public synchronized void sLock(Block blk) {
+   public synchronized void sLock(long blk) {
       try {
          long timestamp = System.currentTimeMillis();
          while (hasXlock(blk) && !waitingTooLong(timestamp))
@@ -52,9 +53,9 @@ class LockTable {
     * If the thread remains on the wait list for a certain 
     * amount of time (currently 10 seconds),
     * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * @param blk the key of the disk block
     */
-   synchronized void xLock(Block blk) {
+   synchronized void xLock(long blk) {
       try {
          long timestamp = System.currentTimeMillis();
          while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
@@ -72,9 +73,9 @@ class LockTable {
     * Releases a lock on the specified block.
     * If this lock is the last lock on that block,
     * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * @param blk the key of the disk block
     */
-   synchronized void unlock(Block blk) {
+   synchronized void unlock(long blk) {
       int val = getLockVal(blk);
       if (val > 1)
          locks.put(blk, val-1);
@@ -84,11 +85,11 @@ class LockTable {
       }
    }
    
-   private boolean hasXlock(Block blk) {
+   private boolean hasXlock(long blk) {
       return getLockVal(blk) < 0;
    }
    
-   private boolean hasOtherSLocks(Block blk) {
+   private boolean hasOtherSLocks(long blk) {
       return getLockVal(blk) > 1;
    }
    
@@ -96,8 +97,7 @@ class LockTable {
       return System.currentTimeMillis() - starttime > MAX_TIME;
    }
    
-   private int getLockVal(Block blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+   private int getLockVal(long blk) {
+      return locks.get(blk, 0);
    }
 }
@@ -9,11 +9,16 @@ import simpledb.server.SimpleDB;
  */
 public interface LogRecord {
    /**
-    * The six different types of log record
+    * The six different types of log record.
+    * The setint and setstring records name their block
+    * by file id; the codes 4 and 5 are those of the
+    * older records that name it by file name,
+    * which are still read.
     */
    static final int CHECKPOINT = 0, START = 1,
       COMMIT = 2, ROLLBACK  = 3,
-      SETINT = 4, SETSTRING = 5;
+      SETINT = 6, SETSTRING = 7,
+      NAMED_SETINT = 4, NAMED_SETSTRING = 5;
    
    static final LogMgr logMgr = SimpleDB.logMgr();
    
@@ -42,9 +42,13 @@ class LogRecordIterator implements Iterator<LogRecord> {
          case ROLLBACK:
             return new RollbackRecord(rec);
          case SETINT:
-            return new SetIntRecord(rec);
+            return new SetIntRecord(rec, false);
          case SETSTRING:
-            return new SetStringRecord(rec);
+            return new SetStringRecord(rec, false);
+         case NAMED_SETINT:
+            return new SetIntRecord(rec, true);
+         case NAMED_SETSTRING:
+            return new SetStringRecord(rec, true);
          default:
             return null;
       }
@@ -24,9 +24,12 @@ public class RecoveryMgr {
 
    /**
     * Writes a commit record to the log, and flushes it to disk.
+    * The modified blocks are forced to disk first, since the
+    * log holds only old values and cannot redo the transaction.
     */
    public void commit() {
       SimpleDB.bufferMgr().flushAll(txnum);
+      SimpleDB.fileMgr().force();
       int lsn = new CommitRecord(txnum).writeToLog();
       SimpleDB.logMgr().flush(lsn);
    }
@@ -37,6 +40,7 @@ public class RecoveryMgr {
    public void rollback() {
       doRollback();
       SimpleDB.bufferMgr().flushAll(txnum);
+      SimpleDB.fileMgr().force();
       int lsn = new RollbackRecord(txnum).writeToLog();
       SimpleDB.logMgr().flush(lsn);
    }
@@ -48,6 +52,7 @@ public class RecoveryMgr {
    public void recover() {
       doRecover();
       SimpleDB.bufferMgr().flushAll(txnum);
+      SimpleDB.fileMgr().force();
       int lsn = new CheckpointRecord().writeToLog();
       SimpleDB.logMgr().flush(lsn);
 
@@ -132,6 +137,6 @@ public class RecoveryMgr {
     * Determines whether a block comes from a temporary file or not.
     */
    private boolean isTempBlock(Block blk) {
-      return blk.fileName().startsWith("temp");
+      return SimpleDB.fileMgr().isTemporary(blk.fileId());
    }
 }
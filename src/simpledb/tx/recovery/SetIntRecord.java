@@ -25,13 +25,20 @@ class SetIntRecord implements LogRecord {
 
    /**
     * Creates a log record by reading five other values from the log.
+    * A record written before blocks were named by file id
+    * holds the file name instead, which is looked up.
     * @param rec the basic log record
+    * @param byName true if the record holds the file name
     */
-   public SetIntRecord(BasicLogRecord rec) {
+   public SetIntRecord(BasicLogRecord rec, boolean byName) {
       txnum = rec.nextInt();
-      String filename = rec.nextString();
+      int fileid;
+      if (byName)
+         fileid = SimpleDB.fileMgr().fileId(rec.nextString());
+      else
+         fileid = rec.nextInt();
       int blknum = rec.nextInt();
-      blk = new Block(filename, blknum);
+      blk = new Block(fileid, blknum);
       offset = rec.nextInt();
       val = rec.nextInt();
    }
@@ -39,13 +46,13 @@ class SetIntRecord implements LogRecord {
    /**
     * Writes a setInt record to the log.
     * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
+    * followed by the transaction id, the file id, number,
     * and offset of the modified block, and the previous
     * integer value at that offset.
     * @return the LSN of the last log value
     */
    public int writeToLog() {
-      Object[] rec = new Object[] {SETINT, txnum, blk.fileName(),
+      Object[] rec = new Object[] {SETINT, txnum, blk.fileId(),
          blk.number(), offset, val};
       return logMgr.append(rec);
    }
@@ -26,13 +26,20 @@ class SetStringRecord implements LogRecord {
    
    /**
     * Creates a log record by reading five other values from the log.
+    * A record written before blocks were named by file id
+    * holds the file name instead, which is looked up.
     * @param rec the basic log record
+    * @param byName true if the record holds the file name
     */
-   public SetStringRecord(BasicLogRecord rec) {
+   public SetStringRecord(BasicLogRecord rec, boolean byName) {
       txnum = rec.nextInt();
-      String filename = rec.nextString();
+      int fileid;
+      if (byName)
+         fileid = SimpleDB.fileMgr().fileId(rec.nextString());
+      else
+         fileid = rec.nextInt();
       int blknum = rec.nextInt();
-      blk = new Block(filename, blknum);
+      blk = new Block(fileid, blknum);
       offset = rec.nextInt();
       val = rec.nextString();
    }
@@ -40,13 +47,13 @@ class SetStringRecord implements LogRecord {
    /** 
     * Writes a setString record to the log.
     * This log record contains the SETSTRING operator,
-    * followed by the transaction id, the filename, number,
+    * followed by the transaction id, the file id, number,
     * and offset of the modified block, and the previous
     * string value at that offset.
     * @return the LSN of the last log value
     */
    public int writeToLog() {
-      Object[] rec = new Object[] {SETSTRING, txnum, blk.fileName(),
+      Object[] rec = new Object[] {SETSTRING, txnum, blk.fileId(),
          blk.number(), offset, val};
       return logMgr.append(rec);
    }
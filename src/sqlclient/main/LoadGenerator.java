@@ -0,0 +1,447 @@
+package sqlclient.main;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import simpledb.remote.SimpleDriver;
+
+/**
+ * A load generator that runs concurrent clients against a SimpleDB server
+ * through the JDBC driver, and reports the throughput and the latency
+ * percentiles of each kind of statement.
+ *
+ * The schema is the student database of the studentClient examples, scaled
+ * by a factor n: 10n departments, 20n courses, 40n sections, 100n students and
+ * 300n enrollments. Each client has its own connection, and runs a random mix
+ * of statements until the run ends:
+ *
+ * select : a point select of a student by id
+ *
+ * join : a student joined with the name of their major department
+ *
+ * report : the grades of every section offered in a year, an analytic join
+ * of sections and enrollments
+ *
+ * insert : a new enrollment
+ *
+ * update : a change of a student's graduation year
+ *
+ * Usage: java sqlclient.main.LoadGenerator [-url url] [-scale n] [-clients n]
+ * [-warmup s] [-duration s] [-mix select:50,join:20,report:5,insert:15,update:10]
+ * [-noload]
+ *
+ * The latencies of the warmup are not counted. A statement that fails, such
+ * as one aborted by a lock or buffer timeout, is counted as an error of its
+ * kind and its latency is not recorded.
+ */
+public class LoadGenerator {
+
+	/**
+	 * The kinds of statements run by the clients.
+	 */
+	enum Kind {
+		SELECT, JOIN, REPORT, INSERT, UPDATE;
+
+		/**
+		 * Returns the name of the kind, as used in the -mix option.
+		 *
+		 * @return the lower case name
+		 */
+		String label() {
+			return name().toLowerCase();
+		}
+	}
+
+	// The first year of the students and sections
+	private static final int FIRST_YEAR = 2000;
+	private static final int YEARS = 10;
+	private static final String[] GRADES = { "A", "A-", "B+", "B", "B-", "C+", "C", "D", "F" };
+
+	private String url = "jdbc:simpledb://localhost";
+	private int scale = 1;
+	private int clients = 4;
+	private long warmupMillis = 5000;
+	private long durationMillis = 30000;
+	private int[] weights = { 50, 20, 5, 15, 10 };
+	private boolean load = true;
+
+	// The next id of an inserted enrollment, shared by the clients
+	private final AtomicInteger nextEnrollId = new AtomicInteger();
+
+	/**
+	 * Main method. Loads the schema unless -noload is given, runs the clients
+	 * and prints the report.
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 */
+	public static void main(String[] args) {
+		LoadGenerator gen = new LoadGenerator();
+		try {
+			gen.parseArgs(args);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("usage: java sqlclient.main.LoadGenerator [-url url] [-scale n] [-clients n] "
+					+ "[-warmup s] [-duration s] [-mix select:50,join:20,report:5,insert:15,update:10] [-noload]");
+			System.exit(1);
+		}
+		try {
+			if (gen.load)
+				gen.loadSchema();
+			gen.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the options from the command line.
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 */
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String s = args[i];
+			if (s.equals("-noload")) {
+				load = false;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + s);
+			String value = args[++i];
+			if (s.equals("-url"))
+				url = value;
+			else if (s.equals("-scale"))
+				scale = Integer.parseInt(value);
+			else if (s.equals("-clients"))
+				clients = Integer.parseInt(value);
+			else if (s.equals("-warmup"))
+				warmupMillis = 1000 * Long.parseLong(value);
+			else if (s.equals("-duration"))
+				durationMillis = 1000 * Long.parseLong(value);
+			else if (s.equals("-mix"))
+				weights = parseMix(value);
+			else
+				throw new IllegalArgumentException("unknown option " + s);
+		}
+		if (scale < 1 || clients < 1 || durationMillis <= 0)
+			throw new IllegalArgumentException("scale, clients and duration must be positive");
+	}
+
+	/**
+	 * Parses a mix such as select:50,insert:50 into a weight for each kind of
+	 * statement; the kinds that are not named get no weight.
+	 *
+	 * @param mix
+	 *            The mix to parse.
+	 * @return the weights, indexed by the ordinal of the kind
+	 */
+	private static int[] parseMix(String mix) {
+		int[] w = new int[Kind.values().length];
+		int total = 0;
+		for (String entry : mix.split(",")) {
+			String[] fields = entry.trim().split(":");
+			if (fields.length != 2)
+				throw new IllegalArgumentException("bad mix entry " + entry);
+			Kind kind = Kind.valueOf(fields[0].toUpperCase());
+			w[kind.ordinal()] = Integer.parseInt(fields[1]);
+			total += w[kind.ordinal()];
+		}
+		if (total <= 0)
+			throw new IllegalArgumentException("the mix has no statements");
+		return w;
+	}
+
+	/**
+	 * Opens a new connection to the server.
+	 *
+	 * @return the connection
+	 * @throws SQLException
+	 *             if the server cannot be reached
+	 */
+	private Connection connect() throws SQLException {
+		Driver d = new SimpleDriver();
+		return d.connect(url, null);
+	}
+
+	/**
+	 * Creates the tables of the student database and fills them at the
+	 * chosen scale.
+	 *
+	 * @throws SQLException
+	 *             if a table exists already or a statement fails
+	 */
+	private void loadSchema() throws SQLException {
+		Connection conn = connect();
+		try {
+			Statement stmt = conn.createStatement();
+			long start = System.nanoTime();
+			stmt.executeUpdate("create table STUDENT(SId int, SName varchar(10), MajorId int, GradYear int)");
+			stmt.executeUpdate("create table DEPT(DId int, DName varchar(8))");
+			stmt.executeUpdate("create table COURSE(CId int, Title varchar(20), DeptId int)");
+			stmt.executeUpdate("create table SECTION(SectId int, CourseId int, Prof varchar(8), YearOffered int)");
+			stmt.executeUpdate("create table ENROLL(EId int, StudentId int, SectionId int, Grade varchar(2))");
+
+			Random rand = new Random(4432);
+			for (int d = 1; d <= depts(); d++)
+				stmt.executeUpdate("insert into DEPT(DId, DName) values (" + d + ", 'dept" + d + "')");
+			for (int c = 1; c <= courses(); c++)
+				stmt.executeUpdate("insert into COURSE(CId, Title, DeptId) values (" + c + ", 'course" + c + "', "
+						+ (1 + rand.nextInt(depts())) + ")");
+			for (int s = 1; s <= sections(); s++)
+				stmt.executeUpdate("insert into SECTION(SectId, CourseId, Prof, YearOffered) values (" + s + ", "
+						+ (1 + rand.nextInt(courses())) + ", 'prof" + (s % 100) + "', "
+						+ (FIRST_YEAR + rand.nextInt(YEARS)) + ")");
+			for (int s = 1; s <= students(); s++)
+				stmt.executeUpdate("insert into STUDENT(SId, SName, MajorId, GradYear) values (" + s + ", 'student"
+						+ (s % 1000) + "', " + (1 + rand.nextInt(depts())) + ", "
+						+ (FIRST_YEAR + rand.nextInt(YEARS)) + ")");
+			for (int e = 1; e <= enrollments(); e++)
+				stmt.executeUpdate(insertEnroll(e, rand));
+			nextEnrollId.set(enrollments() + 1);
+			System.out.println(String.format("Loaded scale %d in %.1f s", scale,
+					(System.nanoTime() - start) / 1e9));
+		} finally {
+			conn.close();
+		}
+	}
+
+	private int depts() {
+		return 10 * scale;
+	}
+
+	private int courses() {
+		return 20 * scale;
+	}
+
+	private int sections() {
+		return 40 * scale;
+	}
+
+	private int students() {
+		return 100 * scale;
+	}
+
+	private int enrollments() {
+		return 300 * scale;
+	}
+
+	/**
+	 * Returns an insert statement for an enrollment with the specified id of
+	 * a random student in a random section.
+	 */
+	private String insertEnroll(int id, Random rand) {
+		return "insert into ENROLL(EId, StudentId, SectionId, Grade) values (" + id + ", "
+				+ (1 + rand.nextInt(students())) + ", " + (1 + rand.nextInt(sections())) + ", '"
+				+ GRADES[rand.nextInt(GRADES.length)] + "')";
+	}
+
+	/**
+	 * Runs the clients for the warmup and the measured duration, and prints
+	 * the throughput and latencies of each kind of statement.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the clients
+	 */
+	private void run() throws InterruptedException {
+		if (!load)
+			nextEnrollId.set(enrollments() + 1000000);
+		long now = System.currentTimeMillis();
+		long measureFrom = now + warmupMillis;
+		long end = measureFrom + durationMillis;
+		Client[] threads = new Client[clients];
+		for (int i = 0; i < clients; i++) {
+			threads[i] = new Client(i, measureFrom, end);
+			threads[i].start();
+		}
+		for (Client c : threads)
+			c.join();
+
+		System.out.println(String.format("%d clients, scale %d, %d s measured", clients, scale,
+				durationMillis / 1000));
+		System.out.println(String.format("%-8s %10s %8s %10s %10s %10s %10s", "kind", "count", "errors", "ops/s",
+				"p50 ms", "p99 ms", "p999 ms"));
+		long totalErrors = 0;
+		LatencyLog all = new LatencyLog();
+		for (Kind kind : Kind.values()) {
+			LatencyLog log = new LatencyLog();
+			long errors = 0;
+			for (Client c : threads) {
+				log.addAll(c.latencies[kind.ordinal()]);
+				errors += c.errors[kind.ordinal()];
+			}
+			if (log.size() == 0 && errors == 0)
+				continue;
+			print(kind.label(), log, errors);
+			all.addAll(log);
+			totalErrors += errors;
+		}
+		print("all", all, totalErrors);
+		for (Client c : threads)
+			if (c.failure != null)
+				System.out.println("client " + c.id + " stopped: " + c.failure.getMessage());
+	}
+
+	/**
+	 * Prints a line of the report.
+	 */
+	private void print(String label, LatencyLog log, long errors) {
+		log.sort();
+		double seconds = durationMillis / 1000.0;
+		System.out.println(String.format("%-8s %10d %8d %10.1f %10.2f %10.2f %10.2f", label, log.size(), errors,
+				log.size() / seconds, log.percentile(0.5) / 1e6, log.percentile(0.99) / 1e6,
+				log.percentile(0.999) / 1e6));
+	}
+
+	/**
+	 * A client with its own connection, which runs statements until the end
+	 * of the run and records their latencies once the warmup is over.
+	 */
+	private class Client extends Thread {
+		private final int id;
+		private final long measureFrom, end;
+		private final Random rand;
+		private final LatencyLog[] latencies = new LatencyLog[Kind.values().length];
+		private final long[] errors = new long[Kind.values().length];
+		private Exception failure;
+
+		Client(int id, long measureFrom, long end) {
+			super("load-client-" + id);
+			this.id = id;
+			this.measureFrom = measureFrom;
+			this.end = end;
+			rand = new Random(id);
+			for (int i = 0; i < latencies.length; i++)
+				latencies[i] = new LatencyLog();
+		}
+
+		@Override
+		public void run() {
+			Connection conn = null;
+			try {
+				conn = connect();
+				Statement stmt = conn.createStatement();
+				long now;
+				while ((now = System.currentTimeMillis()) < end) {
+					Kind kind = chooseKind();
+					long start = System.nanoTime();
+					try {
+						execute(stmt, kind);
+					} catch (SQLException e) {
+						if (now >= measureFrom)
+							errors[kind.ordinal()]++;
+						continue;
+					}
+					if (now >= measureFrom)
+						latencies[kind.ordinal()].add(System.nanoTime() - start);
+				}
+			} catch (SQLException e) {
+				failure = e;
+			} finally {
+				try {
+					if (conn != null)
+						conn.close();
+				} catch (SQLException e) {
+					// the run is over
+				}
+			}
+		}
+
+		/**
+		 * Chooses the kind of the next statement according to the weights of
+		 * the mix.
+		 */
+		private Kind chooseKind() {
+			int total = 0;
+			for (int w : weights)
+				total += w;
+			int r = rand.nextInt(total);
+			for (Kind kind : Kind.values()) {
+				r -= weights[kind.ordinal()];
+				if (r < 0)
+					return kind;
+			}
+			return Kind.SELECT;
+		}
+
+		/**
+		 * Runs a statement of the specified kind with random arguments. A
+		 * query is read to the end, which commits its transaction.
+		 */
+		private void execute(Statement stmt, Kind kind) throws SQLException {
+			switch (kind) {
+			case SELECT:
+				query(stmt, "select SName, GradYear from STUDENT where SId = " + (1 + rand.nextInt(students())));
+				break;
+			case JOIN:
+				query(stmt, "select SName, DName from STUDENT, DEPT where MajorId = DId and SId = "
+						+ (1 + rand.nextInt(students())));
+				break;
+			case REPORT:
+				query(stmt, "select SectId, Grade from SECTION, ENROLL where SectionId = SectId and YearOffered = "
+						+ (FIRST_YEAR + rand.nextInt(YEARS)));
+				break;
+			case INSERT:
+				stmt.executeUpdate(insertEnroll(nextEnrollId.getAndIncrement(), rand));
+				break;
+			case UPDATE:
+				stmt.executeUpdate("update STUDENT set GradYear = " + (FIRST_YEAR + rand.nextInt(YEARS))
+						+ " where SId = " + (1 + rand.nextInt(students())));
+				break;
+			}
+		}
+
+		private void query(Statement stmt, String qry) throws SQLException {
+			ResultSet rs = stmt.executeQuery(qry);
+			while (rs.next())
+				;
+			rs.close();
+		}
+	}
+
+	/**
+	 * A growing list of latencies, in nanoseconds.
+	 */
+	private static class LatencyLog {
+		private long[] values = new long[1024];
+		private int size = 0;
+
+		void add(long nanos) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, 2 * size);
+			values[size++] = nanos;
+		}
+
+		void addAll(LatencyLog other) {
+			for (int i = 0; i < other.size; i++)
+				add(other.values[i]);
+		}
+
+		int size() {
+			return size;
+		}
+
+		void sort() {
+			Arrays.sort(values, 0, size);
+		}
+
+		/**
+		 * Returns the latency below which the specified fraction of the
+		 * sorted latencies fall.
+		 */
+		long percentile(double fraction) {
+			if (size == 0)
+				return 0;
+			int index = (int) Math.ceil(fraction * size) - 1;
+			return values[Math.max(0, Math.min(size - 1, index))];
+		}
+	}
+}
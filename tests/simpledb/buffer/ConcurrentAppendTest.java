@@ -0,0 +1,67 @@
+package simpledb.buffer;
+
+import static simpledb.server.TestDatabase.check;
+
+import java.util.*;
+
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+
+/**
+ * Appends blocks from several threads at once to a striped pool,
+ * half of them to one shared file and the others each to a file
+ * of their own. Appends to a file are serialized by that file's
+ * lock only, so each file must still get every block once.
+ */
+public class ConcurrentAppendTest {
+   private static final int THREADS = 8, APPENDS = 300;
+
+   public static void main(String[] args) throws InterruptedException {
+      String dbname = TestDatabase.newName();
+      try {
+         SimpleDB.BUFFER_STRIPES = 4;
+         SimpleDB.BUFFER_SIZE = 64;
+         SimpleDB.init(dbname, 2);
+         final BufferMgr bm = SimpleDB.bufferMgr();
+         final PageFormatter fmtr = new PageFormatter() {
+            public void format(Page p) {
+            }
+         };
+         final Set<Block> appended = Collections.synchronizedSet(new HashSet<Block>());
+         final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+         Thread[] threads = new Thread[THREADS];
+         for (int t = 0; t < THREADS; t++) {
+            final String filename = (t % 2 == 0) ? "shared.tbl" : "own" + t + ".tbl";
+            threads[t] = new Thread() {
+               public void run() {
+                  try {
+                     for (int i = 0; i < APPENDS; i++) {
+                        Buffer buff = bm.pinNew(filename, fmtr);
+                        if (!appended.add(buff.block()))
+                           errors.add("block " + buff.block() + " was appended twice");
+                        bm.unpin(buff);
+                     }
+                  }
+                  catch (RuntimeException e) {
+                     errors.add(e.toString());
+                  }
+               }
+            };
+            threads[t].start();
+         }
+         for (Thread t : threads)
+            t.join();
+         check(errors.isEmpty(), errors.toString());
+         FileMgr fm = SimpleDB.fileMgr();
+         check(fm.size("shared.tbl") == THREADS / 2 * APPENDS, "wrong size of the shared file");
+         check(fm.size("own1.tbl") == APPENDS, "wrong size of a private file");
+         check(appended.size() == THREADS * APPENDS, "wrong number of appended blocks");
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+}
@@ -0,0 +1,48 @@
+package simpledb.buffer;
+
+import static simpledb.server.TestDatabase.check;
+
+import simpledb.planner.Planner;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+import simpledb.tx.Transaction;
+
+/**
+ * Creates tables whose names look like those of index files,
+ * and an index whose name ends in a digit, and checks that
+ * only the files of the index are taken for index files.
+ */
+public class FileTypeTest {
+   public static void main(String[] args) {
+      String dbname = TestDatabase.newName();
+      try {
+         SimpleDB.init(dbname, 0);
+         Planner planner = SimpleDB.planner();
+         Transaction tx = new Transaction();
+         planner.executeUpdate("create table orders2(a int)", tx);
+         planner.executeUpdate("create table userdir(a int)", tx);
+         planner.executeUpdate("create table userleaf(a int)", tx);
+         planner.executeUpdate("create index ordersidx1 on orders2(a)", tx);
+         planner.executeUpdate("insert into orders2(a) values (7)", tx);
+         tx.commit();
+
+         for (String table : new String[] {"orders2", "userdir", "userleaf"}) {
+            check(PooledBufferMgr.fileType(table + ".tbl").equals(PooledBufferMgr.DATA),
+                  table + " was taken for an index");
+            check(PagePriority.of(table + ".tbl") == PagePriority.NORMAL,
+                  table + " was given a high priority");
+         }
+         check(PooledBufferMgr.fileType("ordersidx17.tbl").equals("index"),
+               "a bucket of ordersidx1 was not taken for an index");
+         check(PooledBufferMgr.fileType("ordersidx10.tbl").equals("index"),
+               "bucket 0 of ordersidx1 was not taken for an index");
+         check(PooledBufferMgr.fileType("ordersidx.tbl").equals(PooledBufferMgr.DATA),
+               "a file not named after an index was taken for one");
+         check(PooledBufferMgr.fileType("idxcat.tbl").equals("catalog"),
+               "idxcat was not taken for the catalog");
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+}
@@ -0,0 +1,59 @@
+package simpledb.buffer;
+
+import static simpledb.server.TestDatabase.check;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import simpledb.file.Block;
+import simpledb.planner.Planner;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+import simpledb.tx.Transaction;
+
+/**
+ * Scans a file through a ring of 4 buffers, for each replacement
+ * policy, and checks that the scan cycles through 4 buffers
+ * rather than reusing the buffer it has just unpinned.
+ */
+public class RingCycleTest {
+   private static final int BLOCKS = 16, RING = 4;
+
+   public static void main(String[] args) {
+      String dbname = TestDatabase.newName();
+      try {
+         SimpleDB.init(dbname, 0);
+         String filename = makeFile();
+         for (int policy = 0; policy <= 4; policy++) {
+            SimpleDB.pageArena().reserve(16);
+            BufferMgr bm = new BufferMgr(16, 16, policy, 1);
+            BufferRing ring = new BufferRing(RING);
+            Map<Buffer,Integer> used = new IdentityHashMap<Buffer,Integer>();
+            for (int i = 0; i < BLOCKS; i++) {
+               Block blk = new Block(filename, i);
+               Buffer buff = bm.pin(blk, AccessHint.SEQUENTIAL, ring);
+               check(blk.equals(buff.block()), "pinned the wrong block");
+               Integer last = used.put(buff, i);
+               check(last == null || i - last == RING,
+                     "policy " + policy + " reused the buffer of block " + last + " for block " + i);
+               bm.unpin(buff);
+            }
+            check(used.size() == RING, "policy " + policy + " used " + used.size() + " buffers");
+         }
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+
+   private static String makeFile() {
+      Planner planner = SimpleDB.planner();
+      Transaction tx = new Transaction();
+      planner.executeUpdate("create table t(a int, b varchar(400))", tx);
+      int i = 0;
+      while (tx.size("t.tbl") < BLOCKS)
+         planner.executeUpdate("insert into t(a, b) values (" + i++ + ", 't')", tx);
+      tx.commit();
+      return "t.tbl";
+   }
+}
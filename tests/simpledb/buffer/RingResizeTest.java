@@ -0,0 +1,59 @@
+package simpledb.buffer;
+
+import static simpledb.server.TestDatabase.check;
+
+import simpledb.file.Block;
+import simpledb.planner.Planner;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+import simpledb.tx.Transaction;
+
+/**
+ * Shrinks and regrows the buffer pool in the middle of a scan
+ * through a ring, for each replacement policy. A buffer taken
+ * out of use by the shrink loses its block, and is back in use
+ * without one after the regrow, while the ring still holds it.
+ */
+public class RingResizeTest {
+   private static final int BLOCKS = 24;
+
+   public static void main(String[] args) {
+      String dbname = TestDatabase.newName();
+      try {
+         SimpleDB.init(dbname, 0);
+         String filename = makeFile();
+         for (int policy = 0; policy <= 4; policy++) {
+            SimpleDB.pageArena().reserve(8);
+            BufferMgr bm = new BufferMgr(32, 8, policy, 1);
+            BufferRing ring = new BufferRing(4);
+            scan(bm, ring, filename, 0, BLOCKS / 2);
+            bm.resize(2);
+            bm.resize(32);
+            scan(bm, ring, filename, BLOCKS / 2, BLOCKS);
+         }
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+
+   private static void scan(BufferMgr bm, BufferRing ring, String filename, int start, int end) {
+      for (int i = start; i < end; i++) {
+         Block blk = new Block(filename, i);
+         Buffer buff = bm.pin(blk, AccessHint.SEQUENTIAL, ring);
+         check(blk.equals(buff.block()), "pinned the wrong block");
+         bm.unpin(buff);
+      }
+   }
+
+   private static String makeFile() {
+      Planner planner = SimpleDB.planner();
+      Transaction tx = new Transaction();
+      planner.executeUpdate("create table t(a int, b varchar(400))", tx);
+      int i = 0;
+      while (tx.size("t.tbl") < BLOCKS)
+         planner.executeUpdate("insert into t(a, b) values (" + i++ + ", 't')", tx);
+      tx.commit();
+      return "t.tbl";
+   }
+}
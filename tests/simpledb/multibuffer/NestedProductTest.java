@@ -0,0 +1,61 @@
+package simpledb.multibuffer;
+
+import static simpledb.server.TestDatabase.check;
+
+import simpledb.opt.HeuristicQueryPlanner;
+import simpledb.planner.BasicUpdatePlanner;
+import simpledb.planner.Planner;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+import simpledb.tx.Transaction;
+
+/**
+ * Runs a product of three tables through the heuristic planner,
+ * which makes a multibuffer product whose left side is another
+ * multibuffer product. The inner product reserves the whole
+ * budget before the outer one asks for buffers, so the outer
+ * request must not wait for buffers only its own transaction
+ * can give back. With 8 buffers the budget is 4, and each
+ * table fills 8 blocks, so the inner product's chunks take
+ * the whole budget.
+ */
+public class NestedProductTest {
+   private static final int ROWS = 64;
+
+   public static void main(String[] args) {
+      String dbname = TestDatabase.newName();
+      try {
+         SimpleDB.BUFFER_SIZE = 8;
+         SimpleDB.init(dbname, 2);
+         Planner planner = new Planner(new HeuristicQueryPlanner(), new BasicUpdatePlanner());
+         Transaction tx = new Transaction();
+         planner.executeUpdate("create table x(a int, b varchar(400))", tx);
+         planner.executeUpdate("create table y(c int, d varchar(400))", tx);
+         planner.executeUpdate("create table z(e int, f varchar(400))", tx);
+         for (int i = 0; i < ROWS; i++) {
+            planner.executeUpdate("insert into x(a, b) values (" + i + ", 'x')", tx);
+            planner.executeUpdate("insert into y(c, d) values (" + i + ", 'y')", tx);
+            planner.executeUpdate("insert into z(e, f) values (" + i + ", 'z')", tx);
+         }
+         tx.commit();
+
+         tx = new Transaction();
+         check(tx.size("x.tbl") % 4 == 0, "the inner chunks must take the whole budget");
+         Scan s = planner.createQueryPlan("select a, c, e from x, y, z", tx).open();
+         long count = 0, sum = 0;
+         while (s.next()) {
+            count++;
+            sum += s.getInt("a") + s.getInt("c") + s.getInt("e");
+         }
+         s.close();
+         tx.commit();
+         long rows = (long) ROWS * ROWS * ROWS;
+         check(count == rows, "expected " + rows + " rows, found " + count);
+         check(sum == 3 * rows * (ROWS - 1) / 2, "wrong rows in the product");
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+}
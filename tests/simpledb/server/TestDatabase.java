@@ -0,0 +1,98 @@
+package simpledb.server;
+
+import java.io.*;
+
+/**
+ * Creates and removes the throwaway database directories
+ * that the regression tests run in, and checks their results.
+ * Each directory is created in the home directory,
+ * where the file manager looks for databases.
+ * A test is a class with a main method, run in its own JVM
+ * by src/regress.sh, that fails by throwing an exception.
+ */
+public class TestDatabase {
+   /**
+    * Returns the name of a database directory that does
+    * not exist yet, so that the file manager creates
+    * a new, empty database.
+    * @return the name of the directory
+    */
+   public static String newName() {
+      return "simpledb-test-" + System.nanoTime();
+   }
+
+   /**
+    * Copies the specified fixture, a database directory
+    * kept under tests/fixtures, to a new database directory
+    * in the home directory, and returns its name.
+    * The fixtures directory is given by the system property
+    * <i>simpledb.fixtures</i>.
+    * @param fixture the name of the fixture directory
+    * @return the name of the new database directory
+    */
+   public static String copyFixture(String fixture) {
+      File from = new File(System.getProperty("simpledb.fixtures"), fixture);
+      String dbname = newName();
+      File to = new File(System.getProperty("user.home"), dbname);
+      File[] files = from.listFiles();
+      if (files == null || !to.mkdir())
+         throw new RuntimeException("cannot copy fixture " + fixture);
+      try {
+         for (File f : files)
+            copy(f, new File(to, f.getName()));
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot copy fixture " + fixture);
+      }
+      return dbname;
+   }
+
+   /**
+    * Stops the background threads of the buffer manager,
+    * if there is one, so that they stop writing to the
+    * database, and then deletes the specified database
+    * directory and its files.
+    * @param dbname the name of the directory
+    */
+   public static void delete(String dbname) {
+      if (SimpleDB.bufferMgr() != null)
+         SimpleDB.bufferMgr().shutdown();
+      File dir = new File(System.getProperty("user.home"), dbname);
+      File[] files = dir.listFiles();
+      if (files == null)
+         return;
+      for (File f : files)
+         f.delete();
+      dir.delete();
+   }
+
+   /**
+    * Fails the running test with the specified message
+    * if the condition does not hold.
+    * @param cond the condition that must hold
+    * @param msg the description of the failure
+    */
+   public static void check(boolean cond, String msg) {
+      if (!cond)
+         throw new IllegalStateException(msg);
+   }
+
+   private static void copy(File from, File to) throws IOException {
+      InputStream in = new FileInputStream(from);
+      try {
+         OutputStream out = new FileOutputStream(to);
+         try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0)
+               out.write(buf, 0, n);
+         }
+         finally {
+            out.close();
+         }
+      }
+      finally {
+         in.close();
+      }
+   }
+}
@@ -0,0 +1,46 @@
+package simpledb.tx.recovery;
+
+import static simpledb.server.TestDatabase.check;
+
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.server.TestDatabase;
+import simpledb.tx.Transaction;
+
+/**
+ * Opens a database written by SimpleDB before file ids,
+ * block size headers and the new setint and setstring
+ * log records.
+ * The fixture tests/fixtures/baselinedb was made by the
+ * original server: it created table t(a int, b varchar(10)),
+ * inserted the rows 0 to 99 with b = 'v' + a and committed,
+ * then, in a second transaction, set b = 'gone' where a < 50,
+ * inserted the row 1000, flushed the log and halted.
+ * Recovery must read the old name-based records and undo
+ * the second transaction.
+ */
+public class BaselineDatabaseTest {
+   public static void main(String[] args) {
+      String dbname = TestDatabase.copyFixture("baselinedb");
+      try {
+         SimpleDB.init(dbname, 0);
+         check(SimpleDB.fileMgr().blockSize() == 400,
+               "a database without a header must keep 400-byte blocks");
+         Transaction tx = new Transaction();
+         Scan s = SimpleDB.planner().createQueryPlan("select a, b from t", tx).open();
+         int count = 0;
+         while (s.next()) {
+            int a = s.getInt("a");
+            check(a < 100, "the uncommitted insert was not undone");
+            check(s.getString("b").equals("v" + a), "the uncommitted update was not undone");
+            count++;
+         }
+         s.close();
+         tx.commit();
+         check(count == 100, "expected 100 rows, found " + count);
+      }
+      finally {
+         TestDatabase.delete(dbname);
+      }
+   }
+}